@@ -0,0 +1,123 @@
+package csi4109.a3;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import csi4109.a3.ConfigurationData.DelayType;
+import csi4109.a3.ConfigurationData.TreeType;
+
+/**
+ * Checks that the {@link BulkSimulator} runs the protocol exactly like the
+ * {@link DeterministicSimulator} does under synchronous timing: with a fixed delay of 1,
+ * batched transmissions and no initiator delay, both engines must send the same number
+ * of messages, elect the same center, find the same result and leave every node in the
+ * same state, and the bulk engine must take as many rounds as the simulated time of the
+ * other. The bulk engine must also give the same run on a single worker as on many.
+ * Trees of every type and of several sizes are run from several seeds, with one, a few
+ * or every node initiating. It prints the number of runs checked and exits with
+ * status 1 on any failure, like every {@link CheckFailures} check:
+ *
+ * <pre>
+ * java csi4109.a3.BulkSimulatorCheck 6 8
+ * </pre>
+ */
+public class BulkSimulatorCheck {
+
+	private static final int[] SIZES = { 2, 3, 5, 17, 100, 1000, 20000 };
+	private static final int DEFAULT_SEEDS = 6;
+	private static final int DEFAULT_WORKERS = 8;
+
+	private static final CheckFailures failures = new CheckFailures();
+
+	public static void main(String[] args) {
+		int numSeeds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SEEDS;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WORKERS;
+		ForkJoinPool single = new ForkJoinPool(1);
+		ForkJoinPool parallel = new ForkJoinPool(workers);
+
+		int runs = 0;
+		for (TreeType type : TreeType.values()) {
+			for (int size : SIZES) {
+				for (int seed = 0; seed < numSeeds; seed++) {
+					for (int initiators : new int[] { 1, 3, size }) {
+						if (initiators <= size) {
+							check(type, size, seed, initiators, single, parallel);
+							runs++;
+						}
+					}
+				}
+			}
+		}
+		single.shutdown();
+		parallel.shutdown();
+
+		failures.finish(String.format("Checked %d runs on 1 and %d workers", runs, workers));
+	}
+
+	/**
+	 * Runs a tree on both engines, and the bulk engine on both pools, then compares the runs
+	 */
+	private static void check(TreeType type, int size, long seed, int initiators, ForkJoinPool single,
+			ForkJoinPool parallel) {
+		ConfigurationData data = new ConfigurationData(seed);
+		data.treeType = type;
+		data.networkSize = size;
+		data.initiators = initiators;
+		data.delayType = DelayType.Fixed;
+		data.maxTransmissionDelay = 1;
+		data.maxInitiatorDelay = 0;
+		data.batchTransmissions = true;
+		String run = String.format("%s tree of %d nodes, seed %d, %d initiators", type, size, seed, initiators);
+
+		// Each engine gets the generator of the run positioned after the generation of the tree
+		SplittableRandom random = new SplittableRandom(seed);
+		TreeTopology topology = TreeTopology.generate(type, size, random.nextLong());
+		DeterministicSimulator reference = new DeterministicSimulator(topology, data, random);
+		reference.run();
+		BulkSimulator bulk = run(topology, data, seed, parallel);
+		BulkSimulator sequential = run(topology, data, seed, single);
+
+		if (bulk.getMessageCount() != reference.getMessageCount() || bulk.getCenter() != reference.getCenter()
+				|| bulk.getDiametralPaths() != reference.getDiametralPaths()
+				|| bulk.getRounds() != reference.getSimulatedTime()) {
+			failures.add("%s: the bulk engine sent %d messages, found %d paths at center %d in %d rounds, the "
+					+ "deterministic engine %d messages, %d paths at center %d in %d ms", run, bulk.getMessageCount(),
+					bulk.getDiametralPaths(), bulk.getCenter(), bulk.getRounds(), reference.getMessageCount(),
+					reference.getDiametralPaths(), reference.getCenter(), reference.getSimulatedTime());
+		}
+		compareStates(run, "the deterministic engine", reference.getProtocolState(), bulk.getProtocolState());
+
+		if (sequential.getMessageCount() != bulk.getMessageCount() || sequential.getRounds() != bulk.getRounds()
+				|| sequential.getPeakRound() != bulk.getPeakRound()) {
+			failures.add("%s: the bulk engine ran differently on a single worker", run);
+		}
+		compareStates(run, "a single worker", sequential.getProtocolState(), bulk.getProtocolState());
+	}
+
+	/**
+	 * Runs the bulk engine on a pool, from the same generator as the deterministic engine
+	 */
+	private static BulkSimulator run(TreeTopology topology, ConfigurationData data, long seed, ForkJoinPool pool) {
+		SplittableRandom random = new SplittableRandom(seed);
+		random.nextLong();
+		BulkSimulator simulator = new BulkSimulator(topology, data, random, pool);
+		simulator.run();
+		return simulator;
+	}
+
+	/**
+	 * Compares the final state of every node of two runs
+	 */
+	private static void compareStates(String run, String other, ProtocolState expected, ProtocolState actual) {
+		TreeTopology topology = expected.getTopology();
+		for (int node = 0; node < topology.getNodeCount(); node++) {
+			if (actual.getState(node) != expected.getState(node) || actual.getResult(node) != expected.getResult(node)
+					|| actual.getEccentricity(node) != expected.getEccentricity(node)
+					|| actual.getNumPaths(node) != expected.getNumPaths(node)
+					|| actual.getParent(node) != expected.getParent(node)) {
+				failures.add("%s: node %d ends in another state than with %s", run, node, other);
+				return;
+			}
+		}
+	}
+}
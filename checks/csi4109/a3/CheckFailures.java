@@ -0,0 +1,51 @@
+package csi4109.a3;
+
+/**
+ * The failures found by one of the checks of this source root, which verify the
+ * simulator by brute force and are not shipped with it. They are compiled along with the
+ * sources of the simulator:
+ *
+ * <pre>
+ * javac -cp gs-core-1.2/gs-core-1.2.jar:gs-algo-1.2/gs-algo-1.2.jar -d build src/csi4109/a3/*.java checks/csi4109/a3/*.java
+ * </pre>
+ *
+ * The first few failures are shown, and a check exits with status 1 if it found any
+ */
+class CheckFailures {
+
+	private static final int MAX_SHOWN = 10;
+
+	private int count = 0;
+
+	/**
+	 * Reports a failure, showing it if it is one of the first few
+	 *
+	 * @param format The description of the failure, as a format string
+	 * @param args The arguments of the format
+	 */
+	public void add(String format, Object... args) {
+		this.count++;
+		if (this.count <= MAX_SHOWN) {
+			System.err.println(String.format(format, args));
+		}
+	}
+
+	/**
+	 * @return the number of failures so far
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Prints the summary of the check, then exits with status 1 if it failed
+	 *
+	 * @param summary What was checked
+	 */
+	public void finish(String summary) {
+		System.out.println(String.format("%s: %d failures", summary, this.count));
+		if (this.count > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package csi4109.a3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the {@link TreeMetrics} and the {@link TreeFingerprint} of random small trees
+ * against exhaustive computations. The diameter, centers and diametral paths of each
+ * tree are found from the distances between every pair of nodes. Each tree is also
+ * renumbered at random and must keep its fingerprint, and trees must share a fingerprint
+ * exactly when a search over every mapping of their nodes finds them isomorphic. It
+ * prints the number of trees and shapes checked and exits with status 1 on any failure.
+ * Like the other checks, it is not shipped with the simulator:
+ *
+ * <pre>
+ * java csi4109.a3.TreeMetricsCheck 4000 12 1
+ * </pre>
+ */
+public class TreeMetricsCheck {
+
+	private static final int DEFAULT_TREES = 4000;
+	private static final int DEFAULT_MAX_SIZE = 12;
+
+	private static final CheckFailures failures = new CheckFailures();
+
+	public static void main(String[] args) {
+		int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TREES;
+		int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_SIZE;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		SplittableRandom random = new SplittableRandom(seed);
+
+		// One tree of each shape found so far, by fingerprint
+		Map<String, TreeTopology> shapes = new HashMap<String, TreeTopology>();
+		for (int i = 0; i < numTrees; i++) {
+			TreeTopology tree = generate(1 + random.nextInt(maxSize), random);
+			checkMetrics(tree);
+
+			String fingerprint = TreeFingerprint.compute(tree);
+			TreeTopology relabelled = relabel(tree, random);
+			if (!fingerprint.equals(TreeFingerprint.compute(relabelled))) {
+				failures.add("A renumbered copy of %s has another fingerprint", describe(tree));
+			}
+
+			TreeTopology shape = shapes.get(fingerprint);
+			if (shape == null) {
+				shapes.put(fingerprint, tree);
+			} else if (!isIsomorphic(shape, tree)) {
+				failures.add("%s and %s share a fingerprint but are not isomorphic", describe(shape), describe(tree));
+			}
+		}
+
+		// Trees of different fingerprints must not be isomorphic
+		List<TreeTopology> distinct = new ArrayList<TreeTopology>(shapes.values());
+		for (int i = 0; i < distinct.size(); i++) {
+			for (int j = i + 1; j < distinct.size(); j++) {
+				if (isIsomorphic(distinct.get(i), distinct.get(j))) {
+					failures.add("%s and %s are isomorphic but have different fingerprints", describe(distinct.get(i)),
+							describe(distinct.get(j)));
+				}
+			}
+		}
+
+		failures.finish(String.format("Checked %d trees of up to %d nodes, %d shapes", numTrees, maxSize,
+				shapes.size()));
+	}
+
+	/**
+	 * Generates a random tree, each node after the first being attached to an earlier one
+	 */
+	private static TreeTopology generate(int numNodes, SplittableRandom random) {
+		int[] parents = new int[numNodes];
+		parents[0] = -1;
+		for (int node = 1; node < numNodes; node++) {
+			parents[node] = random.nextInt(node);
+		}
+		return TreeTopology.fromParents(parents);
+	}
+
+	/**
+	 * Builds a copy of a tree with its nodes renumbered and its edges listed in a random order
+	 */
+	private static TreeTopology relabel(TreeTopology tree, SplittableRandom random) {
+		int numNodes = tree.getNodeCount();
+		int[] numbers = shuffle(numNodes, random);
+		int[] order = shuffle(tree.getEdgeCount(), random);
+
+		int[] ends = new int[2 * tree.getEdgeCount()];
+		for (int halfEdge = 0; halfEdge < tree.getHalfEdgeCount(); halfEdge++) {
+			int source = tree.getSource(halfEdge);
+			int target = tree.getTarget(halfEdge);
+			if (source < target) {
+				int edge = order[tree.getEdge(halfEdge)];
+				ends[2 * edge] = numbers[source];
+				ends[2 * edge + 1] = numbers[target];
+			}
+		}
+		return TreeTopology.fromEdges(numNodes, ends);
+	}
+
+	/**
+	 * @return a random permutation of the numbers from 0 to length - 1
+	 */
+	private static int[] shuffle(int length, SplittableRandom random) {
+		int[] permutation = new int[length];
+		for (int i = 0; i < length; i++) {
+			int j = random.nextInt(i + 1);
+			permutation[i] = permutation[j];
+			permutation[j] = i;
+		}
+		return permutation;
+	}
+
+	/**
+	 * Compares the {@link TreeMetrics} of a tree with the figures found from the distance
+	 * between every pair of its nodes
+	 */
+	private static void checkMetrics(TreeTopology tree) {
+		int numNodes = tree.getNodeCount();
+		int[][] distances = getDistances(tree);
+		int diameter = 0;
+		long diametralPaths = 0;
+		int radius = Integer.MAX_VALUE;
+		int centerCount = 0;
+		for (int u = 0; u < numNodes; u++) {
+			int eccentricity = 0;
+			for (int v = 0; v < numNodes; v++) {
+				eccentricity = Math.max(eccentricity, distances[u][v]);
+				if (distances[u][v] > diameter) {
+					diameter = distances[u][v];
+					diametralPaths = 0;
+				}
+				if (u < v && distances[u][v] == diameter) {
+					diametralPaths++;
+				}
+			}
+			if (eccentricity < radius) {
+				radius = eccentricity;
+				centerCount = 0;
+			}
+			if (eccentricity == radius) {
+				centerCount++;
+			}
+		}
+
+		TreeMetrics metrics = TreeMetrics.compute(tree);
+		if (metrics.getDiameter() != diameter || metrics.getCenterCount() != centerCount
+				|| metrics.getDiametralPaths() != diametralPaths) {
+			failures.add("%s: TreeMetrics found %s, the exhaustive search diameter %d, %d centers, %d diametral paths",
+					describe(tree), metrics, diameter, centerCount, diametralPaths);
+		}
+
+		int[] centers = TreeMetrics.findCenters(tree);
+		for (int center : centers) {
+			int eccentricity = 0;
+			for (int v = 0; v < numNodes; v++) {
+				eccentricity = Math.max(eccentricity, distances[center][v]);
+			}
+			if (eccentricity != radius || centers.length != centerCount) {
+				failures.add("%s: node %d is not one of its %d centers", describe(tree), center, centerCount);
+			}
+		}
+	}
+
+	/**
+	 * @return the distance between every pair of nodes, found by a breadth-first search from each
+	 */
+	private static int[][] getDistances(TreeTopology tree) {
+		int numNodes = tree.getNodeCount();
+		int[][] distances = new int[numNodes][numNodes];
+		int[] queue = new int[numNodes];
+		for (int source = 0; source < numNodes; source++) {
+			int[] row = distances[source];
+			Arrays.fill(row, -1);
+			row[source] = 0;
+			queue[0] = source;
+			for (int head = 0, tail = 1; head < tail; head++) {
+				int node = queue[head];
+				int firstPort = tree.getFirstPort(node);
+				for (int port = firstPort; port < firstPort + tree.getDegree(node); port++) {
+					int neighbour = tree.getTarget(port);
+					if (row[neighbour] < 0) {
+						row[neighbour] = row[node] + 1;
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Searches every mapping of the nodes of the first tree to those of the second for
+	 * one that maps edges to edges. The nodes of the first tree are mapped in breadth-first
+	 * order, each to an unused node of the same degree next to the image of its parent
+	 */
+	private static boolean isIsomorphic(TreeTopology first, TreeTopology second) {
+		int numNodes = first.getNodeCount();
+		if (numNodes != second.getNodeCount()) {
+			return false;
+		}
+
+		int[] order = new int[numNodes];
+		int[] parents = new int[numNodes];
+		parents[0] = -1;
+		boolean[] reached = new boolean[numNodes];
+		reached[0] = true;
+		for (int head = 0, tail = 1; head < tail; head++) {
+			int node = order[head];
+			int firstPort = first.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + first.getDegree(node); port++) {
+				int neighbour = first.getTarget(port);
+				if (!reached[neighbour]) {
+					reached[neighbour] = true;
+					parents[neighbour] = node;
+					order[tail++] = neighbour;
+				}
+			}
+		}
+
+		int[] images = new int[numNodes];
+		boolean[] used = new boolean[numNodes];
+		for (int root = 0; root < numNodes; root++) {
+			if (second.getDegree(root) == first.getDegree(0)) {
+				images[0] = root;
+				used[root] = true;
+				if (map(first, second, order, parents, images, used, 1)) {
+					return true;
+				}
+				used[root] = false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Maps the nodes of the first tree from the given position of the breadth-first order on
+	 */
+	private static boolean map(TreeTopology first, TreeTopology second, int[] order, int[] parents, int[] images,
+			boolean[] used, int position) {
+		if (position == order.length) {
+			return true;
+		}
+
+		// A node of a tree is only adjacent to its parent among the nodes mapped before it
+		int node = order[position];
+		int parentImage = images[parents[node]];
+		int firstPort = second.getFirstPort(parentImage);
+		for (int port = firstPort; port < firstPort + second.getDegree(parentImage); port++) {
+			int candidate = second.getTarget(port);
+			if (!used[candidate] && second.getDegree(candidate) == first.getDegree(node)) {
+				images[node] = candidate;
+				used[candidate] = true;
+				if (map(first, second, order, parents, images, used, position + 1)) {
+					return true;
+				}
+				used[candidate] = false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the edges of a tree, as a readable list
+	 */
+	private static String describe(TreeTopology tree) {
+		StringBuilder description = new StringBuilder(String.format("[%d nodes:", tree.getNodeCount()));
+		for (int halfEdge = 0; halfEdge < tree.getHalfEdgeCount(); halfEdge++) {
+			if (tree.getSource(halfEdge) < tree.getTarget(halfEdge)) {
+				description.append(String.format(" %d-%d", tree.getSource(halfEdge), tree.getTarget(halfEdge)));
+			}
+		}
+		return description.append(']').toString();
+	}
+}
@@ -0,0 +1,208 @@
+package csi4109.a3;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An entity that reacts to the {@link Message}s arriving in its {@link MessageBox}. An
+ * actor owns no thread: whenever its box stops being empty, it is scheduled on a shared
+ * work-stealing pool, where a worker handles up to {@link #THROUGHPUT} of its messages
+ * before letting other actors run. An actor never handles two messages at once, so its
+ * handlers need no locking. Actions that take time, like transmissions, are scheduled
+ * on a shared {@link TimingWheel} instead of sleeping on a worker. An actor may also take
+ * messages from somewhere else than its box, like a {@link MessageRing}, by overriding
+ * {@link #receiveNext()} and {@link #hasMessages()}
+ */
+public abstract class Actor implements Runnable {
+
+	// Number of messages handled in a row before the worker moves on to another actor
+	public static final int THROUGHPUT = 32;
+
+	// Workers and timer shared by the actors of every run. Timed tasks run on the workers
+	// once they expire, so the ticker of the timer only keeps time
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+			ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	private static final TimingWheel TIMER = new TimingWheel(1, TimeUnit.MILLISECONDS, POOL, "actor-timer");
+
+	private MessageBox messageBox;
+	private AtomicBoolean scheduled; // Whether the actor is queued or running on the pool
+	private volatile boolean suspended = false; // Whether the actor waits for an action to end
+
+	/**
+	 * Constructs an {@link Actor} instance with an empty {@link MessageBox}
+	 */
+	protected Actor() {
+		this(new MessageBox());
+	}
+
+	/**
+	 * Constructs an {@link Actor} instance around the given {@link MessageBox}
+	 *
+	 * @param messageBox The box, possibly bounded, in which the actor receives its messages
+	 */
+	protected Actor(MessageBox messageBox) {
+		this.messageBox = messageBox;
+		this.scheduled = new AtomicBoolean();
+	}
+
+	/**
+	 * Runs a task on the pool once the delay has passed, as kept by the shared
+	 * {@link TimingWheel}
+	 *
+	 * @param task The task to run
+	 * @param delay The delay, in milliseconds
+	 */
+	public static void schedule(Runnable task, long delay) {
+		TIMER.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of timed tasks, like transmissions, waiting for their delay to pass
+	 */
+	public static int getPendingTimers() {
+		return TIMER.getPending();
+	}
+
+	/**
+	 * Adds an {@link Envelope} to this actor's {@link MessageBox}
+	 *
+	 * @param envelope The {@link Envelope} to send to this actor
+	 * @throws InterruptedException
+	 */
+	public void sendMessage(Envelope envelope) throws InterruptedException {
+		this.messageBox.sendMessage(envelope);
+		this.schedule();
+	}
+
+	/**
+	 * Adds several messages at once to this actor's {@link MessageBox}
+	 *
+	 * @param messages The {@link Envelope}s to send to this actor, in order
+	 * @throws InterruptedException
+	 */
+	public void sendMessages(List<Envelope> messages) throws InterruptedException {
+		this.messageBox.sendMessages(messages);
+		this.schedule();
+	}
+
+	/**
+	 * Adds an {@link Envelope} to this actor's {@link MessageBox} if the box has room for it
+	 *
+	 * @param envelope The {@link Envelope} to send to this actor
+	 * @return true if the envelope was added, false if the box was full
+	 */
+	public boolean offerMessage(Envelope envelope) {
+		if (!this.messageBox.offerMessage(envelope)) {
+			return false;
+		}
+		this.schedule();
+		return true;
+	}
+
+	/**
+	 * @return the number of {@link Message}s waiting to be handled by this actor
+	 */
+	public int getBacklog() {
+		return this.messageBox.size();
+	}
+
+	/**
+	 * @return the box in which this actor receives its messages
+	 */
+	MessageBox getMessageBox() {
+		return this.messageBox;
+	}
+
+	/**
+	 * Handles up to {@link #THROUGHPUT} messages, then lets the pool run other actors
+	 */
+	@Override
+	public final void run() {
+		try {
+			for (int i = 0; i < THROUGHPUT && !this.suspended; i++) {
+				if (!this.receiveNext()) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			this.scheduled.set(false);
+			this.schedule();
+		}
+	}
+
+	/**
+	 * Takes the next message and handles it
+	 *
+	 * @return false if there was no message to handle
+	 * @throws InterruptedException
+	 */
+	protected boolean receiveNext() throws InterruptedException {
+		Envelope envelope = this.messageBox.retrieveMessage();
+		if (envelope == null) {
+			return false;
+		}
+		this.receive(envelope);
+		return true;
+	}
+
+	/**
+	 * @return true if the actor has messages to handle
+	 */
+	protected boolean hasMessages() {
+		return !this.messageBox.isEmpty();
+	}
+
+	/**
+	 * Schedules the actor after a message arrived somewhere else than in its {@link MessageBox}
+	 */
+	protected void signal() {
+		this.schedule();
+	}
+
+	/**
+	 * Handles a message taken from the {@link MessageBox}
+	 *
+	 * @param envelope The message to handle, along with its sender and edge
+	 * @throws InterruptedException
+	 */
+	protected abstract void receive(Envelope envelope) throws InterruptedException;
+
+	/**
+	 * Removes the messages still waiting in the {@link MessageBox}, so that they can be
+	 * handled together with the current one
+	 *
+	 * @return the removed messages, in order
+	 */
+	protected List<Envelope> retrieveAllMessages() {
+		return this.messageBox.retrieveAllMessages();
+	}
+
+	/**
+	 * Stops handling messages once the current one is handled, until {@link #resume()}
+	 * is called. Messages keep arriving in the {@link MessageBox} meanwhile
+	 */
+	protected void suspend() {
+		this.suspended = true;
+	}
+
+	/**
+	 * Handles the waiting messages again after a {@link #suspend()}
+	 */
+	protected void resume() {
+		this.suspended = false;
+		this.schedule();
+	}
+
+	/**
+	 * Queues this actor on the pool if it has messages to handle and is not queued yet
+	 */
+	private void schedule() {
+		if (!this.suspended && this.hasMessages() && this.scheduled.compareAndSet(false, true)) {
+			POOL.execute(this);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package csi4109.a3;
+
+/**
+ * Delays made of a fixed latency plus the time needed to push the data
+ * through a link of limited bandwidth. Larger batches take longer to send
+ */
+public class BandwidthLatencyDelayModel implements DelayModel {
+
+	private int latency;
+	private double bytesPerMillisecond;
+
+	/**
+	 * Constructs a {@link BandwidthLatencyDelayModel} instance
+	 * 
+	 * @param latency The latency of the link, in milliseconds
+	 * @param bytesPerMillisecond The bandwidth of the link
+	 */
+	public BandwidthLatencyDelayModel(int latency, double bytesPerMillisecond) {
+		this.latency = latency;
+		this.bytesPerMillisecond = bytesPerMillisecond;
+	}
+
+	@Override
+	public int nextDelay(DelayRandom random, int messageSize) {
+		return this.latency + (int)Math.ceil(messageSize / this.bytesPerMillisecond);
+	}
+}
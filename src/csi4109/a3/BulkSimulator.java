@@ -0,0 +1,367 @@
+package csi4109.a3;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import csi4109.a3.Message.MessageType;
+import csi4109.a3.ProtocolTransitions.Engine;
+
+/**
+ * Level-synchronous engine for the saturation algorithm, for trees too large for the
+ * {@link DeterministicSimulator} to go through one delivery at a time. It runs the same
+ * protocol under synchronous timing: every initiator wakes up in round 0, and every
+ * message takes exactly one round. Each round is a bulk pass over the messages sent in
+ * the previous one, so the leaves-to-center wave of SATURATE messages, then the walk
+ * of CHECK CENTER and the broadcast of NOTIFICATION, each take as many passes as they
+ * take rounds.
+ * <p>
+ * The messages of a round are kept in primitive arrays and sorted by receiver. The
+ * receivers are split into chunks handled in parallel on a {@link ForkJoinPool}, each
+ * node handling its messages of the round in the order they were sent. A node only
+ * writes its own entries of the {@link ProtocolState}. The messages sent by each chunk
+ * are then gathered, in parallel too, in the order the deliveries that sent them came
+ * in the round, which is the order in which a sequential engine would have sent them.
+ * A run is therefore the same whatever the parallelism, and it is the run of the
+ * {@link DeterministicSimulator} with a Fixed delay, batched transmissions and no
+ * initiator delay: the same messages, the same center and as many rounds as units of
+ * simulated time
+ */
+public class BulkSimulator {
+
+	private static final int CHUNK = 1 << 12; // Messages handled by each task
+
+	// The passes of a round
+	private static final int DELIVER = 0; // Each chunk delivers its messages
+	private static final int GATHER = 1; // Each chunk copies the messages it sent to the next round
+
+	// Message types, as stored in the rounds
+	private static final int WAKE_UP = MessageType.WAKE_UP.ordinal();
+
+	private final TreeTopology topology;
+	private final ProtocolState state; // Per-node and per-port state of the protocol
+	private final ForkJoinPool pool;
+	private final int[] initiators;
+	private Round inbox; // Messages delivered in the next round
+
+	// Statistics of the run
+	private int rounds = 0;
+	private long messageCount = 0;
+	private long deliveryCount = 0;
+	private int peakRound = 0; // Largest number of deliveries in a single round
+
+	/**
+	 * Constructs a {@link BulkSimulator} instance. The generator of the run selects the
+	 * initiators, just like it does for the {@link DeterministicSimulator}, so both engines
+	 * start from the same nodes
+	 *
+	 * @param topology The tree on which to run the algorithm
+	 * @param data The parameters of the run. The delays are ignored
+	 * @param random The generator of the run, positioned after the generation of the tree
+	 * @param pool The pool on which to handle the rounds
+	 */
+	public BulkSimulator(TreeTopology topology, ConfigurationData data, SplittableRandom random, ForkJoinPool pool) {
+		this.topology = topology;
+		this.state = new ProtocolState(topology, data.stateStorage);
+		this.pool = pool;
+		this.initiators = InitiatorSelection.select(topology.getNodeCount(), data.initiators, random);
+		this.inbox = new Round(this.initiators.length);
+		for (int initiator : this.initiators) {
+			this.inbox.add(initiator, -1, WAKE_UP, 0, 0);
+		}
+	}
+
+	/**
+	 * Runs the algorithm round after round, until no message is left in transit
+	 */
+	public void run() {
+		long[] keys = new long[0];
+		int[] starts = new int[0]; // Position of the first message sent by each delivery in the outbox of its chunk
+		int[] counts = new int[0]; // Number of messages sent by each delivery
+		int[] offsets = new int[0]; // Position of the first message sent by each delivery in the next round
+		for (int round = 0; this.inbox.size > 0; round++) {
+			Round inbox = this.inbox;
+			this.rounds = round;
+			this.deliveryCount += inbox.size;
+			this.peakRound = Math.max(this.peakRound, inbox.size);
+
+			// Sort the messages by receiver, keeping the order in which they were sent
+			if (keys.length < inbox.size) {
+				int capacity = Math.max(inbox.size, 2 * keys.length);
+				keys = new long[capacity];
+				starts = new int[capacity];
+				counts = new int[capacity];
+				offsets = new int[capacity];
+			}
+			for (int i = 0; i < inbox.size; i++) {
+				keys[i] = ((long)inbox.receivers[i] << 32) | i;
+			}
+			Arrays.parallelSort(keys, 0, inbox.size);
+
+			// Cut the messages into chunks, never splitting the messages of a node
+			int[] bounds = new int[inbox.size / CHUNK + 2];
+			int numChunks = 0;
+			for (int start = 0; start < inbox.size; numChunks++) {
+				int end = Math.min(start + CHUNK, inbox.size);
+				while (end < inbox.size && keys[end] >>> 32 == keys[end - 1] >>> 32) {
+					end++;
+				}
+				bounds[numChunks + 1] = end;
+				start = end;
+			}
+
+			Round[] outboxes = new Round[numChunks];
+			Pass deliver = new Pass(DELIVER, inbox, keys, bounds, starts, counts, offsets, outboxes, null, 0, numChunks);
+			this.invoke(deliver, numChunks);
+
+			// Lay the next round out in the order of the deliveries that sent its messages
+			int size = 0;
+			for (int i = 0; i < inbox.size; i++) {
+				offsets[i] = size;
+				size += counts[i];
+			}
+			Round next = new Round(size);
+			next.size = size;
+			this.invoke(new Pass(GATHER, inbox, keys, bounds, starts, counts, offsets, outboxes, next, 0, numChunks),
+					numChunks);
+			this.inbox = next;
+			this.messageCount += size;
+		}
+	}
+
+	/**
+	 * Runs a pass on the pool, unless it has a single chunk
+	 */
+	private void invoke(Pass pass, int numChunks) {
+		if (numChunks <= 1) {
+			pass.compute();
+		} else {
+			this.pool.invoke(pass);
+		}
+	}
+
+	/**
+	 * @return the indices of the initiator nodes, in the order they were selected
+	 */
+	public int[] getInitiators() {
+		return this.initiators.clone();
+	}
+
+	/**
+	 * @return the state of every node at the end of the run
+	 */
+	public ProtocolState getProtocolState() {
+		return this.state;
+	}
+
+	/**
+	 * @return the node that computed the number of diametral paths, or -1 if none did
+	 */
+	public int getCenter() {
+		return this.state.getCenter();
+	}
+
+	/**
+	 * @return the number of diametral paths computed by the center, or -1 if none was found
+	 */
+	public long getDiametralPaths() {
+		return this.state.getResult();
+	}
+
+	/**
+	 * @return the round of the last delivery, the spontaneous WAKE UPs being delivered in round 0
+	 */
+	public int getRounds() {
+		return this.rounds;
+	}
+
+	/**
+	 * @return the number of messages sent between nodes
+	 */
+	public long getMessageCount() {
+		return this.messageCount;
+	}
+
+	/**
+	 * @return the number of deliveries, including the spontaneous WAKE UPs
+	 */
+	public long getDeliveryCount() {
+		return this.deliveryCount;
+	}
+
+	/**
+	 * @return the largest number of deliveries in a single round
+	 */
+	public int getPeakRound() {
+		return this.peakRound;
+	}
+
+	/**
+	 * Returns the {@link Engine} through which the nodes of a chunk send their messages,
+	 * to be delivered in the next round. Nothing is displayed
+	 *
+	 * @param outbox The messages sent by the chunk
+	 */
+	private Engine<RuntimeException> createEngine(final Round outbox) {
+		return new Engine<RuntimeException>() {
+			@Override
+			public void send(int node, int port, int type, long firstValue, long secondValue) {
+				TreeTopology topology = BulkSimulator.this.topology;
+				outbox.add(topology.getTarget(port), topology.getTwin(port), type, firstValue, secondValue);
+			}
+
+			@Override
+			public void stateChanged(int node, int state) {
+			}
+
+			@Override
+			public void subtreeReceived(int node, int port, int eccentricity, long numPaths) {
+			}
+
+			@Override
+			public void resultReceived(int node, long result) {
+			}
+		};
+	}
+
+	/**
+	 * One pass of a round over a range of its chunks, split in halves until a single
+	 * chunk is left
+	 */
+	private class Pass extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int mode;
+		private final Round inbox;
+		private final long[] keys; // Receiver and position of each message of the inbox, in order
+		private final int[] bounds; // First key of each chunk, plus a final sentinel
+		private final int[] starts;
+		private final int[] counts;
+		private final int[] offsets;
+		private final Round[] outboxes; // Messages sent by each chunk
+		private final Round next; // Messages of the next round, once gathered
+		private final int start;
+		private final int end;
+
+		public Pass(int mode, Round inbox, long[] keys, int[] bounds, int[] starts, int[] counts, int[] offsets,
+				Round[] outboxes, Round next, int start, int end) {
+			this.mode = mode;
+			this.inbox = inbox;
+			this.keys = keys;
+			this.bounds = bounds;
+			this.starts = starts;
+			this.counts = counts;
+			this.offsets = offsets;
+			this.outboxes = outboxes;
+			this.next = next;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.end - this.start > 1) {
+				int middle = (this.start + this.end) >>> 1;
+				invokeAll(this.split(this.start, middle), this.split(middle, this.end));
+				return;
+			}
+
+			for (int chunk = this.start; chunk < this.end; chunk++) {
+				if (this.mode == DELIVER) {
+					this.deliver(chunk);
+				} else {
+					this.gather(chunk);
+				}
+			}
+		}
+
+		private Pass split(int start, int end) {
+			return new Pass(this.mode, this.inbox, this.keys, this.bounds, this.starts, this.counts, this.offsets,
+					this.outboxes, this.next, start, end);
+		}
+
+		/**
+		 * Delivers the messages of a chunk, and records where the messages each delivery
+		 * sent are in the outbox of the chunk
+		 */
+		private void deliver(int chunk) {
+			Round outbox = new Round(Round.INITIAL_CAPACITY);
+			Engine<RuntimeException> engine = BulkSimulator.this.createEngine(outbox);
+			for (int k = this.bounds[chunk]; k < this.bounds[chunk + 1]; k++) {
+				int i = (int)this.keys[k];
+				this.starts[i] = outbox.size;
+				ProtocolTransitions.deliver(BulkSimulator.this.state, this.inbox.receivers[i], this.inbox.ports[i],
+						this.inbox.types[i], this.inbox.firstValues[i], this.inbox.secondValues[i], engine);
+				this.counts[i] = outbox.size - this.starts[i];
+			}
+			this.outboxes[chunk] = outbox;
+		}
+
+		/**
+		 * Copies the messages sent by the deliveries of a chunk to their place in the next round
+		 */
+		private void gather(int chunk) {
+			Round outbox = this.outboxes[chunk];
+			for (int k = this.bounds[chunk]; k < this.bounds[chunk + 1]; k++) {
+				int i = (int)this.keys[k];
+				if (this.counts[i] > 0) {
+					outbox.copyTo(this.starts[i], this.next, this.offsets[i], this.counts[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The messages delivered in a round, in the order they were sent, as growing arrays
+	 */
+	private static class Round {
+		private static final int INITIAL_CAPACITY = 64;
+
+		private int size = 0;
+		private int[] receivers;
+		private int[] ports; // Port at which the message arrives, or -1 for a spontaneous one
+		private byte[] types;
+		private long[] firstValues;
+		private long[] secondValues;
+
+		public Round(int capacity) {
+			this.receivers = new int[capacity];
+			this.ports = new int[capacity];
+			this.types = new byte[capacity];
+			this.firstValues = new long[capacity];
+			this.secondValues = new long[capacity];
+		}
+
+		public void add(int receiver, int port, int type, long firstValue, long secondValue) {
+			if (this.size == this.receivers.length) {
+				this.grow(Math.max(2 * this.size, INITIAL_CAPACITY));
+			}
+			this.receivers[this.size] = receiver;
+			this.ports[this.size] = port;
+			this.types[this.size] = (byte)type;
+			this.firstValues[this.size] = firstValue;
+			this.secondValues[this.size] = secondValue;
+			this.size++;
+		}
+
+		/**
+		 * Copies messages to another round
+		 */
+		public void copyTo(int from, Round round, int to, int count) {
+			System.arraycopy(this.receivers, from, round.receivers, to, count);
+			System.arraycopy(this.ports, from, round.ports, to, count);
+			System.arraycopy(this.types, from, round.types, to, count);
+			System.arraycopy(this.firstValues, from, round.firstValues, to, count);
+			System.arraycopy(this.secondValues, from, round.secondValues, to, count);
+		}
+
+		private void grow(int capacity) {
+			this.receivers = Arrays.copyOf(this.receivers, capacity);
+			this.ports = Arrays.copyOf(this.ports, capacity);
+			this.types = Arrays.copyOf(this.types, capacity);
+			this.firstValues = Arrays.copyOf(this.firstValues, capacity);
+			this.secondValues = Arrays.copyOf(this.secondValues, capacity);
+		}
+	}
+}
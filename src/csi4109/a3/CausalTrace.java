@@ -0,0 +1,312 @@
+package csi4109.a3;
+
+import java.util.Arrays;
+
+import csi4109.a3.Message.MessageType;
+
+/**
+ * Send to receive causality of a run of the {@link DeterministicSimulator}, recorded
+ * while it runs so that a {@link CriticalPath} can tell afterwards why the run took the
+ * time it did. Messages are numbered by the order in which their delivery was scheduled,
+ * the sequence of the {@link EventQueue}, and each message records the delivery that was
+ * being handled when it was sent, which is its cause. Like an {@link EdgeWrapper}, an
+ * edge of the simulator transmits one message or batch at a time, so a message may also
+ * wait for the transmission before it on its edge: the last message of that transmission
+ * is recorded as the blocker of the message. Deliveries that a node drops or ignores,
+ * such as a WAKE UP reaching a node already awake, are told apart from those that
+ * changed its state, so that the run is measured up to the last of the latter.
+ * <p>
+ * Every value is kept in a primitive array indexed by sequence, which grows like the
+ * arrays of the {@link EventQueue} do, so recording a message costs a few stores and
+ * 34 bytes, and 4 more while it waits for its batch. A run is limited to
+ * {@link Integer#MAX_VALUE} messages
+ */
+public class CausalTrace {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+	private final TreeTopology topology;
+
+	// Per-message values, indexed by sequence
+	private int[] causes; // Sequence of the delivery that sent the message, or -1 for a spontaneous WAKE UP
+	private int[] blockers; // Sequence of the transmission the message waited for on its edge, or -1
+	private long[] starts; // When the transmission of the message started
+	private long[] deliveries; // When the message was delivered, or -1 until it is
+	private int[] receivers;
+	private int[] ports; // Port of the receiver through which the message arrived, or -1
+	private byte[] types; // Ordinal of the MessageType of the message
+	private boolean[] changes; // Whether the delivery of the message changed the state of its receiver
+	private int size = 0; // Number of messages recorded
+
+	private int[] batchedCauses; // Cause of each message that waited for its batch, by sequence in the batch queue
+
+	// Per-edge values, used to find the blocker of each transmission
+	private final int[] lastMessages; // Last message transmitted over the edge, or -1
+	private final int[] previousMessages; // Last message of the transmission before the current one, or -1
+
+	private int current = -1; // Delivery being handled
+	private int last = -1; // Last delivery handled
+	private int lastChange = -1; // Last delivery that changed the state of its receiver
+
+	/**
+	 * Constructs an empty {@link CausalTrace} instance
+	 *
+	 * @param topology The tree on which the run takes place
+	 */
+	public CausalTrace(TreeTopology topology) {
+		this.topology = topology;
+		this.causes = new int[INITIAL_CAPACITY];
+		this.blockers = new int[INITIAL_CAPACITY];
+		this.starts = new long[INITIAL_CAPACITY];
+		this.deliveries = new long[INITIAL_CAPACITY];
+		this.receivers = new int[INITIAL_CAPACITY];
+		this.ports = new int[INITIAL_CAPACITY];
+		this.types = new byte[INITIAL_CAPACITY];
+		this.changes = new boolean[INITIAL_CAPACITY];
+		this.batchedCauses = new int[0];
+		this.lastMessages = new int[topology.getEdgeCount()];
+		this.previousMessages = new int[topology.getEdgeCount()];
+		Arrays.fill(this.lastMessages, -1);
+		Arrays.fill(this.previousMessages, -1);
+	}
+
+	/**
+	 * Records a WAKE UP that an initiator sends itself at the start of the run
+	 *
+	 * @param sequence The sequence of the message
+	 */
+	void recordSpontaneous(long sequence) {
+		int message = this.reserve(sequence);
+		this.causes[message] = -1;
+		this.blockers[message] = -1;
+		this.starts[message] = 0;
+	}
+
+	/**
+	 * Records the start of a transmission over an edge, before its messages are recorded
+	 *
+	 * @param edge The edge transmitting
+	 */
+	void recordTransmission(int edge) {
+		this.previousMessages[edge] = this.lastMessages[edge];
+	}
+
+	/**
+	 * Records a message sent by the delivery being handled
+	 *
+	 * @param sequence The sequence of the message
+	 * @param port A port of the edge over which the message is transmitted
+	 * @param start The time at which its transmission starts
+	 */
+	void recordSend(long sequence, int port, long start) {
+		this.record(sequence, port, this.current, start);
+	}
+
+	/**
+	 * Records a message sent by the delivery being handled that waits for its batch to
+	 * leave. It is recorded with its sequence once the batch leaves
+	 *
+	 * @param batched The sequence of the message in the queue of the batches
+	 */
+	void recordBatched(long batched) {
+		int index = (int)batched;
+		if (index >= this.batchedCauses.length) {
+			this.batchedCauses = Arrays.copyOf(this.batchedCauses,
+					(int)Math.min(Integer.MAX_VALUE - 8, Math.max(INITIAL_CAPACITY, 2L * index)));
+		}
+		this.batchedCauses[index] = this.current;
+	}
+
+	/**
+	 * Records a message whose batch left, with the cause recorded by {@link #recordBatched(long)}
+	 *
+	 * @param sequence The sequence of the message
+	 * @param port A port of the edge over which the message is transmitted
+	 * @param start The time at which its batch left
+	 * @param batched The sequence of the message in the queue of the batches
+	 */
+	void recordSend(long sequence, int port, long start, long batched) {
+		this.record(sequence, port, this.batchedCauses[(int)batched], start);
+	}
+
+	/**
+	 * Records the delivery of a message, which becomes the cause of the messages sent
+	 * until the next delivery
+	 *
+	 * @param sequence The sequence of the message
+	 * @param time The time of the delivery
+	 * @param receiver The node receiving the message
+	 * @param port The port of the receiver through which the message arrives, or -1
+	 * @param type The ordinal of the {@link MessageType} of the message
+	 */
+	void recordDelivery(long sequence, long time, int receiver, int port, int type) {
+		int message = (int)sequence;
+		this.deliveries[message] = time;
+		this.receivers[message] = receiver;
+		this.ports[message] = port;
+		this.types[message] = (byte)type;
+		this.current = message;
+		this.last = message;
+	}
+
+	/**
+	 * Records that the delivery being handled changed the state of its receiver, rather
+	 * than being dropped or ignored
+	 */
+	void recordStateChange() {
+		this.changes[this.current] = true;
+		this.lastChange = this.current;
+	}
+
+	public TreeTopology getTopology() {
+		return this.topology;
+	}
+
+	/**
+	 * @return the number of messages recorded, including the spontaneous WAKE UPs
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the sequence of the last delivery, or -1 if there was none. It may be a
+	 * message that its receiver ignored, delivered after the protocol ended
+	 */
+	public int getLastDelivery() {
+		return this.last;
+	}
+
+	/**
+	 * @return the sequence of the last delivery that changed the state of its receiver,
+	 * which ended the protocol, or -1 if there was none
+	 */
+	public int getLastStateChange() {
+		return this.lastChange;
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the sequence of the delivery that sent it, or -1 if it was spontaneous
+	 */
+	public int getCause(int message) {
+		return this.causes[message];
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the sequence of the transmission it waited for on its edge, or -1 if it did not wait
+	 */
+	public int getBlocker(int message) {
+		return this.blockers[message];
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the time at which it was sent, which is when its cause was delivered
+	 */
+	public long getSendTime(int message) {
+		int cause = this.causes[message];
+		return cause >= 0 ? this.deliveries[cause] : 0;
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the time at which its transmission started, or 0 for a spontaneous WAKE UP
+	 */
+	public long getStart(int message) {
+		return this.starts[message];
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the time at which it was delivered, or -1 if it was not
+	 */
+	public long getDelivery(int message) {
+		return this.deliveries[message];
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the node that received it
+	 */
+	public int getReceiver(int message) {
+		return this.receivers[message];
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the node that sent it, which is its receiver for a spontaneous WAKE UP
+	 */
+	public int getSender(int message) {
+		int port = this.ports[message];
+		return port >= 0 ? this.topology.getTarget(port) : this.receivers[message];
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return the edge over which it was transmitted, or -1 for a spontaneous WAKE UP
+	 */
+	public int getEdge(int message) {
+		int port = this.ports[message];
+		return port >= 0 ? this.topology.getEdge(port) : -1;
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return true if its delivery changed the state of its receiver, false if the message
+	 * was dropped or ignored
+	 */
+	public boolean isStateChange(int message) {
+		return this.changes[message];
+	}
+
+	/**
+	 * @param message The sequence of a message
+	 * @return its {@link MessageType}
+	 */
+	public MessageType getType(int message) {
+		return MESSAGE_TYPES[this.types[message]];
+	}
+
+	/**
+	 * Records a message sent by a delivery. It waited for the transmission before it on
+	 * its edge if it could not start when it was sent
+	 */
+	private void record(long sequence, int port, int cause, long start) {
+		int message = this.reserve(sequence);
+		int edge = this.topology.getEdge(port);
+		this.causes[message] = cause;
+		this.blockers[message] = start > this.deliveries[cause] ? this.previousMessages[edge] : -1;
+		this.starts[message] = start;
+		this.lastMessages[edge] = message;
+	}
+
+	/**
+	 * Makes room for a message and marks it as not delivered
+	 *
+	 * @return the index of the message
+	 * @throws IllegalStateException if the run has more messages than the trace can hold
+	 */
+	private int reserve(long sequence) {
+		if (sequence >= Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("The run has too many messages to be traced");
+		}
+		int message = (int)sequence;
+		if (message >= this.causes.length) {
+			int capacity = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(2L * this.causes.length, message + 1L));
+			this.causes = Arrays.copyOf(this.causes, capacity);
+			this.blockers = Arrays.copyOf(this.blockers, capacity);
+			this.starts = Arrays.copyOf(this.starts, capacity);
+			this.deliveries = Arrays.copyOf(this.deliveries, capacity);
+			this.receivers = Arrays.copyOf(this.receivers, capacity);
+			this.ports = Arrays.copyOf(this.ports, capacity);
+			this.types = Arrays.copyOf(this.types, capacity);
+			this.changes = Arrays.copyOf(this.changes, capacity);
+		}
+		this.deliveries[message] = -1;
+		this.size = Math.max(this.size, message + 1);
+		return message;
+	}
+}
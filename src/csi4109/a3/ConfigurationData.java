@@ -1,7 +1,11 @@
 package csi4109.a3;
 
+import static csi4109.a3.ConfigurationData.DelayType.Uniform;
 import static csi4109.a3.ConfigurationData.TreeType.Arbitrary;
 
+import java.util.Random;
+import java.util.SplittableRandom;
+
 
 /**
  * POJO representing the configurable data on the graph
@@ -10,21 +14,129 @@ public class ConfigurationData {
 	public enum TreeType {
 		Arbitrary, List, Star, Binary;
 	}
-	
-	// Default parameters used for generating the tree and initiating the algorithm 
+
+	/**
+	 * The available distributions of edge transmission delays. Each one
+	 * builds its {@link DelayModel} from the maximum transmission delay
+	 */
+	public enum DelayType {
+		Uniform {
+			@Override
+			public DelayModel createModel(int maxDelay) {
+				return new UniformDelayModel(maxDelay);
+			}
+		},
+		Exponential {
+			@Override
+			public DelayModel createModel(int maxDelay) {
+				return new ExponentialDelayModel(maxDelay / 4.0, maxDelay);
+			}
+		},
+		LogNormal {
+			@Override
+			public DelayModel createModel(int maxDelay) {
+				return new LogNormalDelayModel(maxDelay / 4.0, 1.0, maxDelay);
+			}
+		},
+		Fixed {
+			@Override
+			public DelayModel createModel(int maxDelay) {
+				return new FixedDelayModel(maxDelay);
+			}
+		},
+		BandwidthLatency {
+			@Override
+			public DelayModel createModel(int maxDelay) {
+				return new BandwidthLatencyDelayModel(maxDelay / 2, BANDWIDTH);
+			}
+		};
+
+		/**
+		 * Creates the {@link DelayModel} of this distribution
+		 *
+		 * @param maxDelay The maximum transmission delay, in milliseconds
+		 * @return the newly created {@link DelayModel}
+		 */
+		public abstract DelayModel createModel(int maxDelay);
+	}
+
+	/**
+	 * What a bounded edge mailbox does with a message that finds it full
+	 */
+	public enum BackpressurePolicy {
+		Block, // The sending node waits until the edge has room
+		Spill, // The message waits in a compact overflow buffer of the edge
+		Credit; // The sending node keeps the message and stops handling its own messages until the edge grants a credit
+	}
+
+	/**
+	 * How the threaded engine carries messages from a node over an edge to its neighbour
+	 */
+	public enum Transport {
+		Envelopes, // Envelope objects queued in the mailbox of each edge, then of each node
+		Ring; // Fixed-width slots of a shared off-heap MessageRing, one ring per edge direction
+	}
+
+	/**
+	 * Where the {@link ProtocolState} of the deterministic engine keeps its columns
+	 */
+	public enum StateStorage {
+		Heap, // Arrays on the heap
+		Direct, // Direct buffers, off the heap but within the maximum direct memory
+		Mapped; // A memory-mapped temporary file, paged to disk by the operating system
+	}
+
+	// Default parameters used for generating the tree and initiating the algorithm
 	private static final int MIN_NODES = 2;
 	private static final int MAX_NODES = 50;
 	private static final int MAX_START_DELAY = 4000;
 	private static final int MAX_EDGE_DELAY = 1500;
+	private static final double BANDWIDTH = 0.1; // In bytes per millisecond
 
+	// Seed from which every random value of the run is derived
+	public long seed;
 	// Number of nodes in the graph
-	public int networkSize = (int)Math.floor(Math.random() * (MAX_NODES - MIN_NODES)) + MIN_NODES;
+	public int networkSize;
 	// Number of initiators to start the algorithm
-	public int initiators = (int)(Math.random() * networkSize) + 1;
+	public int initiators;
 	// Maximum delay before an initiator begins
 	public int maxInitiatorDelay = MAX_START_DELAY;
 	// Maximum delay for a message to traverse an edge
 	public int maxTransmissionDelay = MAX_EDGE_DELAY;
+	// Distribution of the delays for a message to traverse an edge
+	public DelayType delayType = Uniform;
 	// Type of tree
 	public TreeType treeType = Arbitrary;
+	// Whether edges send all of their queued messages at once as a single batch
+	public boolean batchTransmissions = false;
+	// Maximum number of messages waiting on an edge, or 0 for no maximum
+	public int mailboxCapacity = 0;
+	// What an edge does with a message once it holds mailboxCapacity messages
+	public BackpressurePolicy backpressurePolicy = BackpressurePolicy.Block;
+	// How the threaded engine carries messages over the edges
+	public Transport transport = Transport.Envelopes;
+	// Whether the run uses the reproducible, single-threaded engine
+	public boolean deterministic = false;
+	// Where the deterministic engine keeps the state of the nodes
+	public StateStorage stateStorage = StateStorage.Heap;
+
+	/**
+	 * Constructs a {@link ConfigurationData} instance with a new random seed
+	 */
+	public ConfigurationData() {
+		this(new Random().nextLong());
+	}
+
+	/**
+	 * Constructs a {@link ConfigurationData} instance whose random defaults
+	 * are derived from the given seed
+	 *
+	 * @param seed The seed of the run
+	 */
+	public ConfigurationData(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		this.seed = seed;
+		this.networkSize = random.nextInt(MAX_NODES - MIN_NODES) + MIN_NODES;
+		this.initiators = random.nextInt(this.networkSize) + 1;
+	}
 }
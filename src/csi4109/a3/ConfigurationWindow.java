@@ -8,6 +8,7 @@ import java.awt.event.ActionListener;
 import java.util.concurrent.Semaphore;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -17,6 +18,9 @@ import javax.swing.SpinnerNumberModel;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import csi4109.a3.ConfigurationData.BackpressurePolicy;
+import csi4109.a3.ConfigurationData.DelayType;
+import csi4109.a3.ConfigurationData.Transport;
 import csi4109.a3.ConfigurationData.TreeType;
 
 /**
@@ -27,6 +31,7 @@ public class ConfigurationWindow extends JFrame implements Runnable {
 
 	private Semaphore running;
 	private ConfigurationData data;
+	private ConfigurationData previous; // Parameters shown in the fields, or null for the defaults
 	
 	/**
 	 * Constructs a {@link ConfigurationWindow} instance
@@ -34,9 +39,21 @@ public class ConfigurationWindow extends JFrame implements Runnable {
 	 * @param data THe {@link ConfigurationData} to modify upon submission
 	 */
 	public ConfigurationWindow(ConfigurationData data) {
+		this(data, null);
+	}
+	
+	/**
+	 * Constructs a {@link ConfigurationWindow} instance whose fields show the parameters
+	 * of the previous run, so that it can be run again with a few changes
+	 * 
+	 * @param data The {@link ConfigurationData} to modify upon submission
+	 * @param previous The parameters of the previous run, or null to show the defaults
+	 */
+	public ConfigurationWindow(ConfigurationData data, ConfigurationData previous) {
 		super("Algorithm Configuration");
 		this.running = new Semaphore(0);
 		this.data = data;
+		this.previous = previous;
 		this.setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
 		this.initLayout();
 		this.setLocationRelativeTo(null); // Center in the middle of the screen
@@ -89,9 +106,31 @@ public class ConfigurationWindow extends JFrame implements Runnable {
 		final JSpinner transmissionDelay = new JSpinner(new SpinnerNumberModel(1500, 50, 10000, 50));
 		this.addField("Maximum Message Transmission Delay", transmissionDelay, panel, c);
 		
+		final JComboBox<DelayType> delayType = new JComboBox<DelayType>(DelayType.values());
+		this.addField("Transmission Delay Distribution", delayType, panel, c);
+		
 		final JComboBox<TreeType> treeType = new JComboBox<TreeType>(TreeType.values());
 		this.addField("Tree Type", treeType, panel, c);
 		
+		final JCheckBox batchTransmissions = new JCheckBox();
+		this.addField("Batch Edge Transmissions", batchTransmissions, panel, c);
+		
+		final JSpinner mailboxCapacity = new JSpinner(new SpinnerNumberModel(0, 0, 1000, 1));
+		this.addField("Edge Mailbox Capacity (0 for unbounded)", mailboxCapacity, panel, c);
+		
+		final JComboBox<BackpressurePolicy> backpressurePolicy = new JComboBox<BackpressurePolicy>(BackpressurePolicy.values());
+		this.addField("Backpressure Policy", backpressurePolicy, panel, c);
+		
+		final JComboBox<Transport> transport = new JComboBox<Transport>(Transport.values());
+		this.addField("Message Transport", transport, panel, c);
+		
+		final JCheckBox deterministic = new JCheckBox();
+		this.addField("Deterministic Execution", deterministic, panel, c);
+		
+		final JSpinner seed = new JSpinner(new SpinnerNumberModel(Long.valueOf(data.seed), null, null, Long.valueOf(1)));
+		seed.setEditor(new JSpinner.NumberEditor(seed, "#"));
+		this.addField("Random Seed", seed, panel, c);
+		
 		c.gridwidth = 2;
 		c.gridx = 0;
 		c.fill = GridBagConstraints.NONE;
@@ -103,7 +142,14 @@ public class ConfigurationWindow extends JFrame implements Runnable {
 				data.initiators = (int)(initiators.getValue());
 				data.maxInitiatorDelay = (int)(initiatorDelay.getValue());
 				data.maxTransmissionDelay = (int)(transmissionDelay.getValue());
+				data.delayType = (DelayType)(delayType.getSelectedItem());
+				data.seed = ((Number)seed.getValue()).longValue();
 				data.treeType = (TreeType)(treeType.getSelectedItem());
+				data.batchTransmissions = batchTransmissions.isSelected();
+				data.mailboxCapacity = (int)(mailboxCapacity.getValue());
+				data.backpressurePolicy = (BackpressurePolicy)(backpressurePolicy.getSelectedItem());
+				data.transport = (Transport)(transport.getSelectedItem());
+				data.deterministic = deterministic.isSelected();
 				
 				ConfigurationWindow.this.setVisible(false);
 				running.release();
@@ -111,6 +157,21 @@ public class ConfigurationWindow extends JFrame implements Runnable {
 		});
 		panel.add(start, c);
 		
+		if (this.previous != null) {
+			size.setValue(this.previous.networkSize);
+			initiators.setValue(this.previous.initiators);
+			initiatorDelay.setValue(this.previous.maxInitiatorDelay);
+			transmissionDelay.setValue(this.previous.maxTransmissionDelay);
+			delayType.setSelectedItem(this.previous.delayType);
+			treeType.setSelectedItem(this.previous.treeType);
+			batchTransmissions.setSelected(this.previous.batchTransmissions);
+			mailboxCapacity.setValue(this.previous.mailboxCapacity);
+			backpressurePolicy.setSelectedItem(this.previous.backpressurePolicy);
+			transport.setSelectedItem(this.previous.transport);
+			deterministic.setSelected(this.previous.deterministic);
+			seed.setValue(Long.valueOf(this.previous.seed));
+		}
+		
 		this.pack();
 	}
 	
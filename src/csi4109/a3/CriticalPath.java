@@ -0,0 +1,314 @@
+package csi4109.a3;
+
+import java.util.Arrays;
+
+import csi4109.a3.Message.MessageType;
+
+/**
+ * Why a run of the {@link DeterministicSimulator} took the time it did, found in linear
+ * time from its {@link CausalTrace}. Nodes handle their messages instantly, so each
+ * message is held back only by the delivery that sent it or, when its edge was busy, by
+ * the transmission it waited for. The run ends with the last delivery that changed the
+ * state of a node: messages that were ignored, such as a WAKE UP reaching a node already
+ * awake, do not hold the end back, unless a later transmission waited for them. Walking
+ * back from the end along whichever of the two came last gives the critical path: a
+ * chain of transmissions, each starting as the previous one is delivered, whose delays
+ * add up to the length of the run. Those are the delays of the {@link EdgeWrapper}s to
+ * shorten to make the run end sooner.
+ * <p>
+ * A message always has a larger sequence than its cause and its blocker, so the earliest
+ * and latest times of the messages are found in a pass over them in each direction. The
+ * slack of an edge is how much later its transmissions could have been delivered
+ * without delaying the end of the run: the edges of the critical path have none. The
+ * parallelism of the run is the number of transmissions in progress, averaged over
+ * the run and sampled at regular moments
+ */
+public class CriticalPath {
+
+	private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+	private final CausalTrace trace;
+	private final int[] hops; // Messages of the critical path, from the first to the last
+	private final boolean[] queued; // Whether each hop was held back by its edge rather than by its cause
+	private final int[] subtreeSizes; // Number of nodes on the side of the sender of each hop, from the center
+	private final long length; // Time of the last delivery that changed the state of a node
+	private final long contentionFreeLength; // Length of the run if no message had waited for its edge
+	private final long[] typeTimes; // Time spent on the critical path by each type of message
+	private final long[] edgeSlacks; // Slack of each edge, or -1 if nothing waited for its messages
+	private final long transmissionTime; // Sum of the transmission times of every message
+	private final int[] profile; // Transmissions in progress at each sample
+
+	/**
+	 * Constructs a {@link CriticalPath} instance from the trace of a finished run
+	 *
+	 * @param trace The trace of the run
+	 * @param center The node from which sub-trees are measured, usually the center of the tree
+	 * @param samples The number of moments at which to sample the parallelism
+	 * @throws IllegalStateException if a message of the trace was never delivered
+	 */
+	public CriticalPath(CausalTrace trace, int center, int samples) {
+		TreeTopology topology = trace.getTopology();
+		int size = trace.size();
+		int last = trace.getLastStateChange();
+		this.trace = trace;
+		this.length = last >= 0 ? trace.getDelivery(last) : 0;
+		this.typeTimes = new long[MESSAGE_TYPES.length];
+		this.edgeSlacks = new long[topology.getEdgeCount()];
+		this.profile = new int[samples];
+		Arrays.fill(this.edgeSlacks, -1);
+
+		// Forward: the length without contention, the transmission time and the parallelism
+		long[] earliest = new long[size];
+		long longest = 0;
+		long transmissionTime = 0;
+		for (int message = 0; message < size; message++) {
+			long delivery = trace.getDelivery(message);
+			if (delivery < 0) {
+				throw new IllegalStateException(String.format("Message %d was never delivered", message));
+			}
+			long duration = delivery - trace.getStart(message);
+			int cause = trace.getCause(message);
+			earliest[message] = (cause >= 0 ? earliest[cause] : 0) + duration;
+			if (trace.isStateChange(message)) {
+				longest = Math.max(longest, earliest[message]);
+			}
+
+			// Only the part of a transmission before the end of the run counts
+			if (cause >= 0 && trace.getStart(message) < this.length) {
+				long end = Math.min(delivery, this.length);
+				transmissionTime += end - trace.getStart(message);
+				this.sample(trace.getStart(message), end);
+			}
+		}
+		this.contentionFreeLength = longest;
+		this.transmissionTime = transmissionTime;
+		for (int i = 1; i < samples; i++) {
+			this.profile[i] += this.profile[i - 1];
+		}
+
+		// Backward: the latest time at which each message could have been delivered, in
+		// the array of the earliest times, which are not needed anymore. Ignored messages
+		// are only held back by the transmissions that waited for them
+		long[] latest = earliest;
+		for (int message = 0; message < size; message++) {
+			latest[message] = trace.isStateChange(message) ? this.length : Long.MAX_VALUE;
+		}
+		for (int message = size - 1; message >= 0; message--) {
+			long latestStart = latest[message] - (trace.getDelivery(message) - trace.getStart(message));
+			int cause = trace.getCause(message);
+			int blocker = trace.getBlocker(message);
+			if (cause >= 0) {
+				latest[cause] = Math.min(latest[cause], latestStart);
+			}
+			if (blocker >= 0) {
+				latest[blocker] = Math.min(latest[blocker], latestStart);
+			}
+
+			int edge = trace.getEdge(message);
+			if (edge >= 0 && latest[message] < Long.MAX_VALUE) {
+				long slack = latest[message] - trace.getDelivery(message);
+				this.edgeSlacks[edge] = this.edgeSlacks[edge] < 0 ? slack : Math.min(this.edgeSlacks[edge], slack);
+			}
+		}
+
+		// Walk back from the last delivery
+		int count = 0;
+		for (int message = last; message >= 0; message = this.getPredecessor(message)) {
+			count++;
+		}
+		this.hops = new int[count];
+		this.queued = new boolean[count];
+		int index = count;
+		for (int message = last; message >= 0; message = this.getPredecessor(message)) {
+			this.hops[--index] = message;
+			this.queued[index] = trace.getStart(message) > trace.getSendTime(message);
+			this.typeTimes[trace.getType(message).ordinal()] += trace.getDelivery(message) - trace.getStart(message);
+		}
+		this.subtreeSizes = this.measureSubtrees(topology, center);
+	}
+
+	/**
+	 * @return the length of the run, which is the sum of the delays of the critical path
+	 */
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * @return how long the run would have taken with the same delays, if no message had
+	 * waited for the transmissions before it on its edge
+	 */
+	public long getContentionFreeLength() {
+		return this.contentionFreeLength;
+	}
+
+	/**
+	 * @return the number of transmissions of the critical path, starting with the WAKE UP of an initiator
+	 */
+	public int getHopCount() {
+		return this.hops.length;
+	}
+
+	/**
+	 * @param hop The position of a transmission on the critical path, from 0
+	 * @return the sequence of its message in the {@link CausalTrace}
+	 */
+	public int getMessage(int hop) {
+		return this.hops[hop];
+	}
+
+	/**
+	 * @param hop The position of a transmission on the critical path, from 0
+	 * @return true if it was held back by the transmission before it on its edge, false
+	 * if it started as soon as it was sent
+	 */
+	public boolean isQueued(int hop) {
+		return this.queued[hop];
+	}
+
+	/**
+	 * @param hop The position of a transmission on the critical path, from 0
+	 * @return the time it took to deliver, or the delay of the initiator for the first hop
+	 */
+	public long getDelay(int hop) {
+		int message = this.hops[hop];
+		return this.trace.getDelivery(message) - this.trace.getStart(message);
+	}
+
+	/**
+	 * @param hop The position of a transmission on the critical path, from 0
+	 * @return the number of nodes on the side of its sender, with the tree rooted at the
+	 * center. For a SATURATE, it is the sub-tree that had to saturate before it was sent
+	 */
+	public int getSubtreeSize(int hop) {
+		return this.subtreeSizes[hop];
+	}
+
+	/**
+	 * @param type A type of message
+	 * @return the time that transmissions of that type take on the critical path. The
+	 * delay of the initiator counts as a WAKE UP
+	 */
+	public long getTime(MessageType type) {
+		return this.typeTimes[type.ordinal()];
+	}
+
+	/**
+	 * @param edge An edge of the tree
+	 * @return how much later its transmissions could have been delivered without delaying
+	 * the end of the run, or -1 if it only carried messages that nothing waited for
+	 */
+	public long getSlack(int edge) {
+		return this.edgeSlacks[edge];
+	}
+
+	/**
+	 * @return the number of edges without slack
+	 */
+	public int getCriticalEdgeCount() {
+		int count = 0;
+		for (long slack : this.edgeSlacks) {
+			if (slack == 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of transmissions in progress at an average moment of the run
+	 */
+	public double getAverageParallelism() {
+		return this.length > 0 ? (double)this.transmissionTime / this.length : 0;
+	}
+
+	/**
+	 * @return the number of transmissions in progress at regular moments of the run, from
+	 * its start to just before its end
+	 */
+	public int[] getParallelismProfile() {
+		return this.profile.clone();
+	}
+
+	/**
+	 * Returns the message that held another one back: the transmission it waited for on
+	 * its edge if it had to wait, its cause otherwise
+	 */
+	private int getPredecessor(int message) {
+		if (this.trace.getStart(message) > this.trace.getSendTime(message)) {
+			return this.trace.getBlocker(message);
+		}
+		return this.trace.getCause(message);
+	}
+
+	/**
+	 * Counts a transmission in the samples taken while it was in progress, as the
+	 * difference between consecutive samples
+	 */
+	private void sample(long start, long end) {
+		int samples = this.profile.length;
+		if (samples == 0 || this.length == 0) {
+			return;
+		}
+		// Sample i is taken at i * length / samples, so the transmission covers the
+		// samples from the first at or after its start to the last before its end
+		int first = (int)((start * samples + this.length - 1) / this.length);
+		int after = (int)((end * samples + this.length - 1) / this.length);
+		if (first < Math.min(after, samples)) {
+			this.profile[first]++;
+			if (after < samples) {
+				this.profile[after]--;
+			}
+		}
+	}
+
+	/**
+	 * Measures the sub-tree of the sender of each hop, with the tree rooted at the center
+	 */
+	private int[] measureSubtrees(TreeTopology topology, int center) {
+		int numNodes = topology.getNodeCount();
+		int[] sizes = new int[this.hops.length];
+		if (numNodes == 0) {
+			return sizes;
+		}
+
+		// Number the nodes in breadth-first order from the center, then add up the
+		// sizes from the leaves
+		int[] order = new int[numNodes];
+		int[] parents = new int[numNodes];
+		int[] subtrees = new int[numNodes];
+		int root = center >= 0 ? center : 0;
+		parents[root] = -1;
+		order[0] = root;
+		int reached = 1;
+		for (int i = 0; i < reached; i++) {
+			int node = order[i];
+			int firstPort = topology.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + topology.getDegree(node); port++) {
+				int neighbour = topology.getTarget(port);
+				if (neighbour != parents[node]) {
+					parents[neighbour] = node;
+					order[reached++] = neighbour;
+				}
+			}
+		}
+		for (int i = reached - 1; i >= 0; i--) {
+			int node = order[i];
+			subtrees[node]++;
+			if (parents[node] >= 0) {
+				subtrees[parents[node]] += subtrees[node];
+			}
+		}
+
+		for (int hop = 0; hop < this.hops.length; hop++) {
+			int sender = this.trace.getSender(this.hops[hop]);
+			int receiver = this.trace.getReceiver(this.hops[hop]);
+			if (sender == receiver) {
+				sizes[hop] = 1;
+			} else {
+				sizes[hop] = parents[sender] == receiver ? subtrees[sender] : numNodes - subtrees[receiver];
+			}
+		}
+		return sizes;
+	}
+}
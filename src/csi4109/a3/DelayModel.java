@@ -0,0 +1,19 @@
+package csi4109.a3;
+
+/**
+ * A model of the time a transmission takes to traverse an edge. Each transmission draws
+ * its delay from a {@link DelayRandom} seeded for it alone, from the seed of the edge as
+ * described by {@link EdgeDelays}, so that edges never contend on a shared generator
+ * and a run can be repeated exactly
+ */
+public interface DelayModel {
+
+	/**
+	 * Draws the delay of the next transmission
+	 * 
+	 * @param random The generator of the transmission
+	 * @param messageSize The size, in bytes, of the transmitted data
+	 * @return the delay of the transmission, in milliseconds
+	 */
+	int nextDelay(DelayRandom random, int messageSize);
+}
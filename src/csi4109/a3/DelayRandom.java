@@ -0,0 +1,81 @@
+package csi4109.a3;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generator from which a {@link DelayModel} draws the delay of a transmission. It runs
+ * the SplitMix64 algorithm of {@link SplittableRandom} and draws the exact same numbers
+ * as a {@link SplittableRandom} built from the same seed, but it can be seeded again, so
+ * that an engine reuses a single instance for every transmission instead of allocating
+ * a generator per delay
+ */
+public class DelayRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; // Increment of SplittableRandom(long)
+
+	private long seed;
+
+	/**
+	 * Constructs a {@link DelayRandom} instance, which must be seeded before any draw
+	 */
+	public DelayRandom() {
+	}
+
+	/**
+	 * Starts the sequence of numbers that new SplittableRandom(seed) would draw
+	 *
+	 * @param seed The seed of the sequence
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return a uniformly distributed int, like {@link SplittableRandom#nextInt()}
+	 */
+	public int nextInt() {
+		long z = this.seed += GOLDEN_GAMMA;
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	/**
+	 * Draws an int between 0 and the bound, like {@link SplittableRandom#nextInt(int)}:
+	 * the candidates that would make some values more likely than others are rejected
+	 *
+	 * @param bound The bound, exclusive
+	 * @return a uniformly distributed int from 0 to bound - 1
+	 * @throws IllegalArgumentException if the bound is not positive
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("The bound must be positive, not " + bound);
+		}
+		int mask = bound - 1;
+		int r = this.nextInt();
+		if ((bound & mask) == 0) {
+			return r & mask;
+		}
+		for (int u = r >>> 1; u + mask - (r = u % bound) < 0; u = this.nextInt() >>> 1) {
+		}
+		return r;
+	}
+
+	/**
+	 * @return a uniformly distributed long, like {@link SplittableRandom#nextLong()}
+	 */
+	public long nextLong() {
+		long z = this.seed += GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return a uniformly distributed double from 0 inclusive to 1 exclusive, like
+	 * {@link SplittableRandom#nextDouble()}
+	 */
+	public double nextDouble() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
@@ -0,0 +1,480 @@
+package csi4109.a3;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import csi4109.a3.Message.MessageType;
+import csi4109.a3.ProtocolTransitions.Engine;
+
+/**
+ * Deterministic, single-threaded engine for the saturation algorithm. It runs the
+ * same protocol as {@link NodeWrapper}, but as a discrete event simulation over a
+ * {@link TreeTopology}: deliveries are taken from an {@link EventQueue} in order of
+ * simulated time and each edge transmits its messages one after the other, like an
+ * {@link EdgeWrapper} does. In batch mode, the messages sent over a busy edge wait for
+ * it in a second queue and leave together once it is free, after every delivery of that
+ * moment, with a delay drawn for the size of the whole batch. Given the seed of the run, the choice of
+ * initiators, every delay and the delivery order are exactly reproducible, and the
+ * order of the deliveries is summarized by a fingerprint that can be compared between
+ * builds. All of the per-node and per-port state is kept in the columnar arrays of a
+ * {@link ProtocolState}, which lets a run be saved between two deliveries with a
+ * {@link SimulationCheckpoint} and resumed later, possibly on another host
+ */
+public class DeterministicSimulator {
+
+	// Message types, as stored in the event queue
+	private static final int WAKE_UP = MessageType.WAKE_UP.ordinal();
+	private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+	// Parameters of the FNV-1a hash used for the fingerprint
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private ConfigurationData data;
+	private TreeTopology topology;
+	private EventQueue queue;
+	private EdgeDelays delays; // Draws the delay of each transmission
+	private boolean batchTransmissions;
+	private int[] initiators;
+	private SimulationControl control; // Lets the run be paused, or null
+	private volatile File checkpointRequest; // Where to save a checkpoint at the next delivery, or null
+	private CausalTrace trace; // Records the cause of every message, or null
+
+	private ProtocolState state; // Per-node and per-port state of the protocol
+
+	// Sends the messages of the nodes over the edges of the simulator. Nothing is displayed
+	private final Engine<RuntimeException> engine = new Engine<RuntimeException>() {
+		@Override
+		public void send(int node, int port, int type, long firstValue, long secondValue) {
+			DeterministicSimulator.this.send(node, port, type, firstValue, secondValue);
+		}
+
+		@Override
+		public void stateChanged(int node, int state) {
+		}
+
+		@Override
+		public void subtreeReceived(int node, int port, int eccentricity, long numPaths) {
+		}
+
+		@Override
+		public void resultReceived(int node, long result) {
+		}
+	};
+
+	// Per-edge state, used to serialize the transmissions of each edge
+	private long[] transmissionEnds;
+
+	// Messages waiting for their batch to leave, at the time it leaves
+	private EventQueue batches;
+	private int[] batchSizes; // Size of the batch waiting on each edge, in bytes, or 0 once it left
+
+	// Statistics of the run
+	private long now = 0;
+	private long messageCount = 0;
+	private long eventCount = 0;
+	private long fingerprint = FNV_OFFSET_BASIS;
+	private long[] inFlight = new long[MessageType.values().length]; // Queued deliveries of each type
+
+	/**
+	 * Constructs a {@link DeterministicSimulator} instance. The generator of the run is used,
+	 * in order, to select the initiators, to seed each edge and to draw the delays of the
+	 * initiators, just like {@link Main} does for the threaded engine
+	 *
+	 * @param topology The tree on which to run the algorithm
+	 * @param data The parameters of the run
+	 * @param random The generator of the run, positioned after the generation of the tree
+	 */
+	public DeterministicSimulator(TreeTopology topology, ConfigurationData data, SplittableRandom random) {
+		int numNodes = topology.getNodeCount();
+		int numEdges = topology.getEdgeCount();
+
+		this.data = data;
+		this.topology = topology;
+		this.queue = new EventQueue();
+		this.batchTransmissions = data.batchTransmissions;
+
+		this.state = new ProtocolState(topology, data.stateStorage);
+		this.transmissionEnds = new long[numEdges];
+		this.batches = new EventQueue();
+		this.batchSizes = new int[numEdges];
+
+		// Consume the generator of the run in the same order as the threaded engine
+		this.initiators = InitiatorSelection.select(numNodes, data.initiators, random);
+		this.delays = new EdgeDelays(data.delayType.createModel(data.maxTransmissionDelay), numEdges, random);
+		for (int initiator : this.initiators) {
+			int delay = data.maxInitiatorDelay > 0 ? random.nextInt(data.maxInitiatorDelay) : 0;
+			this.queue.add(delay, initiator, -1, WAKE_UP, 0, 0);
+			this.inFlight[WAKE_UP]++;
+		}
+	}
+
+	/**
+	 * Constructs a {@link DeterministicSimulator} instance from the state written by
+	 * {@link #write(DataOutput)}. The run continues exactly where it was saved, unless
+	 * the transmission parameters of the configuration were changed
+	 *
+	 * @param data The parameters of the run
+	 * @param in The input from which to read the state
+	 * @throws IOException
+	 */
+	DeterministicSimulator(ConfigurationData data, DataInput in) throws IOException {
+		this.data = data;
+		this.topology = TreeTopology.read(in);
+		this.state = new ProtocolState(this.topology, data.stateStorage, in);
+		this.queue = EventQueue.read(in);
+		this.delays = new EdgeDelays(data.delayType.createModel(data.maxTransmissionDelay), in);
+		this.batchTransmissions = data.batchTransmissions;
+
+		this.initiators = new int[in.readInt()];
+		for (int i = 0; i < this.initiators.length; i++) {
+			this.initiators[i] = in.readInt();
+		}
+		int numEdges = this.topology.getEdgeCount();
+		this.transmissionEnds = new long[numEdges];
+		this.batchSizes = new int[numEdges];
+		for (int edge = 0; edge < numEdges; edge++) {
+			this.transmissionEnds[edge] = in.readLong();
+			this.batchSizes[edge] = in.readInt();
+		}
+		this.batches = EventQueue.read(in);
+		for (int type = 0; type < this.inFlight.length; type++) {
+			this.inFlight[type] = in.readLong();
+		}
+		this.now = in.readLong();
+		this.messageCount = in.readLong();
+		this.eventCount = in.readLong();
+		this.fingerprint = in.readLong();
+	}
+
+	/**
+	 * Writes the state of the run, between two deliveries
+	 *
+	 * @param out The output to which to write
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		this.topology.write(out);
+		this.state.write(out);
+		this.queue.write(out);
+		this.delays.write(out);
+
+		out.writeInt(this.initiators.length);
+		for (int initiator : this.initiators) {
+			out.writeInt(initiator);
+		}
+		for (int edge = 0; edge < this.transmissionEnds.length; edge++) {
+			out.writeLong(this.transmissionEnds[edge]);
+			out.writeInt(this.batchSizes[edge]);
+		}
+		this.batches.write(out);
+		for (long count : this.inFlight) {
+			out.writeLong(count);
+		}
+		out.writeLong(this.now);
+		out.writeLong(this.messageCount);
+		out.writeLong(this.eventCount);
+		out.writeLong(this.fingerprint);
+	}
+
+	/**
+	 * @return the parameters of the run. Changes to the transmission parameters
+	 * only apply once {@link #reconfigure()} is called
+	 */
+	public ConfigurationData getConfiguration() {
+		return this.data;
+	}
+
+	/**
+	 * Applies the delay distribution, maximum delay and batching mode of the configuration
+	 * to the transmissions that have not started yet. This lets a variation of a run be
+	 * forked from a checkpoint
+	 */
+	public void reconfigure() {
+		this.delays.setDelayModel(this.data.delayType.createModel(this.data.maxTransmissionDelay));
+		this.batchTransmissions = this.data.batchTransmissions;
+	}
+
+	/**
+	 * Asks for a checkpoint to be saved before the next delivery. The request can come
+	 * from any thread, for example from the {@link SimulationMonitor}
+	 *
+	 * @param file The file to which to save the checkpoint
+	 */
+	public void requestCheckpoint(File file) {
+		this.checkpointRequest = file;
+	}
+
+	/**
+	 * Records the cause of every message of the run in a {@link CausalTrace}, from which
+	 * a {@link CriticalPath} can be found once the run is over
+	 *
+	 * @param trace The trace in which to record the run
+	 * @throws IllegalStateException if the run has started, or was resumed from a checkpoint
+	 */
+	public void setTrace(CausalTrace trace) {
+		if (this.eventCount > 0 || this.messageCount > 0) {
+			throw new IllegalStateException("Only a run that has not started yet can be traced");
+		}
+		this.trace = trace;
+
+		// The WAKE UPs of the initiators were scheduled first, in order
+		for (int i = 0; i < this.initiators.length; i++) {
+			trace.recordSpontaneous(i);
+		}
+	}
+
+	/**
+	 * Lets the run be paused through a {@link SimulationControl}. The simulator runs as
+	 * fast as it can, so the speed of the control does not apply
+	 *
+	 * @param control The control to follow
+	 */
+	public void setControl(SimulationControl control) {
+		this.control = control;
+	}
+
+	/**
+	 * Runs the algorithm until no message is left in transit
+	 */
+	public void run() {
+		this.run(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Runs the algorithm until no message is left in transit, or until a number of
+	 * deliveries were processed since the start of the run
+	 *
+	 * @param maxDeliveries The number of deliveries after which to stop
+	 * @return true if the run is over, false if it stopped early
+	 */
+	public boolean run(long maxDeliveries) {
+		while (!this.queue.isEmpty() || !this.batches.isEmpty()) {
+			if (this.eventCount >= maxDeliveries) {
+				return false;
+			}
+
+			// Batches leave once every delivery up to their departure was handled
+			if (this.batches.getNextTime() < this.queue.getNextTime()) {
+				this.departBatches();
+				continue;
+			}
+
+			// Stop between two deliveries when asked to
+			if (this.control != null && this.control.isPaused()) {
+				try {
+					this.control.awaitRunning();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			if (this.checkpointRequest != null) {
+				this.saveRequestedCheckpoint();
+			}
+
+			this.queue.poll();
+			this.now = this.queue.getTime();
+			int node = this.queue.getReceiver();
+			int port = this.queue.getPort();
+			int type = this.queue.getType();
+			long firstValue = this.queue.getFirstValue();
+			long secondValue = this.queue.getSecondValue();
+
+			this.inFlight[type]--;
+			this.eventCount++;
+			this.fingerprint = this.hash(this.fingerprint, this.now);
+			this.fingerprint = this.hash(this.fingerprint, ((long)node << 32) | (port & 0xffffffffL));
+			this.fingerprint = this.hash(this.fingerprint, type);
+			this.fingerprint = this.hash(this.fingerprint, firstValue);
+			this.fingerprint = this.hash(this.fingerprint, secondValue);
+
+			SimulationEvents.messageDelivered(MESSAGE_TYPES[type], node, port >= 0 ? this.topology.getEdge(port) : -1);
+			if (this.trace != null) {
+				this.trace.recordDelivery(this.queue.getSequence(), this.now, node, port, type);
+			}
+			if (ProtocolTransitions.deliver(this.state, node, port, type, firstValue, secondValue, this.engine)
+					&& this.trace != null) {
+				this.trace.recordStateChange();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the indices of the initiator nodes, in the order they were selected
+	 */
+	public int[] getInitiators() {
+		return this.initiators.clone();
+	}
+
+	/**
+	 * @return the state of every node at the end of the run
+	 */
+	public ProtocolState getProtocolState() {
+		return this.state;
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return the state of the node, as defined by {@link NodeWrapper}
+	 */
+	public int getState(int node) {
+		return this.state.getState(node);
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return the number of diametral paths the node was notified of, or -1 if it was not notified
+	 */
+	public long getResult(int node) {
+		return this.state.getResult(node);
+	}
+
+	/**
+	 * @return the node that computed the number of diametral paths, or -1 if none did
+	 */
+	public int getCenter() {
+		return this.state.getCenter();
+	}
+
+	/**
+	 * @return the number of diametral paths computed by the center, or -1 if none was found
+	 */
+	public long getDiametralPaths() {
+		return this.state.getResult();
+	}
+
+	/**
+	 * @return the simulated time, in milliseconds, of the last delivery
+	 */
+	public long getSimulatedTime() {
+		return this.now;
+	}
+
+	/**
+	 * @return the number of messages sent between nodes
+	 */
+	public long getMessageCount() {
+		return this.messageCount;
+	}
+
+	/**
+	 * @return the number of deliveries processed, including the spontaneous WAKE UPs
+	 */
+	public long getEventCount() {
+		return this.eventCount;
+	}
+
+	/**
+	 * @param type A type of message
+	 * @return the number of messages of that type sent but not delivered yet
+	 */
+	public long getInFlight(MessageType type) {
+		return this.inFlight[type.ordinal()];
+	}
+
+	/**
+	 * @return the number of deliveries waiting in the event queue, or for their batch to leave
+	 */
+	public int getQueuedEvents() {
+		return this.queue.size() + this.batches.size();
+	}
+
+	/**
+	 * @return a hash of the sequence of deliveries. Two runs with the same fingerprint
+	 * delivered the same messages to the same nodes at the same times, in the same order
+	 */
+	public String getFingerprint() {
+		return String.format("%016x", this.fingerprint);
+	}
+
+	/**
+	 * Saves the checkpoint asked for by {@link #requestCheckpoint(File)}
+	 */
+	private void saveRequestedCheckpoint() {
+		File file = this.checkpointRequest;
+		this.checkpointRequest = null;
+		try {
+			SimulationCheckpoint.save(this, file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sends a message through a half-edge and schedules its delivery. Each edge transmits
+	 * one message (or one batch) at a time, so the transmission only starts once the
+	 * edge has delivered everything that was sent before. In batch mode, the message
+	 * joins the batch of the edge, whose delay is only drawn when it leaves
+	 */
+	private void send(int node, int port, int type, long firstValue, long secondValue) {
+		int edge = this.topology.getEdge(port);
+		long start = Math.max(this.now, this.transmissionEnds[edge]);
+		int size = Message.getEncodedSize(MESSAGE_TYPES[type]);
+
+		this.messageCount++;
+		this.inFlight[type]++;
+		SimulationEvents.messageSent(MESSAGE_TYPES[type], node, edge);
+		if (this.batchTransmissions) {
+			this.batchSizes[edge] += size;
+			long batched = this.batches.add(start, this.topology.getTarget(port), this.topology.getTwin(port), type,
+					firstValue, secondValue);
+			if (this.trace != null) {
+				this.trace.recordBatched(batched);
+			}
+			return;
+		}
+
+		long delivery = start + this.delays.nextDelay(edge, size);
+		this.transmissionEnds[edge] = delivery;
+		long sequence = this.queue.add(delivery, this.topology.getTarget(port), this.topology.getTwin(port), type,
+				firstValue, secondValue);
+		if (this.trace != null) {
+			this.trace.recordTransmission(edge);
+			this.trace.recordSend(sequence, port, start);
+		}
+	}
+
+	/**
+	 * Sends off every batch leaving at the time of the next departure. The delay of a
+	 * batch is drawn for the size of all of its messages, like that of a batch of an
+	 * {@link EdgeWrapper}, and they are all delivered together
+	 */
+	private void departBatches() {
+		long time = this.batches.getNextTime();
+		while (this.batches.getNextTime() == time) {
+			this.batches.poll();
+			int port = this.batches.getPort();
+			int edge = this.topology.getEdge(port);
+			if (this.batchSizes[edge] > 0) {
+				// First message of the batch
+				this.transmissionEnds[edge] = time + this.delays.nextDelay(edge, this.batchSizes[edge]);
+				this.batchSizes[edge] = 0;
+				if (this.trace != null) {
+					this.trace.recordTransmission(edge);
+				}
+			}
+
+			long sequence = this.queue.add(this.transmissionEnds[edge], this.batches.getReceiver(), port,
+					this.batches.getType(), this.batches.getFirstValue(), this.batches.getSecondValue());
+			if (this.trace != null) {
+				this.trace.recordSend(sequence, port, time, this.batches.getSequence());
+			}
+		}
+	}
+
+	/**
+	 * Mixes a value into a 64-bit FNV-1a hash
+	 */
+	private long hash(long hash, long value) {
+		for (int i = 0; i < 8; i++) {
+			hash ^= value & 0xff;
+			hash *= FNV_PRIME;
+			value >>>= 8;
+		}
+		return hash;
+	}
+}
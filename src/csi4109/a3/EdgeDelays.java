@@ -0,0 +1,107 @@
+package csi4109.a3;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Draws the transmission delays of every edge of a run. Each edge has its own seed,
+ * taken from the generator of the run, and the delay of its n-th transmission only
+ * depends on that seed and on n. The generators of all the edges are then summed up
+ * by two numbers per edge, which keeps them small and lets them be saved with a
+ * {@link SimulationCheckpoint}. Every delay is drawn from the same {@link DelayRandom},
+ * seeded again for each transmission, so drawing one allocates nothing
+ */
+public class EdgeDelays {
+
+	// Odd constant separating the seeds of consecutive draws of an edge
+	private static final long DRAW_GAMMA = 0xbf58476d1ce4e5b9L;
+
+	private DelayModel delayModel;
+	private long[] seeds; // Seed of each edge
+	private long[] draws; // Number of delays drawn by each edge
+	private final DelayRandom random = new DelayRandom(); // Seeded again for each delay
+
+	/**
+	 * Constructs an {@link EdgeDelays} instance, taking one seed per edge from the
+	 * generator of the run, in order of edge index
+	 *
+	 * @param delayModel The distribution of the delays
+	 * @param numEdges The number of edges in the tree
+	 * @param random The generator of the run
+	 */
+	public EdgeDelays(DelayModel delayModel, int numEdges, SplittableRandom random) {
+		this.delayModel = delayModel;
+		this.seeds = new long[numEdges];
+		this.draws = new long[numEdges];
+		for (int edge = 0; edge < numEdges; edge++) {
+			this.seeds[edge] = random.nextLong();
+		}
+	}
+
+	/**
+	 * Constructs an {@link EdgeDelays} instance from the state written by {@link #write(DataOutput)}
+	 *
+	 * @param delayModel The distribution of the delays
+	 * @param in The input from which to read the state
+	 * @throws IOException
+	 */
+	EdgeDelays(DelayModel delayModel, DataInput in) throws IOException {
+		int numEdges = in.readInt();
+		this.delayModel = delayModel;
+		this.seeds = new long[numEdges];
+		this.draws = new long[numEdges];
+		for (int edge = 0; edge < numEdges; edge++) {
+			this.seeds[edge] = in.readLong();
+			this.draws[edge] = in.readLong();
+		}
+	}
+
+	/**
+	 * Seeds the generator from which an edge draws the delay of one of its transmissions
+	 *
+	 * @param random The generator to seed
+	 * @param seed The seed of the edge
+	 * @param draw The number of delays the edge drew before this one
+	 * @return the generator, ready for the transmission
+	 */
+	public static DelayRandom seedGenerator(DelayRandom random, long seed, long draw) {
+		random.setSeed(seed + draw * DRAW_GAMMA);
+		return random;
+	}
+
+	/**
+	 * Draws the delay of the next transmission of an edge
+	 *
+	 * @param edge The edge performing the transmission
+	 * @param messageSize The size, in bytes, of the transmitted data
+	 * @return the delay of the transmission, in milliseconds
+	 */
+	public int nextDelay(int edge, int messageSize) {
+		return this.delayModel.nextDelay(seedGenerator(this.random, this.seeds[edge], this.draws[edge]++), messageSize);
+	}
+
+	/**
+	 * Replaces the distribution of the delays drawn from now on
+	 *
+	 * @param delayModel The new distribution
+	 */
+	public void setDelayModel(DelayModel delayModel) {
+		this.delayModel = delayModel;
+	}
+
+	/**
+	 * Writes the seed and the number of draws of every edge
+	 *
+	 * @param out The output to which to write
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(this.seeds.length);
+		for (int edge = 0; edge < this.seeds.length; edge++) {
+			out.writeLong(this.seeds[edge]);
+			out.writeLong(this.draws[edge]);
+		}
+	}
+}
@@ -2,83 +2,469 @@ package csi4109.a3;
 
 import static csi4109.a3.Message.MessageType.TERMINATE_EDGE;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
 
 import org.graphstream.graph.Edge;
 import org.graphstream.graph.Node;
 import org.graphstream.ui.spriteManager.Sprite;
 import org.graphstream.ui.spriteManager.SpriteManager;
 
+import csi4109.a3.Message.MessageType;
+
 /**
- * Wrapper class for {@link Edge} instances. These objects run
- * in their own threads. They take care of transferring messages
- * between nodes and add variable delay to message transmission
+ * Wrapper class for {@link Edge} instances. These objects are
+ * {@link Actor}s. They take care of transferring messages
+ * between nodes and add variable delay to message transmission.
+ * A transmission is a series of steps on the shared timer, during
+ * which the edge handles no other message. Transmissions follow the
+ * pace set by the {@link SimulationControl}. With the Ring transport,
+ * the messages wait in the {@link MessageRing} of the run instead of
+ * the mailbox, and a transmission only moves its cursors
  */
-public class EdgeWrapper extends Thread {
+public class EdgeWrapper extends Actor {
 	
 	private static final int ANIMATION_PERIOD = 50;
 	private static final String SPRITE_ID = "sprite";
+	private static final long ROOM_CHECK_PERIOD = 100000; // How often a sender finding its ring full checks it again, in nanoseconds
+	private static final MessageType[] MESSAGE_TYPES = MessageType.values();
 	
-	private static int CURRENT_SPRITE = 0;
-
 	private Edge edge;
-	private SpriteManager manager; // Manager for animated sprites
-	private MessageBox messageBox;
-	private Map<Message, Node> messageNodeMap; // Mapping from message to sending node
-	private int maxEdgeDelay;
+	private SimulationContext context; // The run to which this edge belongs
+	private SpriteManager manager; // Manager for animated sprites, or null if the run is not displayed
+	private Semaphore graphSemaphore; // Guards the graph of a displayed run
+	private SimulationControl control; // Pace of the run
+	private SimulationMonitor monitor;
+	private DelayModel delayModel; // Distribution of the transmission delays
+	private long seed; // Seed from which this edge derives the generator of each delay
+	private long draws = 0; // Number of delays drawn so far
+	private DelayRandom random = new DelayRandom(); // Seeded again for each delay
+	private boolean batchTransmissions; // Whether queued messages are sent together as a single batch
+	private MessageRing ring; // Ring of the run, or null if the messages travel in envelopes
+	private int[] ports; // Ports of the source and target nodes, which number the two directions in the ring
+	private int nextDirection = 0; // Direction whose messages are transmitted next, as an index in ports
 	
 	/**
 	 * Constructs an {@link EdgeWrapper} instance
 	 * 
 	 * @param edge The {@link Edge} to be wrapped
-	 * @param manager The {@link SpriteManager} to use for creating {@link Sprite}s
+	 * @param context The {@link SimulationContext} of the run, which gives the delays,
+	 * the batching mode, the capacity of the mailbox and the {@link SpriteManager} to use
+	 * for creating {@link Sprite}s
+	 * @param seed The seed of this edge, taken from the generator of the run
 	 */
-	public EdgeWrapper(Edge edge, SpriteManager manager, int maxEdgeDelay) {
+	public EdgeWrapper(Edge edge, SimulationContext context, long seed) {
+		super(new MessageBox(context.getConfiguration().mailboxCapacity,
+				context.getConfiguration().backpressurePolicy));
 		this.edge = edge;
-		this.manager = manager;
-		this.messageBox = new MessageBox();
-		this.messageNodeMap = new HashMap<Message, Node>();
-		this.maxEdgeDelay = maxEdgeDelay;
+		this.context = context;
+		this.manager = context.getSpriteManager();
+		this.graphSemaphore = context.getGraphSemaphore();
+		this.control = context.getControl();
+		this.monitor = context.getMonitor();
+		this.delayModel = context.getDelayModel();
+		this.seed = seed;
+		this.batchTransmissions = context.getConfiguration().batchTransmissions;
+		this.ring = context.getMessageRing();
+		int port = context.getTopology().getPort(edge.getIndex(), edge.getSourceNode().getIndex());
+		this.ports = new int[] { port, context.getTopology().getTwin(port) };
 	}
 	
 	/**
-	 * Delegate method for storing messages in this {@link EdgeWrapper}'s {@link MessageBox} 
+	 * Stores a message in this {@link EdgeWrapper}'s {@link MessageBox}, or in the ring of
+	 * its sender's direction, to be transmitted to the other end of the edge. A sender
+	 * finding its ring full waits until the receiver has read a message
 	 * 
 	 * @param message The {@link Message} to store
 	 * @param sender The {@link Node} that is sending the message
 	 * @throws InterruptedException
 	 */
 	public void sendMessage(Message message, Node sender) throws InterruptedException {
-		this.messageNodeMap.put(message, sender);
-		this.messageBox.sendMessage(message);
+		if (message.getMessageType() != TERMINATE_EDGE) {
+			this.monitor.messageSent(message.getMessageType());
+		}
+		SimulationEvents.MessageSent event = SimulationEvents.beginMessageSent();
+		if (this.ring != null && sender != null) {
+			int port = this.ports[this.edge.getSourceNode().equals(sender) ? 0 : 1];
+			while (!this.ring.offer(port, message)) {
+				this.awaitRoom(port);
+			}
+			this.signal();
+		} else {
+			this.sendMessage(new Envelope(message, sender, this.edge));
+		}
+		SimulationEvents.endMessageSent(event, message.getMessageType(), sender != null ? sender.getIndex() : -1,
+				this.edge.getIndex());
 	}
-
+	
+	/**
+	 * Stores a message in this {@link EdgeWrapper}'s {@link MessageBox} if it has room
+	 * for it, which is how nodes send under the Credit policy
+	 * 
+	 * @param message The {@link Message} to store
+	 * @param sender The {@link Node} that is sending the message
+	 * @return true if the message was stored, false if the sender must wait for a credit
+	 * @see #awaitCredit(Runnable)
+	 */
+	public boolean offerMessage(Message message, Node sender) {
+		if (!this.offerMessage(new Envelope(message, sender, this.edge))) {
+			return false;
+		}
+		this.monitor.messageSent(message.getMessageType());
+		SimulationEvents.messageSent(message.getMessageType(), sender.getIndex(), this.edge.getIndex());
+		return true;
+	}
+	
+	/**
+	 * Registers a callback to run once this {@link EdgeWrapper} has room for another message
+	 * 
+	 * @param callback The task to run once a credit is available
+	 * @return true if the callback was registered, false if there is room already
+	 */
+	public boolean awaitCredit(Runnable callback) {
+		return this.getMessageBox().awaitCredit(callback);
+	}
+	
+	/**
+	 * @return the number of messages waiting to be transmitted, in the mailbox and in the rings
+	 */
 	@Override
-	public void run() {
-		try {
-			// Edges loop forever
-			while (true) {
-				// Wait for a message to arrive
-				Message message = this.messageBox.retrieveMessage();
-				
-				if (message.getMessageType() == TERMINATE_EDGE) {
-					break;
+	public int getBacklog() {
+		int backlog = super.getBacklog();
+		if (this.ring != null) {
+			backlog += this.ring.getPending(this.ports[0]) + this.ring.getPending(this.ports[1]);
+		}
+		return backlog;
+	}
+	
+	/**
+	 * Starts the transmission of the messages waiting in the ring, the two directions taking
+	 * turns. The TERMINATE EDGE message, which the edge receives in its mailbox, is only
+	 * handled once both rings are empty
+	 * 
+	 * @return false if there was no message to transmit
+	 * @throws InterruptedException
+	 */
+	@Override
+	protected boolean receiveNext() throws InterruptedException {
+		if (this.ring != null) {
+			for (int i = 0; i < this.ports.length; i++) {
+				int direction = this.nextDirection;
+				this.nextDirection ^= 1;
+				if (this.ring.getPending(this.ports[direction]) > 0) {
+					this.transmitRing(direction);
+					return true;
 				}
+			}
+		}
+		return super.receiveNext();
+	}
+	
+	@Override
+	protected boolean hasMessages() {
+		return super.hasMessages() || (this.ring != null
+				&& (this.ring.getPending(this.ports[0]) > 0 || this.ring.getPending(this.ports[1]) > 0));
+	}
+	
+	/**
+	 * Starts the transmission of a message. In batch mode, everything else that is queued
+	 * on the edge is transmitted along with it, as a single batch with a single delay and
+	 * a single delivery to each receiver. Messages going in the same direction are
+	 * delivered in the order they were sent
+	 * 
+	 * @param envelope The first {@link Envelope} to transmit
+	 * @throws InterruptedException
+	 */
+	@Override
+	protected void receive(Envelope envelope) throws InterruptedException {
+		if (envelope.getMessageType() == TERMINATE_EDGE) {
+			this.context.edgeTerminated();
+			return;
+		}
+		
+		List<Envelope> envelopes = new ArrayList<Envelope>();
+		envelopes.add(envelope);
+		if (this.batchTransmissions) {
+			envelopes.addAll(this.retrieveAllMessages());
+		}
+		
+		// Split the batch by sender, keeping the order of the messages. The envelopes
+		// already name the sender and this edge, so they are delivered as they are
+		Map<Node, List<Envelope>> batches = new LinkedHashMap<Node, List<Envelope>>();
+		int batchSize = 0;
+		boolean terminated = false;
+		for (Envelope queued : envelopes) {
+			if (queued.getMessageType() == TERMINATE_EDGE) {
+				terminated = true;
+				break;
+			}
+			
+			List<Envelope> batch = batches.get(queued.getSender());
+			if (batch == null) {
+				batch = new ArrayList<Envelope>();
+				batches.put(queued.getSender(), batch);
+			}
+			batch.add(queued);
+			batchSize += queued.getMessage().getEncodedSize();
+		}
+		
+		// "Transmit" the batch. No other message is handled until it is delivered
+		this.suspend();
+		new Transmission(this.generateEdgeDelay(batchSize), new ArrayList<Node>(batches.keySet()), batches, null,
+				terminated).run();
+	}
+	
+	/**
+	 * Starts the transmission of the next message of a direction of the ring. In batch
+	 * mode, every message waiting in either direction is transmitted along with it
+	 * 
+	 * @param direction The direction of the message, as an index in ports
+	 * @throws InterruptedException
+	 */
+	private void transmitRing(int direction) throws InterruptedException {
+		List<Node> senders = new ArrayList<Node>(this.ports.length);
+		int[] ends = new int[this.ports.length];
+		int batchSize = 0;
+		for (int i = 0; i < this.ports.length; i++) {
+			int port = this.ports[i];
+			int start = this.ring.getTransmitted(port);
+			ends[i] = start;
+			if (this.batchTransmissions) {
+				ends[i] = this.ring.getWritten(port);
+			} else if (i == direction) {
+				ends[i] = start + 1;
+			}
+			
+			for (int cursor = start; cursor != ends[i]; cursor++) {
+				batchSize += this.ring.getEncodedSize(port, cursor);
+			}
+			if (ends[i] != start) {
+				senders.add(i == 0 ? this.edge.getSourceNode() : this.edge.getTargetNode());
+			}
+		}
+		
+		this.suspend();
+		new Transmission(this.generateEdgeDelay(batchSize), senders, null, ends, false).run();
+	}
+	
+	/**
+	 * Waits until the ring of a direction has room for another message. The pool running
+	 * the sender is told, so that it can keep the receiver running
+	 * 
+	 * @param port The port through which the message leaves its sender
+	 * @throws InterruptedException
+	 */
+	private void awaitRoom(final int port) throws InterruptedException {
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			@Override
+			public boolean block() {
+				LockSupport.parkNanos(ROOM_CHECK_PERIOD);
+				return this.isReleasable();
+			}
+			
+			@Override
+			public boolean isReleasable() {
+				return EdgeWrapper.this.ring.hasRoom(port);
+			}
+		});
+	}
+	
+	/**
+	 * A transmission in progress on the edge. Each step moves a {@link Sprite} per sender
+	 * along the {@link Edge}, then schedules the next step on the shared timer. A step
+	 * taken while the run is paused does nothing but wait for the next one. If the run is
+	 * not displayed, the whole delay is a single step
+	 */
+	private class Transmission implements Runnable {
+		
+		private Map<Node, List<Envelope>> batches; // Messages to deliver, by sender, or null if they are in the ring
+		private int[] ends; // Cursor up to which each direction of the ring is delivered, or null
+		private boolean terminated; // Whether the edge terminates once the messages are delivered
+		private Sprite[] sprites;
+		private double[] positions; // Current position of each message
+		private double[] speeds; // Speed at which each message visually travels
+		private int countdown; // Amount of time left until the animation must terminate
+		private SimulationEvents.Transmission event; // Times the transmission from its first step to its delivery
+		
+		/**
+		 * Constructs a {@link Transmission} instance, with a {@link Sprite} per sender
+		 * if the run is displayed
+		 * 
+		 * @param duration The amount of time the transmission lasts
+		 * @param senders The {@link Node}s that sent the messages
+		 * @param batches The {@link Envelope}s to deliver, by sender, or null if the messages are in the ring
+		 * @param ends The cursor up to which to deliver each direction of the ring, or null
+		 * @param terminated Whether the edge terminates once the messages are delivered
+		 * @throws InterruptedException
+		 */
+		public Transmission(int duration, List<Node> senders, Map<Node, List<Envelope>> batches, int[] ends,
+				boolean terminated) throws InterruptedException {
+			this.batches = batches;
+			this.ends = ends;
+			this.terminated = terminated;
+			this.countdown = duration;
+			this.event = new SimulationEvents.Transmission();
+			this.event.begin();
+			
+			if (EdgeWrapper.this.manager == null) {
+				return;
+			}
+			
+			this.sprites = new Sprite[senders.size()];
+			this.positions = new double[senders.size()];
+			this.speeds = new double[senders.size()];
+			for (int i = 0; i < this.sprites.length; i++) {
+				this.sprites[i] = EdgeWrapper.this.createSprite(EdgeWrapper.this.manager, "message");
+				this.speeds[i] = 1.0 / duration;
 				
-				// "Transmit" the message
-				this.animateMessage(generateEdgeDelay(), message);
-				
-				// Notify the receiver of the new message
-				Node sender = this.messageNodeMap.get(message);
-				Node receiver = this.edge.getOpposite(sender);
-				message.setEdge(this.edge);
-				Main.nodeWrapperMap.get(receiver).sendMessage(message);
+				// Switch directions depending on which nodes the edge considers
+				// to be the source and target nodes
+				if (EdgeWrapper.this.edge.getTargetNode().equals(senders.get(i))) {
+					this.speeds[i] = -this.speeds[i];
+					this.positions[i] = 1.0;
+				}
+			}
+		}
+		
+		@Override
+		public void run() {
+			try {
+				if (EdgeWrapper.this.control.isPaused()) {
+					// Hold the messages where they are
+					Actor.schedule(this, ANIMATION_PERIOD);
+				} else if (this.countdown > 0) {
+					Actor.schedule(this, EdgeWrapper.this.control.scale(this.step()));
+				} else {
+					this.deliver();
+				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		/**
+		 * Moves the {@link Sprite}s to their current position
+		 * 
+		 * @return the amount of simulated time until the next step
+		 * @throws InterruptedException
+		 */
+		private int step() throws InterruptedException {
+			if (this.sprites == null) {
+				int step = this.countdown;
+				this.countdown = 0;
+				return step;
+			}
+			
+			int edgeIndex = EdgeWrapper.this.edge.getIndex();
+			SimulationEvents.acquireGraph(EdgeWrapper.this.graphSemaphore, -1, edgeIndex);
+			SimulationEvents.GraphUpdate update = SimulationEvents.beginGraphUpdate();
+			for (int i = 0; i < this.sprites.length; i++) {
+				this.sprites[i].setPosition(this.positions[i]); // Set the sprite in its new position
+			}
+			SimulationEvents.endGraphUpdate(update, -1, edgeIndex, "sprite position");
+			EdgeWrapper.this.graphSemaphore.release();
+			this.countdown -= ANIMATION_PERIOD; // Update countdown
+			for (int i = 0; i < this.sprites.length; i++) {
+				this.positions[i] += this.speeds[i] * ANIMATION_PERIOD; // Move the position relative to the time passed
+			}
+			return ANIMATION_PERIOD;
+		}
+		
+		/**
+		 * Notifies the receivers of the new messages, then lets the edge handle the
+		 * next ones
+		 * 
+		 * @throws InterruptedException
+		 */
+		private void deliver() throws InterruptedException {
+			int edgeIndex = EdgeWrapper.this.edge.getIndex();
+			if (this.sprites != null) {
+				SimulationEvents.acquireGraph(EdgeWrapper.this.graphSemaphore, -1, edgeIndex);
+				SimulationEvents.GraphUpdate update = SimulationEvents.beginGraphUpdate();
+				for (Sprite sprite : this.sprites) {
+					sprite.addAttribute("ui.class", "sent"); // Update the sprite's visual representation once finished
+				}
+				SimulationEvents.endGraphUpdate(update, -1, edgeIndex, "ui.class");
+				EdgeWrapper.this.graphSemaphore.release();
+			}
+			
+			if (this.ends != null) {
+				this.deliverRing(edgeIndex);
+			} else {
+				this.deliverEnvelopes(edgeIndex);
+			}
+			
+			if (this.terminated) {
+				EdgeWrapper.this.context.edgeTerminated();
+			} else {
+				EdgeWrapper.this.resume();
+			}
+		}
+		
+		/**
+		 * Hands the {@link Envelope}s to the mailboxes of their receivers
+		 * 
+		 * @param edgeIndex The index of the edge
+		 * @throws InterruptedException
+		 */
+		private void deliverEnvelopes(int edgeIndex) throws InterruptedException {
+			if (this.event.shouldCommit()) {
+				this.event.edge = edgeIndex;
+				for (List<Envelope> batch : this.batches.values()) {
+					for (Envelope delivered : batch) {
+						this.event.messages++;
+						this.event.bytes += delivered.getMessage().getEncodedSize();
+					}
+				}
+				this.event.commit();
+			}
+			
+			for (Map.Entry<Node, List<Envelope>> batch : this.batches.entrySet()) {
+				Node receiver = EdgeWrapper.this.edge.getOpposite(batch.getKey());
+				EdgeWrapper.this.context.getNodeWrapper(receiver).sendMessages(batch.getValue());
+				for (Envelope delivered : batch.getValue()) {
+					EdgeWrapper.this.monitor.messageDelivered(delivered.getMessageType());
+					SimulationEvents.messageDelivered(delivered.getMessageType(), receiver.getIndex(), edgeIndex);
+				}
+			}
+		}
+		
+		/**
+		 * Moves the transmitted cursor of each direction of the ring, which hands the
+		 * messages to their receivers
+		 * 
+		 * @param edgeIndex The index of the edge
+		 */
+		private void deliverRing(int edgeIndex) {
+			MessageRing ring = EdgeWrapper.this.ring;
+			for (int i = 0; i < this.ends.length; i++) {
+				int port = EdgeWrapper.this.ports[i];
+				int start = ring.getTransmitted(port);
+				if (start == this.ends[i]) {
+					continue;
+				}
 				
-				this.messageNodeMap.remove(message);
+				Node receiver = i == 0 ? EdgeWrapper.this.edge.getTargetNode() : EdgeWrapper.this.edge.getSourceNode();
+				for (int cursor = start; cursor != this.ends[i]; cursor++) {
+					MessageType type = MESSAGE_TYPES[ring.getType(port, cursor)];
+					this.event.messages++;
+					this.event.bytes += ring.getEncodedSize(port, cursor);
+					EdgeWrapper.this.monitor.messageDelivered(type);
+					SimulationEvents.messageDelivered(type, receiver.getIndex(), edgeIndex);
+				}
+				ring.transmit(port, this.ends[i]);
+				EdgeWrapper.this.context.getNodeWrapper(receiver).signal();
+			}
+			
+			if (this.event.shouldCommit()) {
+				this.event.edge = edgeIndex;
+				this.event.commit();
 			}
-		} catch (InterruptedException e) {
-			e.printStackTrace();
 		}
 	}
 	
@@ -91,7 +477,11 @@ public class EdgeWrapper extends Thread {
 	 * @param numPaths The value of the number of diametral paths to be displayed 
 	 * @throws InterruptedException
 	 */
-	public void displayInfo(Node node, int eccentricity, int numPaths) throws InterruptedException {
+	public void displayInfo(Node node, int eccentricity, long numPaths) throws InterruptedException {
+		if (this.manager == null) {
+			return;
+		}
+		
 		Sprite sprite = this.createSprite(this.manager, null);
 		sprite.setAttribute("ui.label", String.format("%d,%d", eccentricity, numPaths));
 		
@@ -102,43 +492,6 @@ public class EdgeWrapper extends Thread {
 		}
 	}
 	
-	/**
-	 * Animates a {@link Sprite} to traverse the length of the {@link Edge}
-	 * to simulated a message being sent
-	 * 
-	 * @param duration The amount of time to animate the {@link Sprite}
-	 * @param message The message being sent
-	 * @throws InterruptedException
-	 */
-	private void animateMessage(int duration, Message message) throws InterruptedException {
-		Sprite sprite = this.createSprite(this.manager, "message");
-		
-		int countdown = duration; // Amount of time left until the animation must terminate
-		double speed = 1.0 / duration; // Speed at which the message visually travels
-		double position = 0.0; // Current position of the message
-		Node messageSource = this.messageNodeMap.get(message); // Source from which the message is sent
-		
-		// Switch directions depending on which nodes the edge considers
-		// to be the source and target nodes
-		if (this.edge.getTargetNode().equals(messageSource)) {
-			speed = -speed;
-			position = 1.0;
-		}
-		
-		while (countdown > 0) {
-			Main.graphSemaphore.acquire();
-			sprite.setPosition(position); // Set the sprite in its new position
-			Main.graphSemaphore.release();
-			Thread.sleep(ANIMATION_PERIOD); // Wait
-			countdown -= ANIMATION_PERIOD; // Update countdown
-			position += speed * ANIMATION_PERIOD; // Move the position relative to the time passed
-		}
-		
-		Main.graphSemaphore.acquire();
-		sprite.addAttribute("ui.class", "sent"); // Update the sprite's visual representation once finished
-		Main.graphSemaphore.release();
-	}
-	
 	/**
 	 * Helper method for creating {@link Sprite}s
 	 * 
@@ -148,24 +501,27 @@ public class EdgeWrapper extends Thread {
 	 * @throws InterruptedException
 	 */
 	private Sprite createSprite(SpriteManager manager, String classes) throws InterruptedException {
-		Main.graphSemaphore.acquire();
-		Sprite sprite = manager.addSprite(String.format("%s%d", SPRITE_ID, CURRENT_SPRITE++));
+		SimulationEvents.acquireGraph(this.graphSemaphore, -1, this.edge.getIndex());
+		SimulationEvents.GraphUpdate update = SimulationEvents.beginGraphUpdate();
+		Sprite sprite = manager.addSprite(String.format("%s%d", SPRITE_ID, this.context.nextSpriteId()));
 		
 		if (classes != null) {
 			sprite.addAttribute("ui.class", classes);
 		}
 		
 		sprite.attachToEdge(this.edge.getId());
-		Main.graphSemaphore.release();
+		SimulationEvents.endGraphUpdate(update, -1, this.edge.getIndex(), "sprite");
+		this.graphSemaphore.release();
 		return sprite;
 	}
 	
 	/**
-	 * Generates a random delay
+	 * Generates a random delay from this edge's {@link DelayModel}
 	 * 
+	 * @param messageSize The size, in bytes, of the data to transmit
 	 * @return the randomly generated delay
 	 */
-	private int generateEdgeDelay() {
-		return (int)(Math.random() * this.maxEdgeDelay);
+	private int generateEdgeDelay(int messageSize) {
+		return this.delayModel.nextDelay(EdgeDelays.seedGenerator(this.random, this.seed, this.draws++), messageSize);
 	}
 }
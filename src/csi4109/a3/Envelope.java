@@ -0,0 +1,55 @@
+package csi4109.a3;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Node;
+
+/**
+ * A single delivery of a {@link Message}. A {@link Message} sent to several neighbours
+ * is shared by all of them, while each one receives it in an envelope of its own that
+ * tells who sent it and over which {@link Edge} it travels
+ */
+public class Envelope {
+
+	private final Message message;
+	private final Node sender; // The node that sent the message, or null if it did not come from a node
+	private final Edge edge; // The edge that carries the message, or null if it did not travel over an edge
+
+	/**
+	 * Constructs an {@link Envelope} instance
+	 *
+	 * @param message The {@link Message} to deliver
+	 * @param sender The {@link Node} that sent the message, or null
+	 * @param edge The {@link Edge} over which the message travels, or null
+	 */
+	public Envelope(Message message, Node sender, Edge edge) {
+		this.message = message;
+		this.sender = sender;
+		this.edge = edge;
+	}
+
+	/**
+	 * Constructs an {@link Envelope} instance for a message that does not travel
+	 * over an edge, like a spontaneous WAKE UP
+	 *
+	 * @param message The {@link Message} to deliver
+	 */
+	public Envelope(Message message) {
+		this(message, null, null);
+	}
+
+	public Message getMessage() {
+		return this.message;
+	}
+
+	public Message.MessageType getMessageType() {
+		return this.message.getMessageType();
+	}
+
+	public Node getSender() {
+		return this.sender;
+	}
+
+	public Edge getEdge() {
+		return this.edge;
+	}
+}
@@ -0,0 +1,273 @@
+package csi4109.a3;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Priority queue of message deliveries for the non-threaded engines. Events are
+ * ordered by delivery time, then by the order in which they were scheduled, which
+ * makes the delivery order fully deterministic. Events are stored in primitive
+ * arrays indexed by slot and the heap only moves slot numbers around, so that
+ * scheduling a delivery never allocates an object
+ */
+public class EventQueue {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int[] heap; // Slot numbers, ordered as a binary heap
+	private int size;
+	private int[] freeSlots; // Stack of unused slots
+	private int numFreeSlots;
+	private long nextSequence = 0; // Order in which events were scheduled
+
+	// Event data, indexed by slot
+	private long[] times;
+	private long[] sequences;
+	private int[] receivers;
+	private int[] ports;
+	private byte[] types;
+	private long[] firstValues;
+	private long[] secondValues;
+
+	// Data of the event last removed by poll()
+	private long time;
+	private long sequence;
+	private int receiver;
+	private int port;
+	private int type;
+	private long firstValue;
+	private long secondValue;
+
+	/**
+	 * Constructs an empty {@link EventQueue} instance
+	 */
+	public EventQueue() {
+		this.heap = new int[INITIAL_CAPACITY];
+		this.freeSlots = new int[INITIAL_CAPACITY];
+		this.times = new long[INITIAL_CAPACITY];
+		this.sequences = new long[INITIAL_CAPACITY];
+		this.receivers = new int[INITIAL_CAPACITY];
+		this.ports = new int[INITIAL_CAPACITY];
+		this.types = new byte[INITIAL_CAPACITY];
+		this.firstValues = new long[INITIAL_CAPACITY];
+		this.secondValues = new long[INITIAL_CAPACITY];
+		for (int slot = INITIAL_CAPACITY - 1; slot >= 0; slot--) {
+			this.freeSlots[this.numFreeSlots++] = slot;
+		}
+	}
+
+	/**
+	 * Schedules the delivery of a message
+	 * 
+	 * @param time The time at which the message is delivered
+	 * @param receiver The node receiving the message
+	 * @param port The half-edge of the receiver through which the message arrives,
+	 * or -1 for a spontaneous message
+	 * @param type The ordinal of the message's {@link Message.MessageType}
+	 * @param firstValue The first value carried by the message
+	 * @param secondValue The second value carried by the message
+	 * @return the order in which the event was scheduled, from 0
+	 */
+	public long add(long time, int receiver, int port, int type, long firstValue, long secondValue) {
+		long sequence = this.nextSequence++;
+		this.add(time, sequence, receiver, port, type, firstValue, secondValue);
+		return sequence;
+	}
+
+	/**
+	 * Writes every scheduled event, in heap order, so that {@link #read(DataInput)}
+	 * rebuilds the exact same queue
+	 *
+	 * @param out The output to which to write
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeLong(this.nextSequence);
+		out.writeInt(this.size);
+		for (int index = 0; index < this.size; index++) {
+			int slot = this.heap[index];
+			out.writeLong(this.times[slot]);
+			out.writeLong(this.sequences[slot]);
+			out.writeInt(this.receivers[slot]);
+			out.writeInt(this.ports[slot]);
+			out.writeByte(this.types[slot]);
+			out.writeLong(this.firstValues[slot]);
+			out.writeLong(this.secondValues[slot]);
+		}
+	}
+
+	/**
+	 * Reads a queue written by {@link #write(DataOutput)}
+	 *
+	 * @param in The input from which to read
+	 * @return the restored queue
+	 * @throws IOException
+	 */
+	static EventQueue read(DataInput in) throws IOException {
+		EventQueue queue = new EventQueue();
+		queue.nextSequence = in.readLong();
+		int size = in.readInt();
+
+		// The events come in heap order, so none of them moves when added back
+		for (int i = 0; i < size; i++) {
+			queue.add(in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readByte(),
+					in.readLong(), in.readLong());
+		}
+		return queue;
+	}
+
+	/**
+	 * Schedules an event with the given scheduling order
+	 */
+	private void add(long time, long sequence, int receiver, int port, int type, long firstValue,
+			long secondValue) {
+		if (this.numFreeSlots == 0) {
+			this.grow();
+		}
+		int slot = this.freeSlots[--this.numFreeSlots];
+		this.times[slot] = time;
+		this.sequences[slot] = sequence;
+		this.receivers[slot] = receiver;
+		this.ports[slot] = port;
+		this.types[slot] = (byte)type;
+		this.firstValues[slot] = firstValue;
+		this.secondValues[slot] = secondValue;
+
+		// Sift the new slot up
+		int index = this.size++;
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!this.before(slot, this.heap[parent])) {
+				break;
+			}
+			this.heap[index] = this.heap[parent];
+			index = parent;
+		}
+		this.heap[index] = slot;
+	}
+
+	/**
+	 * Removes the next event. Its data is then available through the getters
+	 * 
+	 * @return false if the queue was empty
+	 */
+	public boolean poll() {
+		if (this.size == 0) {
+			return false;
+		}
+
+		int slot = this.heap[0];
+		this.time = this.times[slot];
+		this.sequence = this.sequences[slot];
+		this.receiver = this.receivers[slot];
+		this.port = this.ports[slot];
+		this.type = this.types[slot];
+		this.firstValue = this.firstValues[slot];
+		this.secondValue = this.secondValues[slot];
+		this.freeSlots[this.numFreeSlots++] = slot;
+
+		// Sift the last slot down from the root
+		int last = this.heap[--this.size];
+		int index = 0;
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= this.size) {
+				break;
+			}
+			if (child + 1 < this.size && this.before(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!this.before(this.heap[child], last)) {
+				break;
+			}
+			this.heap[index] = this.heap[child];
+			index = child;
+		}
+		this.heap[index] = last;
+		return true;
+	}
+
+	/**
+	 * @return the number of scheduled events
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return true if no event is scheduled
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return the time of the next event, or {@link Long#MAX_VALUE} if no event is scheduled
+	 */
+	public long getNextTime() {
+		return this.size > 0 ? this.times[this.heap[0]] : Long.MAX_VALUE;
+	}
+
+	public long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * @return the order in which the event last removed was scheduled, from 0
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	public int getReceiver() {
+		return this.receiver;
+	}
+
+	public int getPort() {
+		return this.port;
+	}
+
+	public int getType() {
+		return this.type;
+	}
+
+	public long getFirstValue() {
+		return this.firstValue;
+	}
+
+	public long getSecondValue() {
+		return this.secondValue;
+	}
+
+	/**
+	 * Checks whether the event in the first slot is delivered before the one in the second
+	 */
+	private boolean before(int first, int second) {
+		long firstTime = this.times[first];
+		long secondTime = this.times[second];
+		return firstTime < secondTime
+				|| (firstTime == secondTime && this.sequences[first] < this.sequences[second]);
+	}
+
+	/**
+	 * Doubles the number of slots
+	 */
+	private void grow() {
+		int capacity = this.times.length;
+		int newCapacity = capacity * 2;
+		this.heap = Arrays.copyOf(this.heap, newCapacity);
+		this.freeSlots = Arrays.copyOf(this.freeSlots, newCapacity);
+		this.times = Arrays.copyOf(this.times, newCapacity);
+		this.sequences = Arrays.copyOf(this.sequences, newCapacity);
+		this.receivers = Arrays.copyOf(this.receivers, newCapacity);
+		this.ports = Arrays.copyOf(this.ports, newCapacity);
+		this.types = Arrays.copyOf(this.types, newCapacity);
+		this.firstValues = Arrays.copyOf(this.firstValues, newCapacity);
+		this.secondValues = Arrays.copyOf(this.secondValues, newCapacity);
+		for (int slot = newCapacity - 1; slot >= capacity; slot--) {
+			this.freeSlots[this.numFreeSlots++] = slot;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package csi4109.a3;
+
+/**
+ * Exponentially distributed delays, truncated to a maximum
+ */
+public class ExponentialDelayModel implements DelayModel {
+
+	private double mean;
+	private int maxDelay;
+
+	/**
+	 * Constructs an {@link ExponentialDelayModel} instance
+	 * 
+	 * @param mean The mean of the distribution, in milliseconds
+	 * @param maxDelay The maximum delay, in milliseconds
+	 */
+	public ExponentialDelayModel(double mean, int maxDelay) {
+		this.mean = mean;
+		this.maxDelay = maxDelay;
+	}
+
+	@Override
+	public int nextDelay(DelayRandom random, int messageSize) {
+		double delay = -this.mean * Math.log(1.0 - random.nextDouble());
+		return (int)Math.min(delay, this.maxDelay);
+	}
+}
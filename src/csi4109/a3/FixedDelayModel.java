@@ -0,0 +1,23 @@
+package csi4109.a3;
+
+/**
+ * Every transmission takes the same amount of time
+ */
+public class FixedDelayModel implements DelayModel {
+
+	private int delay;
+
+	/**
+	 * Constructs a {@link FixedDelayModel} instance
+	 * 
+	 * @param delay The delay of every transmission, in milliseconds
+	 */
+	public FixedDelayModel(int delay) {
+		this.delay = delay;
+	}
+
+	@Override
+	public int nextDelay(DelayRandom random, int messageSize) {
+		return this.delay;
+	}
+}
@@ -0,0 +1,388 @@
+package csi4109.a3;
+
+import static csi4109.a3.NodeWrapper.ACTIVE;
+import static csi4109.a3.NodeWrapper.AVAILABLE;
+import static csi4109.a3.NodeWrapper.NOTIFIED;
+import static csi4109.a3.NodeWrapper.PROCESSING;
+import static csi4109.a3.NodeWrapper.SATURATED;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+import csi4109.a3.Message.MessageType;
+
+/**
+ * Renders a recorded run as a sequence of images, without any window, so that large
+ * runs can be turned into videos far faster than real time. The frames are taken at a
+ * fixed rate of the simulated clock from the {@link CausalTrace} of a run of the
+ * {@link DeterministicSimulator}, and drawn like the visual simulator draws its
+ * {@link org.graphstream.graph.Graph}: the nodes coloured by state as in the stylesheet,
+ * over the edges of the tree, with a dot for each message in transit.
+ * <p>
+ * The state of each node at any time is found from the messages it sent and received,
+ * in a single pass over the trace, and the messages in transit during each frame are
+ * listed once, by frame. A frame then only costs a pass over the nodes and over its own
+ * messages, drawn straight into the pixels of an image over a copy of the edges, which
+ * are rasterized once. Frames are independent, so they are drawn and encoded in parallel
+ * on a {@link ForkJoinPool}
+ */
+public class FrameRenderer {
+
+	private static final int FRAMES_PER_TASK = 4;
+	private static final int MARGIN = 10; // Blank border around the tree, in pixels
+
+	// Colours of the stylesheet, by state
+	private static final int[] STATE_COLOURS = new int[NOTIFIED + 1];
+	private static final int BACKGROUND = 0xffffff;
+	private static final int EDGE_COLOUR = 0xc8c8c8;
+	private static final int BORDER_COLOUR = 0x000000;
+	private static final int MESSAGE_COLOUR = 0xff2596;
+
+	static {
+		STATE_COLOURS[AVAILABLE] = 0xffffff;
+		STATE_COLOURS[ACTIVE] = 0x0000ff;
+		STATE_COLOURS[PROCESSING] = 0xffff00;
+		STATE_COLOURS[SATURATED] = 0xff0000;
+		STATE_COLOURS[NOTIFIED] = 0x00cc00;
+	}
+
+	private final CausalTrace trace;
+	private final int width;
+	private final int height;
+	private final int nodeSize; // Side of the square drawn for a node, in pixels
+	private final int[] xs; // Position of each node, in pixels
+	private final int[] ys;
+	private final int[] edges; // Pixels of the edges, drawn once
+
+	// When each node entered each state, or Long.MAX_VALUE if it never did
+	private final long[][] stateTimes;
+
+	/**
+	 * Constructs a {@link FrameRenderer} instance
+	 *
+	 * @param trace The trace of a finished run
+	 * @param coordinates The x and y coordinates of each node, one after the other, as
+	 * given by {@link TreeLayout#layoutRadial(TreeTopology)}
+	 * @param width The width of the frames, in pixels
+	 * @param height The height of the frames, in pixels
+	 */
+	public FrameRenderer(CausalTrace trace, double[] coordinates, int width, int height) {
+		TreeTopology topology = trace.getTopology();
+		int numNodes = topology.getNodeCount();
+		this.trace = trace;
+		this.width = width;
+		this.height = height;
+		this.nodeSize = (int)Math.max(1, Math.min(12, Math.sqrt((double)width * height / Math.max(1, numNodes)) / 3));
+
+		// Fit the layout in the frame, keeping its proportions
+		double minX = Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		double maxY = -Double.MAX_VALUE;
+		for (int node = 0; node < numNodes; node++) {
+			minX = Math.min(minX, coordinates[2 * node]);
+			maxX = Math.max(maxX, coordinates[2 * node]);
+			minY = Math.min(minY, coordinates[2 * node + 1]);
+			maxY = Math.max(maxY, coordinates[2 * node + 1]);
+		}
+		double scale = Math.min((width - 2.0 * MARGIN) / Math.max(maxX - minX, 1e-9),
+				(height - 2.0 * MARGIN) / Math.max(maxY - minY, 1e-9));
+		double offsetX = (width - (maxX - minX) * scale) / 2;
+		double offsetY = (height - (maxY - minY) * scale) / 2;
+		this.xs = new int[numNodes];
+		this.ys = new int[numNodes];
+		for (int node = 0; node < numNodes; node++) {
+			this.xs[node] = (int)Math.round(offsetX + (coordinates[2 * node] - minX) * scale);
+			// The y axis of the graph points up, that of the image down
+			this.ys[node] = (int)Math.round(height - offsetY - (coordinates[2 * node + 1] - minY) * scale);
+		}
+
+		this.edges = new int[width * height];
+		Arrays.fill(this.edges, BACKGROUND);
+		for (int port = 0; port < topology.getHalfEdgeCount(); port++) {
+			int source = topology.getSource(port);
+			int target = topology.getTarget(port);
+			if (source < target) {
+				this.drawLine(this.edges, this.xs[source], this.ys[source], this.xs[target], this.ys[target]);
+			}
+		}
+
+		this.stateTimes = this.findStateTimes(numNodes);
+	}
+
+	/**
+	 * Renders the run at a fixed rate of the simulated clock and writes each frame to a
+	 * PNG file named after its number, from frame-000000.png
+	 *
+	 * @param directory The directory in which to write the frames, created if needed
+	 * @param framesPerSecond The frame rate of the video
+	 * @param speed The simulated time shown in each second of the video, in milliseconds
+	 * @param pool The pool on which to render the frames
+	 * @return the number of frames written
+	 * @throws IOException if a frame could not be written
+	 */
+	public int render(File directory, int framesPerSecond, long speed, ForkJoinPool pool) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create the directory " + directory);
+		}
+		long length = this.trace.getLastDelivery() >= 0 ? this.trace.getDelivery(this.trace.getLastDelivery()) : 0;
+		double interval = (double)speed / framesPerSecond; // Simulated time between two frames
+		int numFrames = (int)Math.min(Integer.MAX_VALUE - 8, (long)Math.ceil(length / interval) + 1);
+
+		long[] times = new long[numFrames];
+		for (int frame = 0; frame < numFrames; frame++) {
+			times[frame] = Math.min(length, Math.round(frame * interval));
+		}
+		int[][] inTransit = this.listMessages(times);
+
+		try {
+			pool.invoke(new Render(directory, times, inTransit, 0, numFrames));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return numFrames;
+	}
+
+	/**
+	 * Renders the run at the given time of the simulated clock
+	 *
+	 * @param time The simulated time, in milliseconds
+	 * @return the frame
+	 */
+	public BufferedImage renderFrame(long time) {
+		int[][] inTransit = this.listMessages(new long[] { time });
+		return this.draw(time, inTransit[0]);
+	}
+
+	/**
+	 * Draws a frame, from the messages in transit at its time
+	 */
+	private BufferedImage draw(long time, int[] messages) {
+		BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(this.edges, 0, pixels, 0, pixels.length);
+
+		int half = this.nodeSize / 2;
+		for (int node = 0; node < this.xs.length; node++) {
+			int colour = STATE_COLOURS[this.getState(node, time)];
+			int x = this.xs[node] - half;
+			int y = this.ys[node] - half;
+			if (this.nodeSize >= 3) {
+				this.fill(pixels, x, y, this.nodeSize, BORDER_COLOUR);
+				this.fill(pixels, x + 1, y + 1, this.nodeSize - 2, colour);
+			} else {
+				// Too small for a border, so available nodes show in black on the white background
+				this.fill(pixels, x, y, this.nodeSize, colour == BACKGROUND ? BORDER_COLOUR : colour);
+			}
+		}
+
+		// Place each message along its edge, in proportion to the time it has been in transit
+		int messageSize = Math.max(2, this.nodeSize / 2);
+		for (int message : messages) {
+			int sender = this.trace.getSender(message);
+			int receiver = this.trace.getReceiver(message);
+			long start = this.trace.getStart(message);
+			double progress = (double)(time - start) / Math.max(1, this.trace.getDelivery(message) - start);
+			int x = (int)Math.round(this.xs[sender] + (this.xs[receiver] - this.xs[sender]) * progress);
+			int y = (int)Math.round(this.ys[sender] + (this.ys[receiver] - this.ys[sender]) * progress);
+			this.fill(pixels, x - messageSize / 2, y - messageSize / 2, messageSize, MESSAGE_COLOUR);
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the state of a node at the given time
+	 */
+	private int getState(int node, long time) {
+		for (int state = NOTIFIED; state > AVAILABLE; state--) {
+			if (this.stateTimes[state][node] <= time) {
+				return state;
+			}
+		}
+		return AVAILABLE;
+	}
+
+	/**
+	 * Finds when each node entered each state: ACTIVE once woken up, PROCESSING once it
+	 * sent SATURATE, SATURATED once it sent COMPARE SATURATED, and NOTIFIED once it
+	 * received or sent a NOTIFICATION
+	 */
+	private long[][] findStateTimes(int numNodes) {
+		long[][] times = new long[NOTIFIED + 1][];
+		for (int state = ACTIVE; state <= NOTIFIED; state++) {
+			times[state] = new long[numNodes];
+			Arrays.fill(times[state], Long.MAX_VALUE);
+		}
+
+		for (int message = 0; message < this.trace.size(); message++) {
+			MessageType type = this.trace.getType(message);
+			int sender = this.trace.getSender(message);
+			int receiver = this.trace.getReceiver(message);
+			long sent = this.trace.getSendTime(message);
+			long delivered = this.trace.getDelivery(message);
+			switch (type) {
+				case WAKE_UP:
+					times[ACTIVE][receiver] = Math.min(times[ACTIVE][receiver], delivered);
+					break;
+				case SATURATE:
+					times[PROCESSING][sender] = Math.min(times[PROCESSING][sender], sent);
+					break;
+				case COMPARE_SATURATED:
+					times[SATURATED][sender] = Math.min(times[SATURATED][sender], sent);
+					break;
+				case NOTIFICATION:
+					times[NOTIFIED][sender] = Math.min(times[NOTIFIED][sender], sent);
+					times[NOTIFIED][receiver] = Math.min(times[NOTIFIED][receiver], delivered);
+					break;
+				default:
+					break;
+			}
+		}
+		return times;
+	}
+
+	/**
+	 * Lists the messages in transit at each of the given times, in increasing order. A
+	 * first pass counts the messages of each frame and a second one fills the lists
+	 */
+	private int[][] listMessages(long[] times) {
+		int numFrames = times.length;
+		int[] counts = new int[numFrames];
+		for (int pass = 0; pass < 2; pass++) {
+			int[][] lists = pass == 1 ? new int[numFrames][] : null;
+			if (lists != null) {
+				for (int frame = 0; frame < numFrames; frame++) {
+					lists[frame] = new int[counts[frame]];
+					counts[frame] = 0;
+				}
+			}
+
+			for (int message = 0; message < this.trace.size(); message++) {
+				if (this.trace.getCause(message) < 0) {
+					continue; // Spontaneous WAKE UPs travel over no edge
+				}
+				long start = this.trace.getStart(message);
+				long delivery = this.trace.getDelivery(message);
+				for (int frame = this.firstFrameAtOrAfter(times, start); frame < numFrames
+						&& times[frame] < delivery; frame++) {
+					if (lists != null) {
+						lists[frame][counts[frame]] = message;
+					}
+					counts[frame]++;
+				}
+			}
+			if (lists != null) {
+				return lists;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the first frame taken at or after the given time, by binary search
+	 */
+	private int firstFrameAtOrAfter(long[] times, long time) {
+		int low = 0;
+		int high = times.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (times[middle] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Fills a square of pixels, clipped to the frame
+	 */
+	private void fill(int[] pixels, int x, int y, int size, int colour) {
+		int startX = Math.max(0, x);
+		int endX = Math.min(this.width, x + size);
+		for (int row = Math.max(0, y); row < Math.min(this.height, y + size); row++) {
+			if (startX < endX) {
+				Arrays.fill(pixels, row * this.width + startX, row * this.width + endX, colour);
+			}
+		}
+	}
+
+	/**
+	 * Draws a line with Bresenham's algorithm, clipped to the frame
+	 */
+	private void drawLine(int[] pixels, int x0, int y0, int x1, int y1) {
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int stepX = x0 < x1 ? 1 : -1;
+		int stepY = y0 < y1 ? 1 : -1;
+		int error = dx + dy;
+		while (true) {
+			if (x0 >= 0 && x0 < this.width && y0 >= 0 && y0 < this.height) {
+				pixels[y0 * this.width + x0] = EDGE_COLOUR;
+			}
+			if (x0 == x1 && y0 == y1) {
+				return;
+			}
+			int doubled = 2 * error;
+			if (doubled >= dy) {
+				error += dy;
+				x0 += stepX;
+			}
+			if (doubled <= dx) {
+				error += dx;
+				y0 += stepY;
+			}
+		}
+	}
+
+	/**
+	 * Draws and writes a range of frames, split into groups of {@link FrameRenderer#FRAMES_PER_TASK}
+	 */
+	private class Render extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final File directory;
+		private final long[] times;
+		private final int[][] inTransit;
+		private final int start;
+		private final int end;
+
+		public Render(File directory, long[] times, int[][] inTransit, int start, int end) {
+			this.directory = directory;
+			this.times = times;
+			this.inTransit = inTransit;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.end - this.start > FRAMES_PER_TASK) {
+				int middle = (this.start + this.end) >>> 1;
+				invokeAll(new Render(this.directory, this.times, this.inTransit, this.start, middle),
+						new Render(this.directory, this.times, this.inTransit, middle, this.end));
+				return;
+			}
+
+			for (int frame = this.start; frame < this.end; frame++) {
+				BufferedImage image = FrameRenderer.this.draw(this.times[frame], this.inTransit[frame]);
+				File file = new File(this.directory, String.format("frame-%06d.png", frame));
+				try {
+					ImageIO.write(image, "png", file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				this.inTransit[frame] = null; // Let the list go once drawn
+			}
+		}
+	}
+}
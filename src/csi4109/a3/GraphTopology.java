@@ -0,0 +1,204 @@
+package csi4109.a3;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Compressed adjacency of a general undirected graph, in the same layout as a
+ * {@link TreeTopology}: the neighbours of each node are stored contiguously, one per
+ * port. The saturation algorithm only runs on trees, so a graph goes through a
+ * {@link SpanningTree} before it is simulated
+ */
+public class GraphTopology {
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	private final int numNodes;
+	private final int numEdges;
+	private final int[] offsets; // First port of each node, plus a final sentinel
+	private final int[] targets; // Node at the other end of each port
+
+	/**
+	 * Constructs a {@link GraphTopology} instance from its compressed arrays
+	 */
+	private GraphTopology(int numNodes, int numEdges, int[] offsets, int[] targets) {
+		this.numNodes = numNodes;
+		this.numEdges = numEdges;
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Builds a graph from a list of edges. Self-loops are dropped, parallel edges are kept
+	 *
+	 * @param numNodes The number of nodes in the graph
+	 * @param ends The two end nodes of each edge, one edge after the other
+	 * @param numEdges The number of edges in ends
+	 * @return the graph
+	 * @throws IllegalArgumentException if an edge has a node out of range
+	 */
+	public static GraphTopology fromEdges(int numNodes, int[] ends, int numEdges) {
+		int[] offsets = new int[numNodes + 1];
+		int numLoops = 0;
+		for (int i = 0; i < 2 * numEdges; i += 2) {
+			int u = ends[i];
+			int v = ends[i + 1];
+			if (u < 0 || u >= numNodes || v < 0 || v >= numNodes) {
+				throw new IllegalArgumentException(String.format("Edge %d-%d has a node out of range", u, v));
+			}
+			if (u == v) {
+				numLoops++;
+				continue;
+			}
+			offsets[u + 1]++;
+			offsets[v + 1]++;
+		}
+		for (int v = 0; v < numNodes; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+
+		int[] targets = new int[offsets[numNodes]];
+		int[] cursors = Arrays.copyOf(offsets, numNodes);
+		for (int i = 0; i < 2 * numEdges; i += 2) {
+			int u = ends[i];
+			int v = ends[i + 1];
+			if (u != v) {
+				targets[cursors[u]++] = v;
+				targets[cursors[v]++] = u;
+			}
+		}
+		return new GraphTopology(numNodes, numEdges - numLoops, offsets, targets);
+	}
+
+	/**
+	 * Generates a connected graph by preferential attachment, like a Barabasi-Albert
+	 * generator: each new node is attached to edgesPerNode distinct earlier nodes, picked
+	 * with a probability proportional to their degree. With a single edge per node, the
+	 * graph is an Arbitrary tree
+	 *
+	 * @param numNodes The number of nodes in the graph
+	 * @param edgesPerNode The number of edges attaching each new node
+	 * @param seed The seed of the generator
+	 * @return the generated graph
+	 */
+	public static GraphTopology generate(int numNodes, int edgesPerNode, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] ends = new int[2 * Math.max(0, numNodes - 1) * edgesPerNode];
+		int numEdges = 0;
+		int[] picked = new int[edgesPerNode];
+
+		for (int v = 1; v < numNodes; v++) {
+			// The first nodes are attached to every earlier node
+			int count = Math.min(edgesPerNode, v);
+			for (int i = 0; i < count; i++) {
+				if (count == v) {
+					picked[i] = i;
+					continue;
+				}
+
+				// Picking a uniform end point among all the edges picks
+				// a node with a probability proportional to its degree
+				boolean distinct;
+				do {
+					picked[i] = ends[random.nextInt(2 * numEdges)];
+					distinct = true;
+					for (int j = 0; j < i; j++) {
+						distinct &= picked[j] != picked[i];
+					}
+				} while (!distinct);
+			}
+			for (int i = 0; i < count; i++) {
+				ends[2 * numEdges] = picked[i];
+				ends[2 * numEdges + 1] = v;
+				numEdges++;
+			}
+		}
+		return fromEdges(numNodes, ends, numEdges);
+	}
+
+	/**
+	 * Reads a graph from a text file with one edge per line, given as the numbers of its
+	 * two end nodes separated by white space. Nodes are numbered from 0, and the graph has
+	 * as many nodes as the largest number plus one. Empty lines and lines starting with #
+	 * are skipped
+	 *
+	 * @param file The file from which to read the graph
+	 * @return the graph
+	 * @throws IOException if the file could not be read or a line is not an edge
+	 */
+	public static GraphTopology read(File file) throws IOException {
+		int[] ends = new int[INITIAL_CAPACITY];
+		int numEdges = 0;
+		int numNodes = 0;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				if (2 * numEdges + 2 > ends.length) {
+					ends = Arrays.copyOf(ends, 2 * ends.length);
+				}
+				try {
+					ends[2 * numEdges] = Integer.parseInt(fields[0]);
+					ends[2 * numEdges + 1] = Integer.parseInt(fields[1]);
+				} catch (RuntimeException e) {
+					throw new IOException(String.format("%s:%d is not an edge: %s", file, lineNumber, line));
+				}
+				numNodes = Math.max(numNodes, Math.max(ends[2 * numEdges], ends[2 * numEdges + 1]) + 1);
+				numEdges++;
+			}
+		} finally {
+			in.close();
+		}
+		return fromEdges(numNodes, ends, numEdges);
+	}
+
+	/**
+	 * @return the number of nodes in the graph
+	 */
+	public int getNodeCount() {
+		return this.numNodes;
+	}
+
+	/**
+	 * @return the number of edges in the graph, without self-loops
+	 */
+	public int getEdgeCount() {
+		return this.numEdges;
+	}
+
+	/**
+	 * @param node A node of the graph
+	 * @return the number of neighbours of the node
+	 */
+	public int getDegree(int node) {
+		return this.offsets[node + 1] - this.offsets[node];
+	}
+
+	/**
+	 * @param node A node of the graph
+	 * @return the first port of the node. Its ports are numbered contiguously from there
+	 */
+	public int getFirstPort(int node) {
+		return this.offsets[node];
+	}
+
+	/**
+	 * @param port A port of the graph
+	 * @return the node at the other end of the port
+	 */
+	public int getTarget(int port) {
+		return this.targets[port];
+	}
+}
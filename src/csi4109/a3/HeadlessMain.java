@@ -0,0 +1,630 @@
+package csi4109.a3;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
+
+import csi4109.a3.ConfigurationData.DelayType;
+import csi4109.a3.ConfigurationData.StateStorage;
+import csi4109.a3.ConfigurationData.TreeType;
+import csi4109.a3.Message.MessageType;
+import csi4109.a3.ResultWriter.Format;
+
+/**
+ * Command line entry point running the {@link DeterministicSimulator} without any
+ * window, for trees far larger than the visual simulator can display. For example:
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --type Binary --size 1000000 --seed 42 --initiators 10
+ * </pre>
+ * 
+ * A run can be stopped after a number of deliveries and saved with a {@link SimulationCheckpoint},
+ * then resumed later. Transmission parameters given when resuming fork a variation of the run:
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --size 1000000 --seed 42 --checkpoint run.ckpt --checkpoint-after 500000
+ * java csi4109.a3.HeadlessMain --resume run.ckpt --delay Exponential
+ * </pre>
+ * 
+ * With --verify, the result is checked against the {@link TreeMetrics} of the tree, and the
+ * process exits with status 1 if they disagree. Sweeps can keep those in a {@link ResultCache}
+ * file, so that each tree shape is only computed once:
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --type Star --size 1000 --seed 3 --cache results.cache
+ * </pre>
+ * 
+ * General graphs, read from an edge list file or generated by attaching each new node with
+ * more than one edge, are reduced to a breadth-first {@link SpanningTree} first:
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --graph roads.edges --seed 7
+ * java csi4109.a3.HeadlessMain --size 1000000 --attach 4 --seed 7
+ * </pre>
+ * 
+ * The state of the nodes can be kept off the heap, in direct buffers or in a memory-mapped
+ * file, so that a tree's state may outgrow the heap:
+ * 
+ * <pre>
+ * java -Xmx2g csi4109.a3.HeadlessMain --size 30000000 --state-storage Mapped
+ * </pre>
+ * 
+ * With --bulk, the run goes through the level-synchronous {@link BulkSimulator} instead,
+ * which counts the rounds the algorithm takes under synchronous timing:
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --size 50000000 --seed 5 --initiators 1000 --bulk
+ * </pre>
+ * 
+ * With --output, the final state of every node is written to a file by a {@link ResultWriter},
+ * as CSV or, with --output-format Binary, as fixed-width records:
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --size 1000000 --seed 42 --output nodes.csv
+ * </pre>
+ * 
+ * With --critical-path, the run records the cause of each message in a {@link CausalTrace},
+ * then prints its {@link CriticalPath}: the chain of transmissions that bounded its length
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --size 100000 --seed 42 --critical-path
+ * </pre>
+ * 
+ * With --frames, the trace is rendered instead as a sequence of images by a {@link FrameRenderer},
+ * without any window, which can then be encoded into a video:
+ * 
+ * <pre>
+ * java csi4109.a3.HeadlessMain --size 100000 --seed 42 --frames frames --fps 30 --frame-size 1920x1080
+ * </pre>
+ * 
+ * With --edits, the tree is then edited by the lines of a file, each updating the number of
+ * diametral paths with an {@link IncrementalSaturation}. A line attaches a leaf to a node,
+ * attaches a sub-tree given by the parent of each of its nodes, root first, or detaches a
+ * node along with what hangs from it. New nodes are numbered after the existing ones:
+ * 
+ * <pre>
+ * attach 17
+ * attach 17 -1,0,0,1
+ * detach 42
+ * </pre>
+ */
+public class HeadlessMain {
+
+	private static final int DEFAULT_CACHE_SIZE = 10000;
+	private static final int PARALLELISM_SAMPLES = 10; // Moments at which the parallelism of a traced run is shown
+	private static final int CRITICAL_HOPS_SHOWN = 10; // Longest transmissions of the critical path shown
+	private static final int DEFAULT_FPS = 30;
+	private static final int DEFAULT_VIDEO_SECONDS = 10;
+	private static final String DEFAULT_FRAME_SIZE = "1280x720";
+
+	// Main function. This is the entry point of the headless simulator
+	public static void main(String[] args) throws IOException {
+		String resume = getOption(args, "--resume");
+		String checkpoint = getOption(args, "--checkpoint");
+		String checkpointAfter = getOption(args, "--checkpoint-after");
+		if (checkpointAfter != null && checkpoint == null) {
+			throw new IllegalArgumentException("--checkpoint-after needs a --checkpoint file");
+		}
+		boolean bulk = Arrays.asList(args).contains("--bulk");
+		if (bulk && (resume != null || checkpoint != null)) {
+			throw new IllegalArgumentException("--bulk runs cannot be checkpointed");
+		}
+		boolean criticalPath = Arrays.asList(args).contains("--critical-path");
+		String frames = getOption(args, "--frames");
+		if ((criticalPath || frames != null) && (bulk || resume != null)) {
+			throw new IllegalArgumentException("Only a new run of the deterministic engine can be traced");
+		}
+
+		ConfigurationData data;
+		DeterministicSimulator simulator;
+		long start = System.nanoTime();
+		if (resume != null) {
+			String storage = getOption(args, "--state-storage");
+			simulator = SimulationCheckpoint.load(new File(resume),
+					storage != null ? StateStorage.valueOf(storage) : StateStorage.Heap);
+			data = simulator.getConfiguration();
+			applyTransmissionArguments(args, data);
+			simulator.reconfigure();
+		} else {
+			data = parseArguments(args);
+			SplittableRandom random = new SplittableRandom(data.seed);
+			TreeTopology topology = generateTopology(args, data, random.nextLong());
+			if (bulk) {
+				if (!runBulk(args, data, topology, random, start)) {
+					System.exit(1);
+				}
+				return;
+			}
+			simulator = new DeterministicSimulator(topology, data, random);
+		}
+		CausalTrace trace = null;
+		if (criticalPath || frames != null) {
+			trace = new CausalTrace(simulator.getProtocolState().getTopology());
+			simulator.setTrace(trace);
+		}
+		long generated = System.nanoTime();
+
+		// Publish the run over JMX, so that long runs can be watched and paused
+		SimulationControl control = new SimulationControl();
+		SimulationMonitor monitor = new SimulationMonitor(control);
+		try {
+			monitor.register();
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		simulator.setControl(control);
+		monitor.startRun(simulator);
+		long[] collections = getGarbageCollections();
+		boolean over = simulator.run(checkpointAfter != null ? Long.parseLong(checkpointAfter) : Long.MAX_VALUE);
+		long finished = System.nanoTime();
+		long[] collected = getGarbageCollections();
+
+		if (!over) {
+			SimulationCheckpoint.save(simulator, new File(checkpoint));
+			System.out.println(String.format("Checkpoint saved to %s after %d deliveries (%d ms simulated)",
+					checkpoint, simulator.getEventCount(), simulator.getSimulatedTime()));
+			return;
+		}
+
+		System.out.println(String.format("Tree: %s, %d nodes, seed %d", data.treeType, data.networkSize, data.seed));
+		System.out.println(String.format("Diametral paths: %d (center %d)",
+				simulator.getDiametralPaths(), simulator.getCenter()));
+		System.out.println(String.format("Messages: %d, deliveries: %d, simulated time: %d ms",
+				simulator.getMessageCount(), simulator.getEventCount(), simulator.getSimulatedTime()));
+		System.out.println(String.format("%s: %d ms, simulation: %d ms", resume != null ? "Restore" : "Generation",
+				(generated - start) / 1000000, (finished - generated) / 1000000));
+		System.out.println(String.format("Garbage collection during the run: %d collections, %d ms (state on %s)",
+				collected[0] - collections[0], collected[1] - collections[1], data.stateStorage));
+		System.out.println(String.format("Fingerprint: %s", simulator.getFingerprint()));
+		if (criticalPath) {
+			printCriticalPath(trace, simulator.getCenter());
+		}
+		if (frames != null) {
+			renderFrames(args, trace, new File(frames));
+		}
+		writeResults(args, simulator.getProtocolState());
+		boolean verified = applyEdits(args, simulator.getProtocolState());
+
+		String cache = getOption(args, "--cache");
+		if (cache != null || Arrays.asList(args).contains("--verify")) {
+			verified = verify(simulator.getProtocolState().getTopology(), simulator.getDiametralPaths(),
+					cache != null ? new File(cache) : null, getOption(args, "--cache-size")) && verified;
+		}
+		if (!verified) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the algorithm on the {@link BulkSimulator}, with a worker per processor
+	 *
+	 * @param args The command line arguments
+	 * @param data The parameters of the run
+	 * @param topology The tree of the run
+	 * @param random The generator of the run, positioned after the generation of the tree
+	 * @param start When the run started, in nanoseconds
+	 * @return false if the result or an edit disagreed with the reference
+	 * @throws IOException if the cache or the results could not be read or written
+	 */
+	private static boolean runBulk(String[] args, ConfigurationData data, TreeTopology topology, SplittableRandom random,
+			long start) throws IOException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		BulkSimulator simulator = new BulkSimulator(topology, data, random, pool);
+		long generated = System.nanoTime();
+		long[] collections = getGarbageCollections();
+		simulator.run();
+		long finished = System.nanoTime();
+		long[] collected = getGarbageCollections();
+
+		System.out.println(String.format("Tree: %s, %d nodes, seed %d", data.treeType, data.networkSize, data.seed));
+		System.out.println(String.format("Diametral paths: %d (center %d)",
+				simulator.getDiametralPaths(), simulator.getCenter()));
+		System.out.println(String.format("Messages: %d, deliveries: %d, rounds: %d, largest round: %d deliveries",
+				simulator.getMessageCount(), simulator.getDeliveryCount(), simulator.getRounds(),
+				simulator.getPeakRound()));
+		System.out.println(String.format("Generation: %d ms, simulation: %d ms on %d workers",
+				(generated - start) / 1000000, (finished - generated) / 1000000, pool.getParallelism()));
+		System.out.println(String.format("Garbage collection during the run: %d collections, %d ms (state on %s)",
+				collected[0] - collections[0], collected[1] - collections[1], data.stateStorage));
+		writeResults(args, simulator.getProtocolState());
+		boolean verified = applyEdits(args, simulator.getProtocolState());
+
+		String cache = getOption(args, "--cache");
+		if (cache != null || Arrays.asList(args).contains("--verify")) {
+			verified = verify(topology, simulator.getDiametralPaths(), cache != null ? new File(cache) : null,
+					getOption(args, "--cache-size")) && verified;
+		}
+		return verified;
+	}
+
+	/**
+	 * Prints the {@link CriticalPath} of a traced run: how its length splits between the
+	 * types of messages, how much of the tree took part at once, and the transmissions
+	 * of the critical path that took the longest
+	 *
+	 * @param trace The trace of the finished run
+	 * @param center The center found by the run
+	 */
+	private static void printCriticalPath(CausalTrace trace, int center) {
+		long start = System.nanoTime();
+		final CriticalPath path = new CriticalPath(trace, center, PARALLELISM_SAMPLES);
+		long analyzed = System.nanoTime();
+
+		StringBuilder types = new StringBuilder();
+		for (MessageType type : MessageType.values()) {
+			if (path.getTime(type) > 0) {
+				types.append(String.format(", %s %d ms", type, path.getTime(type)));
+			}
+		}
+		System.out.println(String.format("Critical path: %d ms over %d transmissions%s (analyzed in %d ms)",
+				path.getLength(), path.getHopCount(), types, (analyzed - start) / 1000000));
+		System.out.println(String.format("Without waiting for busy edges: %d ms, edges without slack: %d of %d",
+				path.getContentionFreeLength(), path.getCriticalEdgeCount(), trace.getTopology().getEdgeCount()));
+		System.out.println(String.format("Transmissions in progress: %.1f on average, %s over the run",
+				path.getAverageParallelism(), Arrays.toString(path.getParallelismProfile())));
+
+		// List the longest transmissions of the critical path, in the order of the path
+		Integer[] hops = new Integer[path.getHopCount()];
+		for (int hop = 0; hop < hops.length; hop++) {
+			hops[hop] = hop;
+		}
+		Arrays.sort(hops, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return Long.compare(path.getDelay(second), path.getDelay(first));
+			}
+		});
+		Arrays.sort(hops, 0, Math.min(hops.length, CRITICAL_HOPS_SHOWN));
+		for (int i = 0; i < Math.min(hops.length, CRITICAL_HOPS_SHOWN); i++) {
+			int hop = hops[i];
+			int message = path.getMessage(hop);
+			System.out.println(String.format("  #%d %s %d -> %d: %d ms%s, %d nodes on the sender's side", hop,
+					trace.getType(message), trace.getSender(message), trace.getReceiver(message), path.getDelay(hop),
+					path.isQueued(hop) ? " after waiting for the edge" : "", path.getSubtreeSize(hop)));
+		}
+	}
+
+	/**
+	 * Renders a traced run as a sequence of images with a {@link FrameRenderer}, at the
+	 * rate given by --fps and the speed given by --frame-speed, in simulated milliseconds
+	 * per second of video. By default, the video lasts {@link #DEFAULT_VIDEO_SECONDS}
+	 *
+	 * @param args The command line arguments
+	 * @param trace The trace of the finished run
+	 * @param directory The directory in which to write the frames
+	 * @throws IOException if a frame could not be written
+	 */
+	private static void renderFrames(String[] args, CausalTrace trace, File directory) throws IOException {
+		String fps = getOption(args, "--fps");
+		String speed = getOption(args, "--frame-speed");
+		String size = getOption(args, "--frame-size");
+		int framesPerSecond = fps != null ? Integer.parseInt(fps) : DEFAULT_FPS;
+		long length = trace.getLastDelivery() >= 0 ? trace.getDelivery(trace.getLastDelivery()) : 0;
+		long frameSpeed = speed != null ? Long.parseLong(speed) : Math.max(1, length / DEFAULT_VIDEO_SECONDS);
+		String[] dimensions = (size != null ? size : DEFAULT_FRAME_SIZE).split("x");
+
+		// Frames are drawn in memory, so no display is needed
+		System.setProperty("java.awt.headless", "true");
+		long start = System.nanoTime();
+		double[] coordinates = TreeLayout.layoutRadial(trace.getTopology());
+		FrameRenderer renderer = new FrameRenderer(trace, coordinates, Integer.parseInt(dimensions[0]),
+				Integer.parseInt(dimensions[1]));
+		long prepared = System.nanoTime();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int count = renderer.render(directory, framesPerSecond, frameSpeed, pool);
+
+		System.out.println(String.format("Frames: %d of %sx%s at %d fps, %d ms simulated per second, written to %s",
+				count, dimensions[0], dimensions[1], framesPerSecond, frameSpeed, directory));
+		System.out.println(String.format("Layout: %d ms, rendering: %d ms on %d workers", (prepared - start) / 1000000,
+				(System.nanoTime() - prepared) / 1000000, pool.getParallelism()));
+	}
+
+	/**
+	 * Writes the final state of every node to the file given by --output, if any, in the
+	 * format given by --output-format
+	 *
+	 * @param args The command line arguments
+	 * @param state The state of the nodes at the end of the run
+	 * @throws IOException if the results could not be written
+	 */
+	private static void writeResults(String[] args, ProtocolState state) throws IOException {
+		String output = getOption(args, "--output");
+		if (output == null) {
+			return;
+		}
+		String format = getOption(args, "--output-format");
+
+		long start = System.nanoTime();
+		long size = ResultWriter.write(state, new File(output), format != null ? Format.valueOf(format) : Format.Csv);
+		System.out.println(String.format("Results: %d bytes written to %s in %d ms", size, output,
+				(System.nanoTime() - start) / 1000000));
+	}
+
+	/**
+	 * Applies the edits of the file given by --edits, if any, to the tree of a finished
+	 * run, updating its number of diametral paths with an {@link IncrementalSaturation}.
+	 * With --verify, the number is checked against the {@link TreeMetrics} of the edited
+	 * tree after every edit
+	 *
+	 * @param args The command line arguments
+	 * @param state The state of the nodes at the end of the run
+	 * @return false if an edit disagreed with the reference
+	 * @throws IOException if the edits could not be read
+	 */
+	private static boolean applyEdits(String[] args, ProtocolState state) throws IOException {
+		String edits = getOption(args, "--edits");
+		if (edits == null) {
+			return true;
+		}
+		boolean verify = Arrays.asList(args).contains("--verify");
+
+		long start = System.nanoTime();
+		IncrementalSaturation incremental = IncrementalSaturation.fromCompletedRun(state);
+		int count = 0;
+		int mismatches = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(edits));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				applyEdit(incremental, line);
+				count++;
+
+				if (verify) {
+					TreeMetrics metrics = TreeMetrics.compute(incremental.toTopology());
+					if (metrics.getDiametralPaths() != incremental.getDiametralPaths()) {
+						System.err.println(String.format("Mismatch after \"%s\": %d diametral paths, the reference %d",
+								line, incremental.getDiametralPaths(), metrics.getDiametralPaths()));
+						mismatches++;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		System.out.println(String.format("Edits: %d applied with %d messages in %d ms%s", count,
+				incremental.getMessageCount(), (System.nanoTime() - start) / 1000000,
+				verify ? String.format(", %d mismatches with the reference", mismatches) : ""));
+		System.out.println(String.format("Edited tree: %d nodes, diametral paths: %d (center %d)",
+				incremental.getNodeCount(), incremental.getDiametralPaths(), incremental.getCenter()));
+		return mismatches == 0;
+	}
+
+	/**
+	 * Applies a line of an edit file: attach NODE, attach NODE PARENTS or detach NODE,
+	 * where PARENTS lists the parent of each node of a sub-tree, separated by commas
+	 *
+	 * @param incremental The tree to edit
+	 * @param line The line to apply
+	 */
+	private static void applyEdit(IncrementalSaturation incremental, String line) {
+		String[] words = line.split("\\s+");
+		if (words[0].equals("attach") && words.length == 2) {
+			incremental.attachLeaf(Integer.parseInt(words[1]));
+		} else if (words[0].equals("attach") && words.length == 3) {
+			String[] values = words[2].split(",");
+			int[] parents = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				parents[i] = Integer.parseInt(values[i]);
+			}
+			incremental.attachSubtree(Integer.parseInt(words[1]), parents);
+		} else if (words[0].equals("detach") && words.length == 2) {
+			incremental.detachSubtree(Integer.parseInt(words[1]));
+		} else {
+			throw new IllegalArgumentException("Unknown edit " + line);
+		}
+	}
+
+	/**
+	 * Builds the tree of the run: a tree of the configured type, or a spanning tree of the
+	 * general graph given by --graph or --attach. The size of the run becomes that of the
+	 * spanning tree
+	 *
+	 * @param args The command line arguments
+	 * @param data The parameters of the run
+	 * @param seed The seed from which to generate the tree or graph
+	 * @return the tree of the run
+	 * @throws IOException if the graph file could not be read
+	 */
+	private static TreeTopology generateTopology(String[] args, ConfigurationData data, long seed) throws IOException {
+		String file = getOption(args, "--graph");
+		String attach = getOption(args, "--attach");
+		if (file == null && (attach == null || Integer.parseInt(attach) <= 1)) {
+			return TreeTopology.generate(data.treeType, data.networkSize, seed);
+		}
+
+		long start = System.nanoTime();
+		GraphTopology graph = file != null ? GraphTopology.read(new File(file))
+				: GraphTopology.generate(data.networkSize, Integer.parseInt(attach), seed);
+		long loaded = System.nanoTime();
+		SpanningTree tree = SpanningTree.build(graph, ForkJoinPool.commonPool());
+		long spanned = System.nanoTime();
+
+		System.out.println(String.format("Graph: %d nodes, %d edges, %s in %d ms", graph.getNodeCount(),
+				graph.getEdgeCount(), file != null ? "read" : "generated", (loaded - start) / 1000000));
+		System.out.println(String.format("Spanning tree: %d nodes, depth %d, rooted at node %d, built in %d ms",
+				tree.getTopology().getNodeCount(), tree.getDepth(), tree.getGraphNode(0), (spanned - loaded) / 1000000));
+		data.networkSize = tree.getTopology().getNodeCount();
+		data.initiators = Math.min(data.initiators, data.networkSize);
+		return tree.getTopology();
+	}
+
+	/**
+	 * @return the number of garbage collections so far, and the time they took in milliseconds
+	 */
+	private static long[] getGarbageCollections() {
+		long[] totals = new long[2];
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			totals[0] += Math.max(0, collector.getCollectionCount());
+			totals[1] += Math.max(0, collector.getCollectionTime());
+		}
+		return totals;
+	}
+
+	/**
+	 * Compares the result of a run with the reference {@link TreeMetrics} of its tree,
+	 * taken from a {@link ResultCache} if the shape of the tree was seen before
+	 *
+	 * @param topology The tree of the finished run
+	 * @param diametralPaths The number of diametral paths found by the run
+	 * @param file The file in which the cache is kept between runs, or null
+	 * @param size The largest number of trees kept in the cache, or null for the default
+	 * @return false if the run disagreed with the reference
+	 * @throws IOException if the cache could not be read or written
+	 */
+	private static boolean verify(TreeTopology topology, long diametralPaths, File file, String size)
+			throws IOException {
+		ResultCache cache = new ResultCache(size != null ? Integer.parseInt(size) : DEFAULT_CACHE_SIZE);
+		if (file != null) {
+			cache.load(file);
+		}
+
+		long start = System.nanoTime();
+		TreeMetrics metrics = cache.lookup(topology);
+		System.out.println(String.format("Reference: %s (%s in %d ms)", metrics,
+				cache.getHits() > 0 ? "cached" : "computed", (System.nanoTime() - start) / 1000000));
+		boolean agrees = metrics.getDiametralPaths() == diametralPaths;
+		if (!agrees) {
+			System.err.println(String.format("Mismatch: the run found %d diametral paths, the reference %d",
+					diametralPaths, metrics.getDiametralPaths()));
+		}
+
+		if (file != null) {
+			cache.save(file);
+		}
+		return agrees;
+	}
+
+	/**
+	 * Reads the parameters of the run from the command line arguments. Parameters that
+	 * are not given keep the defaults of {@link ConfigurationData}, which are derived
+	 * from the seed
+	 *
+	 * @param args The command line arguments
+	 * @return the parameters of the run
+	 * @throws IllegalArgumentException if an option is unknown, misses its value or is out of range
+	 */
+	static ConfigurationData parseArguments(String[] args) {
+		// The seed comes first, since the random defaults depend on it
+		String seed = getOption(args, "--seed");
+		ConfigurationData data = seed != null ? new ConfigurationData(Long.parseLong(seed)) : new ConfigurationData();
+		boolean initiatorsGiven = false;
+
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("--batch")) {
+				data.batchTransmissions = true;
+				continue;
+			}
+			if (option.equals("--verify") || option.equals("--bulk") || option.equals("--critical-path")) {
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+
+			String value = args[++i];
+			switch (option) {
+				case "--type":
+					data.treeType = TreeType.valueOf(value);
+					break;
+				case "--size":
+					data.networkSize = Integer.parseInt(value);
+					if (data.networkSize < 1) {
+						throw new IllegalArgumentException("--size needs at least 1 node, not " + value);
+					}
+					break;
+				case "--seed":
+					break;
+				case "--initiators":
+					data.initiators = Integer.parseInt(value);
+					initiatorsGiven = true;
+					break;
+				case "--max-initiator-delay":
+					data.maxInitiatorDelay = Integer.parseInt(value);
+					break;
+				case "--max-delay":
+					data.maxTransmissionDelay = Integer.parseInt(value);
+					break;
+				case "--delay":
+					data.delayType = DelayType.valueOf(value);
+					break;
+				case "--state-storage":
+					data.stateStorage = StateStorage.valueOf(value);
+					break;
+				case "--checkpoint":
+				case "--checkpoint-after":
+				case "--resume":
+				case "--cache":
+				case "--cache-size":
+				case "--graph":
+				case "--attach":
+				case "--output":
+				case "--output-format":
+				case "--frames":
+				case "--fps":
+				case "--frame-speed":
+				case "--frame-size":
+				case "--edits":
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+
+		if (!initiatorsGiven) {
+			data.initiators = Math.min(data.initiators, data.networkSize);
+		}
+		return data;
+	}
+
+	/**
+	 * Applies the transmission parameters given on the command line to a resumed run.
+	 * The tree and the initiators of a resumed run cannot change
+	 *
+	 * @param args The command line arguments
+	 * @param data The parameters of the resumed run
+	 */
+	static void applyTransmissionArguments(String[] args, ConfigurationData data) {
+		String delay = getOption(args, "--delay");
+		String maxDelay = getOption(args, "--max-delay");
+		if (delay != null) {
+			data.delayType = DelayType.valueOf(delay);
+		}
+		if (maxDelay != null) {
+			data.maxTransmissionDelay = Integer.parseInt(maxDelay);
+		}
+		for (String arg : args) {
+			if (arg.equals("--batch")) {
+				data.batchTransmissions = true;
+			}
+		}
+	}
+
+	/**
+	 * @param args The command line arguments
+	 * @param option The name of an option taking a value
+	 * @return the value of the option, or null if it was not given
+	 */
+	static String getOption(String[] args, String option) {
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (args[i].equals(option)) {
+				return args[i + 1];
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,512 @@
+package csi4109.a3;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic mode of the saturation algorithm. Once a run has completed, its
+ * {@link ProtocolState} holds the eccentricity and number of potential diametral
+ * paths of the sub-trees behind every port, except for the ports leading to the
+ * center. This object copies that per-port information into arrays that can grow
+ * and shrink with the tree and, when leaves or sub-trees are attached or detached,
+ * only re-saturates the path between the change and the center (the anchor), then
+ * walks the anchor to the new center. The number of diametral paths is therefore
+ * updated with O(depth) messages instead of running the whole algorithm again
+ */
+public class IncrementalSaturation {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int INITIAL_DEGREE = 2;
+
+	private int numNodes; // Number of node ids handed out so far
+	private boolean[] alive; // Whether the node with a given id is still in the tree
+	private int[] degree; // Number of ports in use for each node
+	private int[][] neighbours; // Node on the other end of each port
+	private int[][] twins; // Port number of the same edge at the neighbour
+	private int[][] eccentricities; // Eccentricity of the sub-tree behind each port
+	private long[][] paths; // Number of potential diametral paths of the sub-tree behind each port
+	private int[] anchorPorts; // Port leading to the anchor, or -1 for the anchor itself
+
+	private int anchor; // The node all the per-port information converges to
+	private long messageCount = 0; // Number of messages exchanged by the updates so far
+
+	/**
+	 * Constructs an empty {@link IncrementalSaturation} instance
+	 */
+	private IncrementalSaturation(int capacity) {
+		capacity = Math.max(capacity, INITIAL_CAPACITY);
+		this.alive = new boolean[capacity];
+		this.degree = new int[capacity];
+		this.neighbours = new int[capacity][];
+		this.twins = new int[capacity][];
+		this.eccentricities = new int[capacity][];
+		this.paths = new long[capacity][];
+		this.anchorPorts = new int[capacity];
+	}
+
+	/**
+	 * Builds the dynamic state from the {@link ProtocolState} of a completed run, of any
+	 * engine. Node ids are those of its {@link TreeTopology}, and new nodes are numbered
+	 * after them
+	 *
+	 * @param state The state of the nodes at the end of the run
+	 * @return the dynamic state, anchored at the center found by the run
+	 * @throws IllegalStateException if the run has not found a center yet
+	 */
+	public static IncrementalSaturation fromCompletedRun(ProtocolState state) {
+		if (state.getCenter() < 0) {
+			throw new IllegalStateException("The run has not found a center yet");
+		}
+		TreeTopology topology = state.getTopology();
+		IncrementalSaturation incremental = new IncrementalSaturation(topology.getNodeCount());
+		incremental.anchor = state.getCenter();
+
+		for (int node = 0; node < topology.getNodeCount(); node++) {
+			incremental.addNode();
+		}
+
+		// Copy the per-port information each node received during the run. Ports are
+		// added in the order of the topology, so the twin of a port is found once the
+		// neighbour has added its own ports
+		for (int node = 0; node < topology.getNodeCount(); node++) {
+			int firstPort = topology.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + topology.getDegree(node); port++) {
+				int neighbour = topology.getTarget(port);
+				int local = incremental.addPort(node, neighbour);
+				incremental.eccentricities[node][local] = state.getSubtreeEccentricity(port);
+				incremental.paths[node][local] = state.getSubtreePaths(port);
+				if (neighbour < node) {
+					int twin = topology.getTwin(port) - topology.getFirstPort(neighbour);
+					incremental.twins[node][local] = twin;
+					incremental.twins[neighbour][twin] = local;
+				}
+			}
+		}
+
+		incremental.orientTowardsAnchor();
+		incremental.locateCenter();
+		incremental.messageCount = 0;
+		return incremental;
+	}
+
+	/**
+	 * Attaches a new leaf to the given node and updates the number of diametral paths
+	 *
+	 * @param parent The node to which the leaf is attached
+	 * @return the id of the new leaf
+	 */
+	public int attachLeaf(int parent) {
+		return this.attachSubtree(parent, new int[] { -1 });
+	}
+
+	/**
+	 * Attaches a new sub-tree to the given node and updates the number of diametral paths.
+	 * The sub-tree is first saturated towards its root, which costs one message per new
+	 * node, then the change is propagated from the parent to the center
+	 *
+	 * @param parent The node to which the sub-tree is attached
+	 * @param subtreeParents For each node of the sub-tree, the index of its parent within
+	 * the sub-tree, or -1 for its root. Parents must appear before their children
+	 * @return the id of the root of the new sub-tree
+	 */
+	public int attachSubtree(int parent, int[] subtreeParents) {
+		this.checkAlive(parent);
+		if (subtreeParents.length == 0 || subtreeParents[0] != -1) {
+			throw new IllegalArgumentException("The first node of the sub-tree must be its root");
+		}
+
+		int[] ids = new int[subtreeParents.length];
+		for (int i = 0; i < subtreeParents.length; i++) {
+			ids[i] = this.addNode();
+			if (i > 0) {
+				if (subtreeParents[i] < 0 || subtreeParents[i] >= i) {
+					throw new IllegalArgumentException("Parents must appear before their children");
+				}
+				int child = ids[i];
+				this.connect(child, ids[subtreeParents[i]]);
+				this.anchorPorts[child] = this.degree[child] - 1;
+			}
+		}
+
+		// Saturate the new sub-tree towards its root, children first
+		for (int i = ids.length - 1; i > 0; i--) {
+			this.sendUp(ids[i]);
+		}
+
+		// Connect the sub-tree and propagate the change to the anchor
+		int root = ids[0];
+		this.connect(root, parent);
+		this.anchorPorts[root] = this.degree[root] - 1;
+		this.propagate(root);
+		this.locateCenter();
+		return root;
+	}
+
+	/**
+	 * Detaches the given node, along with the sub-tree hanging from it when the tree is
+	 * rooted at the center, and updates the number of diametral paths
+	 *
+	 * @param node The node to detach
+	 */
+	public void detachSubtree(int node) {
+		this.checkAlive(node);
+		if (node == this.anchor) {
+			throw new IllegalArgumentException("Cannot detach the center of the tree");
+		}
+
+		int parent = this.neighbours[node][this.anchorPorts[node]];
+		int parentPort = this.twins[node][this.anchorPorts[node]];
+		this.disconnect(parent, parentPort);
+		this.markDetached(node);
+
+		if (parent != this.anchor) {
+			this.propagate(parent);
+		}
+		this.locateCenter();
+	}
+
+	/**
+	 * @return the current center of the tree
+	 */
+	public int getCenter() {
+		return this.anchor;
+	}
+
+	/**
+	 * @return the number of nodes currently in the tree
+	 */
+	public int getNodeCount() {
+		int count = 0;
+		for (int i = 0; i < this.numNodes; i++) {
+			if (this.alive[i]) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of messages exchanged by all the updates so far
+	 */
+	public long getMessageCount() {
+		return this.messageCount;
+	}
+
+	/**
+	 * Builds the {@link TreeTopology} of the tree as edited so far. The nodes still in
+	 * the tree are renumbered in increasing order of their ids
+	 *
+	 * @return the current tree
+	 */
+	public TreeTopology toTopology() {
+		int[] renumbered = new int[this.numNodes];
+		int count = 0;
+		for (int node = 0; node < this.numNodes; node++) {
+			renumbered[node] = this.alive[node] ? count++ : -1;
+		}
+
+		int[] parents = new int[count];
+		for (int node = 0; node < this.numNodes; node++) {
+			if (this.alive[node]) {
+				int port = this.anchorPorts[node];
+				parents[renumbered[node]] = port >= 0 ? renumbered[this.neighbours[node][port]] : -1;
+			}
+		}
+		return TreeTopology.fromParents(parents);
+	}
+
+	/**
+	 * Computes the number of diametral paths from the information held by the center.
+	 * The center itself counts as a sub-tree of eccentricity 0 with a single path, so
+	 * that it may be the end of a diametral path
+	 *
+	 * @return the number of diametral paths in the tree
+	 */
+	public long getDiametralPaths() {
+		int center = this.anchor;
+		int maxPort = this.findMaxPort(center, -1);
+		if (maxPort < 0) {
+			return 0;
+		}
+
+		int maxValue = this.eccentricities[center][maxPort];
+		int nextValue = this.computeEccentricity(center, maxPort);
+
+		if (maxValue == nextValue) {
+			// Single center: p1*(p2 + p3 + ...) + p2*(p3 + ...) + ...
+			long sum = 0;
+			long sumOfSquares = 0;
+			for (int port = 0; port < this.degree[center]; port++) {
+				if (this.eccentricities[center][port] == maxValue) {
+					long value = this.paths[center][port];
+					sum += value;
+					sumOfSquares += value * value;
+				}
+			}
+			return (sum * sum - sumOfSquares) / 2;
+		}
+
+		// Double center: the paths behind the maximum edge times the
+		// paths of the sub-trees with the second maximum eccentricity
+		long nextPaths = this.computeNumPaths(center, maxPort, nextValue);
+		return this.paths[center][maxPort] * nextPaths;
+	}
+
+	/**
+	 * Sends the updated sub-tree information of a node to its neighbour towards the anchor,
+	 * and keeps forwarding it along the path for as long as the information changes
+	 *
+	 * @param node The node whose information changed
+	 */
+	private void propagate(int node) {
+		while (node != this.anchor && this.sendUp(node)) {
+			node = this.neighbours[node][this.anchorPorts[node]];
+		}
+	}
+
+	/**
+	 * Sends a SATURATE-like message from a node to its neighbour towards the anchor
+	 *
+	 * @param node The node sending the message
+	 * @return true if the information held by the neighbour changed
+	 */
+	private boolean sendUp(int node) {
+		int port = this.anchorPorts[node];
+		int eccentricity = this.computeEccentricity(node, port);
+		long numPaths = this.computeNumPaths(node, port, eccentricity);
+		return this.deliver(node, port, eccentricity + 1, numPaths);
+	}
+
+	/**
+	 * Moves the anchor along the edge of maximum eccentricity, like CHECK_CENTER
+	 * messages do, until it reaches a center node
+	 */
+	private void locateCenter() {
+		while (true) {
+			int node = this.anchor;
+			int maxPort = this.findMaxPort(node, -1);
+			if (maxPort < 0) {
+				return;
+			}
+
+			int eccentricity = this.computeEccentricity(node, maxPort);
+			if (this.eccentricities[node][maxPort] - eccentricity <= 1) {
+				return;
+			}
+
+			// Send the information of the rest of the tree to the next node,
+			// which becomes the anchor
+			long numPaths = this.computeNumPaths(node, maxPort, eccentricity);
+			this.deliver(node, maxPort, eccentricity + 1, numPaths);
+			int next = this.neighbours[node][maxPort];
+			this.anchorPorts[next] = -1;
+			this.anchorPorts[node] = maxPort;
+			this.anchor = next;
+		}
+	}
+
+	/**
+	 * Delivers sub-tree information from a node to the neighbour behind the given port
+	 *
+	 * @return true if the information held by the neighbour changed
+	 */
+	private boolean deliver(int node, int port, int eccentricity, long numPaths) {
+		int neighbour = this.neighbours[node][port];
+		int twin = this.twins[node][port];
+		this.messageCount++;
+
+		if (this.eccentricities[neighbour][twin] == eccentricity && this.paths[neighbour][twin] == numPaths) {
+			return false;
+		}
+		this.eccentricities[neighbour][twin] = eccentricity;
+		this.paths[neighbour][twin] = numPaths;
+		return true;
+	}
+
+	/**
+	 * Computes the eccentricity of a node in the context of the excluded port
+	 */
+	private int computeEccentricity(int node, int exclude) {
+		int eccentricity = 0;
+		for (int port = 0; port < this.degree[node]; port++) {
+			if (port != exclude) {
+				eccentricity = Math.max(eccentricity, this.eccentricities[node][port]);
+			}
+		}
+		return eccentricity;
+	}
+
+	/**
+	 * Computes the number of potential diametral paths of a node in the context of the
+	 * excluded port. A node without any other port is the single end of its own path
+	 */
+	private long computeNumPaths(int node, int exclude, int eccentricity) {
+		if (eccentricity == 0) {
+			return 1;
+		}
+
+		long numPaths = 0;
+		for (int port = 0; port < this.degree[node]; port++) {
+			if (port != exclude && this.eccentricities[node][port] == eccentricity) {
+				numPaths += this.paths[node][port];
+			}
+		}
+		return numPaths;
+	}
+
+	/**
+	 * Finds the port with the maximum eccentricity, ignoring the excluded port
+	 *
+	 * @return the port with the maximum eccentricity, or -1 if there is none
+	 */
+	private int findMaxPort(int node, int exclude) {
+		int maxPort = -1;
+		for (int port = 0; port < this.degree[node]; port++) {
+			if (port != exclude && (maxPort < 0
+					|| this.eccentricities[node][port] > this.eccentricities[node][maxPort])) {
+				maxPort = port;
+			}
+		}
+		return maxPort;
+	}
+
+	/**
+	 * Points the anchor port of every node towards the anchor with a breadth first traversal
+	 */
+	private void orientTowardsAnchor() {
+		int[] queue = new int[this.numNodes];
+		boolean[] visited = new boolean[this.numNodes];
+		int tail = 0;
+		queue[tail++] = this.anchor;
+		visited[this.anchor] = true;
+		this.anchorPorts[this.anchor] = -1;
+
+		for (int head = 0; head < tail; head++) {
+			int node = queue[head];
+			for (int port = 0; port < this.degree[node]; port++) {
+				int neighbour = this.neighbours[node][port];
+				if (!visited[neighbour]) {
+					visited[neighbour] = true;
+					this.anchorPorts[neighbour] = this.twins[node][port];
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks a node and every node hanging from it as detached
+	 */
+	private void markDetached(int root) {
+		int[] stack = new int[this.numNodes];
+		int size = 0;
+		stack[size++] = root;
+
+		while (size > 0) {
+			int node = stack[--size];
+			this.alive[node] = false;
+			for (int port = 0; port < this.degree[node]; port++) {
+				if (port != this.anchorPorts[node]) {
+					stack[size++] = this.neighbours[node][port];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Allocates a new node id
+	 */
+	private int addNode() {
+		if (this.numNodes == this.alive.length) {
+			int capacity = this.alive.length * 2;
+			this.alive = Arrays.copyOf(this.alive, capacity);
+			this.degree = Arrays.copyOf(this.degree, capacity);
+			this.neighbours = Arrays.copyOf(this.neighbours, capacity);
+			this.twins = Arrays.copyOf(this.twins, capacity);
+			this.eccentricities = Arrays.copyOf(this.eccentricities, capacity);
+			this.paths = Arrays.copyOf(this.paths, capacity);
+			this.anchorPorts = Arrays.copyOf(this.anchorPorts, capacity);
+		}
+
+		int node = this.numNodes++;
+		this.alive[node] = true;
+		this.neighbours[node] = new int[INITIAL_DEGREE];
+		this.twins[node] = new int[INITIAL_DEGREE];
+		this.eccentricities[node] = new int[INITIAL_DEGREE];
+		this.paths[node] = new long[INITIAL_DEGREE];
+		this.anchorPorts[node] = -1;
+		return node;
+	}
+
+	/**
+	 * Connects two nodes by adding a port at each end
+	 */
+	private void connect(int first, int second) {
+		int firstPort = this.addPort(first, second);
+		int secondPort = this.addPort(second, first);
+		this.twins[first][firstPort] = secondPort;
+		this.twins[second][secondPort] = firstPort;
+	}
+
+	/**
+	 * Adds a port leading to the given neighbour
+	 *
+	 * @return the number of the new port
+	 */
+	private int addPort(int node, int neighbour) {
+		int port = this.degree[node]++;
+		if (port == this.neighbours[node].length) {
+			int capacity = port * 2;
+			this.neighbours[node] = Arrays.copyOf(this.neighbours[node], capacity);
+			this.twins[node] = Arrays.copyOf(this.twins[node], capacity);
+			this.eccentricities[node] = Arrays.copyOf(this.eccentricities[node], capacity);
+			this.paths[node] = Arrays.copyOf(this.paths[node], capacity);
+		}
+		this.neighbours[node][port] = neighbour;
+		this.eccentricities[node][port] = 0;
+		this.paths[node][port] = 0;
+		return port;
+	}
+
+	/**
+	 * Removes a port by moving the last port of the node in its place
+	 */
+	private void disconnect(int node, int port) {
+		int last = --this.degree[node];
+		if (port != last) {
+			this.neighbours[node][port] = this.neighbours[node][last];
+			this.twins[node][port] = this.twins[node][last];
+			this.eccentricities[node][port] = this.eccentricities[node][last];
+			this.paths[node][port] = this.paths[node][last];
+
+			// Let the neighbour of the moved port know its new number
+			int neighbour = this.neighbours[node][port];
+			this.twins[neighbour][this.twins[node][port]] = port;
+			if (this.anchorPorts[node] == last) {
+				this.anchorPorts[node] = port;
+			}
+		}
+	}
+
+	/**
+	 * Finds the port of a node leading to the given neighbour
+	 *
+	 * @return the port leading to neighbour, or -1 if there is none
+	 */
+	private int findPort(int node, int neighbour) {
+		for (int port = 0; port < this.degree[node]; port++) {
+			if (this.neighbours[node][port] == neighbour) {
+				return port;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Makes sure that the given node id is part of the tree
+	 */
+	private void checkAlive(int node) {
+		if (node < 0 || node >= this.numNodes || !this.alive[node]) {
+			throw new IllegalArgumentException(String.format("Node %d is not part of the tree", node));
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package csi4109.a3;
+
+import java.util.SplittableRandom;
+
+/**
+ * Static methods for choosing which nodes spontaneously start the algorithm
+ */
+public class InitiatorSelection {
+
+	/**
+	 * Picks distinct nodes uniformly at random with a partial Fisher-Yates shuffle.
+	 * The same generator state always yields the same initiators, in the same order
+	 * 
+	 * @param numNodes The number of nodes in the tree
+	 * @param numInitiators The number of initiators to pick
+	 * @param random The generator of the run
+	 * @return the indices of the initiator nodes
+	 */
+	public static int[] select(int numNodes, int numInitiators, SplittableRandom random) {
+		numInitiators = Math.min(numInitiators, numNodes);
+		int[] nodes = new int[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			nodes[i] = i;
+		}
+		
+		int[] initiators = new int[numInitiators];
+		for (int i = 0; i < numInitiators; i++) {
+			int j = i + random.nextInt(numNodes - i);
+			int swap = nodes[j];
+			nodes[j] = nodes[i];
+			nodes[i] = swap;
+			initiators[i] = swap;
+		}
+		
+		return initiators;
+	}
+}
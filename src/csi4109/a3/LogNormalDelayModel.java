@@ -0,0 +1,36 @@
+package csi4109.a3;
+
+/**
+ * Log-normally distributed delays, truncated to a maximum. This gives mostly
+ * short delays with a long tail of slow transmissions
+ */
+public class LogNormalDelayModel implements DelayModel {
+
+	private double mu;
+	private double sigma;
+	private int maxDelay;
+
+	/**
+	 * Constructs a {@link LogNormalDelayModel} instance
+	 * 
+	 * @param median The median of the distribution, in milliseconds
+	 * @param sigma The standard deviation of the logarithm of the delays
+	 * @param maxDelay The maximum delay, in milliseconds
+	 */
+	public LogNormalDelayModel(double median, double sigma, int maxDelay) {
+		this.mu = Math.log(median);
+		this.sigma = sigma;
+		this.maxDelay = maxDelay;
+	}
+
+	@Override
+	public int nextDelay(DelayRandom random, int messageSize) {
+		// Box-Muller transform to get a normally distributed value
+		double u1 = 1.0 - random.nextDouble();
+		double u2 = random.nextDouble();
+		double gaussian = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+
+		double delay = Math.exp(this.mu + this.sigma * gaussian);
+		return (int)Math.min(delay, this.maxDelay);
+	}
+}
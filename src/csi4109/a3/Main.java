@@ -1,26 +1,20 @@
 package csi4109.a3;
 
-import static csi4109.a3.Message.MessageType.TERMINATE_EDGE;
-
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.Semaphore;
+import java.util.SplittableRandom;
 
+import javax.management.JMException;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
-import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
 import org.graphstream.graph.implementations.SingleGraph;
@@ -28,7 +22,7 @@ import org.graphstream.ui.spriteManager.Sprite;
 import org.graphstream.ui.spriteManager.SpriteManager;
 import org.graphstream.ui.swingViewer.Viewer;
 
-import csi4109.a3.Message.MessageType;
+import csi4109.a3.ConfigurationData.TreeType;
 
 /**
  * Main class for CSI 4109 Assignment 3. This file runs a visual simulator
@@ -38,18 +32,6 @@ import csi4109.a3.Message.MessageType;
  */
 public class Main {
 	
-	// Maps for linking org.graphstream.graph.Node and org.graphstream.graph.Edge
-	// instances to custom wrappers
-	public static Map<Node, NodeWrapper> nodeWrapperMap;
-	public static Map<Edge, EdgeWrapper> edgeWrapperMap;
-	
-	// Semaphore used to limit concurrent access to the graph. Unfortunately,
-	// GraphStream doesn't handle concurrency very well
-	public static Semaphore graphSemaphore = new Semaphore(1);
-
-	// Data used to initialize the algorithm
-	private static ConfigurationData data;
-
 	// Main function. This is the entry point of the program
 	public static void main(String[] args) throws InterruptedException, IOException {
 		// Initialize the graph and its viewer
@@ -60,40 +42,60 @@ public class Main {
 		SpriteManager manager = new SpriteManager(graph);
 //		displayLegend(manager);
 		
-		// Display the graph at full screen size (windowed)
-		Viewer viewer = graph.display();
+		// Display the graph at full screen size (windowed). The tree is laid
+		// out explicitly, so GraphStream's auto-layout is left disabled
+		Viewer viewer = graph.display(false);
 		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 		viewer.getDefaultView().resizeFrame(screenSize.width, screenSize.height);
 		
 		boolean running = true;
 		graph.addAttribute("ui.stylesheet", stylesheet);
 		
+		// The previous run, whose tree is kept when the next one runs on the same tree
+		ConfigurationData previous = null;
+		TreeTopology topology = null;
+		SimulationContext context = null;
+		
 		while (running) {
-			// Reset variables
-			data = new ConfigurationData();
-			clearGraph(graph, manager);
-			nodeWrapperMap = new HashMap<Node, NodeWrapper>();
-			edgeWrapperMap = new HashMap<Edge, EdgeWrapper>();
-			
-			// Display the configuration window
-			ConfigurationWindow configWindow = new ConfigurationWindow(data);
+			// Display the configuration window, filled with the previous parameters
+			ConfigurationData data = new ConfigurationData();
+			ConfigurationWindow configWindow = new ConfigurationWindow(data, previous);
 			Thread configThread = new Thread(configWindow);
 			configThread.start();
 			configThread.join();
 
-			// Generate the tree graph
-			generateTree(graph, 100);
-
-			// Give the tree a few seconds to stabilize
-			Thread.sleep(3000);
+			// Every random value of the run is derived from the configured seed
+			SplittableRandom random = new SplittableRandom(data.seed);
+			long treeSeed = random.nextLong();
 
-			// Get a random list of initiators and start the algorithm 
-			List<NodeWrapper> initiators = initNodes(graph);
-			initEdges(graph, manager);
-			start(initiators);
+			if (previous != null && isSameTree(previous, data)) {
+				// Only the initiators or the delays changed, so keep the tree and its layout
+				resetGraph(graph, manager);
+			} else {
+				// Generate the tree graph and lay it out around its center
+				clearGraph(graph, manager, stylesheet);
+				generateTree(graph, data, 0, treeSeed);
+				TreeLayout.layoutRadial(graph);
+				topology = TreeTopology.fromGraph(graph);
+				context = null;
+			}
 
-			// Wait for the end of the algorithm and prompt the user for running it again
-			waitForEnd();
+			if (data.deterministic) {
+				runDeterministic(graph, topology, data, random);
+			} else {
+				// Start the algorithm in a context of its own, displayed on the graph. A
+				// context on the same tree lends its state to the next one
+				context = context != null ? new SimulationContext(context, data)
+						: new SimulationContext(graph, topology, data, manager);
+				register(context.getMonitor());
+				context.start(random);
+				
+				// Wait for the end of the algorithm
+				context.waitForEnd();
+			}
+			previous = data;
+			
+			// Prompt the user for running it again
 			int repeat = JOptionPane.showConfirmDialog(new JFrame(), "Run a different execution?",
 					"", JOptionPane.YES_NO_OPTION);
 			if (repeat != JOptionPane.YES_OPTION) {
@@ -103,22 +105,58 @@ public class Main {
 	}
 	
 	/**
-	 * Clears the graph of any visual entities while leaving its other attributes
-	 * intact
+	 * Returns whether two runs generate the same tree. Only arbitrary trees depend on the seed
+	 * 
+	 * @param previous The parameters of the previous run
+	 * @param data The parameters of the next run
+	 * @return true if the tree of the previous run can be kept for the next one
+	 */
+	private static boolean isSameTree(ConfigurationData previous, ConfigurationData data) {
+		return previous.treeType == data.treeType && previous.networkSize == data.networkSize
+				&& (data.treeType != TreeType.Arbitrary || previous.seed == data.seed);
+	}
+	
+	/**
+	 * Clears the graph of any visual entities, in a single event rather than one per node
+	 * and edge, then restores its stylesheet
 	 * 
 	 * @param graph The {@link Graph} to clear
 	 * @param manager The {@link SpriteManager} to use to clear the {@link Sprite}s
+	 * @param stylesheet The stylesheet of the graph
 	 */
-	private static void clearGraph(Graph graph, SpriteManager manager) {
-		while (graph.getNodeCount() > 0) {
-			graph.removeNode(0);
-		}
-		while (graph.getEdgeCount() > 0) {
-			graph.removeEdge(0);
-		}
+	private static void clearGraph(Graph graph, SpriteManager manager, String stylesheet) {
+		removeSprites(manager);
+		graph.clear();
+		graph.addAttribute("ui.stylesheet", stylesheet);
+	}
+	
+	/**
+	 * Brings the nodes of the graph back to how they were generated, keeping the tree
+	 * and its layout, and removes the {@link Sprite}s of the previous run
+	 * 
+	 * @param graph The {@link Graph} to reset
+	 * @param manager The {@link SpriteManager} to use to clear the {@link Sprite}s
+	 */
+	private static void resetGraph(Graph graph, SpriteManager manager) {
+		removeSprites(manager);
 		
+		Iterator<Node> nodes = graph.getNodeIterator();
+		while (nodes.hasNext()) {
+			Node node = nodes.next();
+			node.removeAttribute("state");
+			node.removeAttribute("ui.class");
+			node.removeAttribute("ui.label");
+		}
+	}
+	
+	/**
+	 * Removes every {@link Sprite} of the {@link SpriteManager}
+	 * 
+	 * @param manager The {@link SpriteManager} to clear
+	 */
+	private static void removeSprites(SpriteManager manager) {
 		Iterator<Sprite> spriteIterator = manager.iterator();
-		LinkedList<String> spriteIds = new LinkedList<String>();
+		List<String> spriteIds = new ArrayList<String>(manager.getSpriteCount());
 		while (spriteIterator.hasNext()) {
 			spriteIds.add(spriteIterator.next().getId());
 		}
@@ -132,10 +170,13 @@ public class Main {
 	 * Generates a tree graph according to the selected type
 	 * 
 	 * @param graph The {@link Graph} instance with which to use for building the tree
+	 * @param data The parameters of the run, which give the type and size of the tree
 	 * @param delta The amount of time, in milliseconds, to wait between generating nodes
+	 * @param seed The seed used for generating random trees
 	 * @throws InterruptedException
 	 */
-	private static void generateTree(Graph graph, int delta) throws InterruptedException {
+	private static void generateTree(Graph graph, ConfigurationData data, int delta, long seed)
+			throws InterruptedException {
 		switch (data.treeType) {
 			case List:
 				TreeGenAlgorithms.generateListTree(graph, delta, data.networkSize);
@@ -147,75 +188,60 @@ public class Main {
 				TreeGenAlgorithms.generateBinaryTree(graph, delta, data.networkSize);
 				break;
 			default:
-				TreeGenAlgorithms.generateRandomTree(graph, delta, data.networkSize);
+				TreeGenAlgorithms.generateRandomTree(graph, delta, data.networkSize, seed);
 				break;
 		}
 	}
 	
 	/**
-	 * Initializes the {@link Node}s of the {@link Graph} by wrapping them in a {@link NodeWrapper}
+	 * Runs the algorithm with the {@link DeterministicSimulator} and displays its outcome
+	 * on the {@link Graph}. The run's fingerprint is printed so that it can be compared
+	 * with other runs of the same seed
 	 * 
-	 * @param graph The {@link Graph} from which to retrieve the nodes
-	 * @return a list of initiator nodes that should be spontaneously activated
+	 * @param graph The tree {@link Graph} on which to run the algorithm
+	 * @param topology The topology of the tree
+	 * @param data The parameters of the run
+	 * @param random The generator of the run
 	 */
-	private static List<NodeWrapper> initNodes(Graph graph) {
-		List<NodeWrapper> initiators = new LinkedList<NodeWrapper>();
-		Iterator<Node> nodes = graph.getNodeIterator();
+	private static void runDeterministic(Graph graph, TreeTopology topology, ConfigurationData data,
+			SplittableRandom random) {
+		DeterministicSimulator simulator = new DeterministicSimulator(topology, data, random);
+		SimulationControl control = new SimulationControl();
+		SimulationMonitor monitor = new SimulationMonitor(control);
+		register(monitor);
+		simulator.setControl(control);
+		monitor.startRun(simulator);
+		simulator.run();
 		
-		// Loop through all the nodes. Until i = numInitiators, add the nodes
-		// to the list of initiators. For the entire loop, wrap the node and
-		// add it to the node wrapper map
-		for (int i = 0; nodes.hasNext(); i++) {
+		Iterator<Node> nodes = graph.getNodeIterator();
+		while (nodes.hasNext()) {
 			Node node = nodes.next();
-			NodeWrapper wrapper = new NodeWrapper(node);
-			nodeWrapperMap.put(node, wrapper);
-			wrapper.start();
-			if (i < data.initiators) {
-				initiators.add(wrapper);
+			int state = simulator.getState(node.getIndex());
+			long result = simulator.getResult(node.getIndex());
+			node.setAttribute("state", state);
+			node.setAttribute("ui.label", result >= 0 ? String.valueOf(result) : node.getId());
+			
+			String cssClass = NodeWrapper.getStateClass(state);
+			if (cssClass != null) {
+				node.setAttribute("ui.class", cssClass);
 			}
 		}
 		
-		return initiators;
+		System.out.println(String.format("Seed %d: %d diametral paths, %d messages, %d ms simulated, fingerprint %s",
+				data.seed, simulator.getDiametralPaths(), simulator.getMessageCount(),
+				simulator.getSimulatedTime(), simulator.getFingerprint()));
 	}
 	
 	/**
-	 * Initializes the {@link Edge}s of the {@link Graph} by wrapping them in an {@link EdgeWrapper}
+	 * Publishes the monitor of the current run over JMX, in place of the previous run's
 	 * 
-	 * @param graph The {@link Graph} from which to retrieve the edges
+	 * @param monitor The {@link SimulationMonitor} to publish
 	 */
-	private static void initEdges(Graph graph, SpriteManager manager) {
-		Iterator<Edge> edges = graph.getEdgeIterator();
-		
-		while (edges.hasNext()) {
-			Edge edge = edges.next();
-			EdgeWrapper wrapper = new EdgeWrapper(edge, manager, data.maxTransmissionDelay);
-			edgeWrapperMap.put(edge, wrapper);
-			wrapper.start();
-		}
-	}
-	
-	/**
-	 * Begins the algorithm
-	 * 
-	 * @param initiators The list of initiator nodes to spontaneously activate
-	 */
-	private static void start(List<NodeWrapper> initiators) {
-		
-		// For each initiator assign a timer with a random delay.
-		// Once the timer finishes counting down, activate the node
-		for (final NodeWrapper initiator : initiators) {
-			int delay = (int)(Math.random() * data.maxInitiatorDelay);
-			java.util.Timer timer = new Timer();
-			timer.schedule(new TimerTask() {
-				@Override
-				public void run() {
-					try {
-						initiator.sendMessage(new Message(MessageType.WAKE_UP));
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-			}, delay);
+	private static void register(SimulationMonitor monitor) {
+		try {
+			monitor.register();
+		} catch (JMException e) {
+			e.printStackTrace();
 		}
 	}
 	
@@ -233,22 +259,5 @@ public class Main {
 		scanner.close();
 		return content;
 	}
-	
-	/**
-	 * Waits for the algorithm to terminate
-	 * @throws InterruptedException 
-	 */
-	private static void waitForEnd() throws InterruptedException {
-		Iterator<NodeWrapper> nodeIterator = nodeWrapperMap.values().iterator();
-		while (nodeIterator.hasNext()) {
-			nodeIterator.next().join();
-		}
-		
-		Iterator<EdgeWrapper> edgeIterator = edgeWrapperMap.values().iterator();
-		while (edgeIterator.hasNext()) {
-			EdgeWrapper edge = edgeIterator.next();
-			edge.sendMessage(new Message(TERMINATE_EDGE), null);
-			edge.join();
-		}
-	}
+
 }
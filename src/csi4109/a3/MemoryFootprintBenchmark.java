@@ -0,0 +1,119 @@
+package csi4109.a3;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.implementations.SingleGraph;
+
+import csi4109.a3.ConfigurationData.TreeType;
+
+/**
+ * Measures the heap needed to hold the protocol state of every node of a tree, once
+ * with the per-node collections that {@link NodeWrapper} used to keep (a copy of the
+ * edge set and two maps of boxed values per node) and once with a {@link ProtocolState}
+ * and its {@link TreeTopology}, then reports the bytes per node of each. For example:
+ *
+ * <pre>
+ * java csi4109.a3.MemoryFootprintBenchmark Arbitrary 200000
+ * </pre>
+ */
+public class MemoryFootprintBenchmark {
+
+	private static final int DEFAULT_SIZE = 200000;
+
+	/**
+	 * The per-node state as it was kept by each {@link NodeWrapper}
+	 */
+	private static class LegacyNodeState {
+		private LinkedList<Edge> neighbours;
+		private Map<Edge, Integer> subtreeEccentricities;
+		private Map<Edge, Integer> subtreePaths;
+		private Edge maxEdge;
+		private int state;
+		private int eccentricity;
+		private int numPaths;
+		private boolean singleCenter;
+	}
+
+	public static void main(String[] args) {
+		TreeType type = args.length > 0 ? TreeType.valueOf(args[0]) : TreeType.Arbitrary;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SIZE;
+
+		// The graph itself is allocated before either measurement starts
+		TreeTopology generated = TreeTopology.generate(type, size, size);
+		Graph graph = buildGraph(generated);
+
+		long before = usedMemory();
+		LegacyNodeState[] legacy = buildLegacyState(graph);
+		long legacyBytes = usedMemory() - before;
+		System.out.println(String.format("Legacy per-node state: %d nodes, %.1f bytes per node",
+				legacy.length, (double)legacyBytes / size));
+		legacy = null;
+
+		before = usedMemory();
+		ProtocolState state = new ProtocolState(TreeTopology.fromGraph(graph));
+		long columnarBytes = usedMemory() - before;
+		System.out.println(String.format("Columnar state and topology: %d nodes, %.1f bytes per node",
+				state.getTopology().getNodeCount(), (double)columnarBytes / size));
+
+		System.out.println(String.format("Reduction: %.1f bytes per node (%.1fx smaller)",
+				(double)(legacyBytes - columnarBytes) / size, (double)legacyBytes / columnarBytes));
+	}
+
+	/**
+	 * Builds a GraphStream tree with the same structure as the topology
+	 */
+	private static Graph buildGraph(TreeTopology topology) {
+		Graph graph = new SingleGraph("Memory footprint", false, true,
+				topology.getNodeCount(), topology.getEdgeCount());
+		for (int v = 0; v < topology.getNodeCount(); v++) {
+			graph.addNode(Integer.toString(v));
+		}
+		for (int halfEdge = 0; halfEdge < topology.getHalfEdgeCount(); halfEdge++) {
+			int source = topology.getSource(halfEdge);
+			int target = topology.getTarget(halfEdge);
+			if (source < target) {
+				graph.addEdge(source + "-" + target, source, target);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Fills the legacy per-node collections as a node does once it received the
+	 * eccentricity of every sub-tree. Path counts are kept out of the small
+	 * {@link Integer} cache, like they are in any tree of a useful size
+	 */
+	private static LegacyNodeState[] buildLegacyState(Graph graph) {
+		LegacyNodeState[] states = new LegacyNodeState[graph.getNodeCount()];
+		for (Node node : graph) {
+			LegacyNodeState state = new LegacyNodeState();
+			state.neighbours = new LinkedList<Edge>(node.<Edge>getEdgeSet());
+			state.subtreeEccentricities = new HashMap<Edge, Integer>();
+			state.subtreePaths = new HashMap<Edge, Integer>();
+			for (Edge edge : state.neighbours) {
+				state.subtreeEccentricities.put(edge, edge.getIndex() % 64);
+				state.subtreePaths.put(edge, 1000 + edge.getIndex());
+			}
+			states[node.getIndex()] = state;
+		}
+		return states;
+	}
+
+	/**
+	 * @return the heap in use once the garbage collector settled
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+}
@@ -1,12 +1,9 @@
 package csi4109.a3;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.graphstream.graph.Edge;
-
 /**
- * A message that can be sent between {@link NodeWrapper}s through {@link EdgeWrapper}s
+ * A message that can be sent between {@link NodeWrapper}s through {@link EdgeWrapper}s.
+ * A message never changes once built, so the same instance can be shared by every
+ * {@link Envelope} that carries it
  */
 public class Message {
 	
@@ -15,36 +12,74 @@ public class Message {
 	 * They mostly correspond to the saturation algorithm messages seen in class
 	 */
 	public static enum MessageType {
-		WAKE_UP, SATURATE, NOTIFICATION, CHECK_CENTER, COMPARE_SATURATED, TERMINATE_EDGE
+		WAKE_UP(0), SATURATE(2), NOTIFICATION(1), CHECK_CENTER(2), COMPARE_SATURATED(1), TERMINATE_EDGE(0);
+
+		private final int valueCount; // Number of values every message of the type carries
+
+		private MessageType(int valueCount) {
+			this.valueCount = valueCount;
+		}
+
+		public int getValueCount() {
+			return this.valueCount;
+		}
 	}
 	
-	private MessageType messageType;
-	private Map<String, Integer> values; // The values that the message contains
-	private Edge edge; // The edge that carried the message
+	private static final String[] NO_KEYS = new String[0];
+	private static final long[] NO_VALUES = new long[0];
+	
+	private final MessageType messageType;
+	// The values that the message contains, and the key of each
+	private final String[] keys;
+	private final long[] values;
 	
 	/**
-	 * Constructs a new {@link Message} instance
+	 * Constructs a new {@link Message} instance without any value
 	 * 
 	 * @param type The {@link MessageType} of the message
+	 * @throws IllegalArgumentException if messages of the type carry values
 	 */
 	public Message(MessageType type) {
-		this.values = new HashMap<String, Integer>();
+		checkValueCount(type, 0);
 		this.messageType = type;
-		this.edge = null;
-	}
-
-	public MessageType getMessageType() {
-		return this.messageType;
+		this.keys = NO_KEYS;
+		this.values = NO_VALUES;
 	}
 	
 	/**
-	 * Adds a value to the {@link Message} using the given key
+	 * Constructs a new {@link Message} instance holding a single value
 	 * 
+	 * @param type The {@link MessageType} of the message
 	 * @param key The key of the value should it ever be retrieved
 	 * @param value The value to store in the {@link Message}
+	 * @throws IllegalArgumentException if messages of the type do not carry a single value
+	 */
+	public Message(MessageType type, String key, long value) {
+		checkValueCount(type, 1);
+		this.messageType = type;
+		this.keys = new String[] { key };
+		this.values = new long[] { value };
+	}
+	
+	/**
+	 * Constructs a new {@link Message} instance holding two values
+	 * 
+	 * @param type The {@link MessageType} of the message
+	 * @param key1 The key of the first value
+	 * @param value1 The first value to store in the {@link Message}
+	 * @param key2 The key of the second value
+	 * @param value2 The second value to store in the {@link Message}
+	 * @throws IllegalArgumentException if messages of the type do not carry two values
 	 */
-	public void addValue(String key, Integer value) {
-		this.values.put(key, value);
+	public Message(MessageType type, String key1, long value1, String key2, long value2) {
+		checkValueCount(type, 2);
+		this.messageType = type;
+		this.keys = new String[] { key1, key2 };
+		this.values = new long[] { value1, value2 };
+	}
+
+	public MessageType getMessageType() {
+		return this.messageType;
 	}
 
 	/**
@@ -52,16 +87,56 @@ public class Message {
 	 * 
 	 * @param key The key to use to retrieve the value
 	 * @return The value associated with the key
+	 * @throws IllegalArgumentException if the message holds no value for the key
 	 */
-	public int getValue(String key) {
-		return this.values.get(key);
+	public long getValue(String key) {
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.keys[i].equals(key)) {
+				return this.values[i];
+			}
+		}
+		throw new IllegalArgumentException(String.format("No value for %s in a %s message", key, this.messageType));
 	}
 	
-	public Edge getEdge() {
-		return this.edge;
+	/**
+	 * Returns the value in the {@link Message} at the given position, which is the
+	 * order in which it was given to the constructor
+	 *
+	 * @param position The position of the value, from 0
+	 * @return The value at that position, or 0 if the message holds fewer values
+	 */
+	long getValue(int position) {
+		return position < this.values.length ? this.values[position] : 0;
 	}
-	
-	public void setEdge(Edge edge) {
-		this.edge = edge;
+
+	/**
+	 * Returns the size of the {@link Message} once encoded for transmission:
+	 * one byte for its type and eight bytes for each of its values
+	 * 
+	 * @return the size of the {@link Message}, in bytes
+	 */
+	public int getEncodedSize() {
+		return getEncodedSize(this.messageType);
+	}
+
+	/**
+	 * Returns the size of any message of the given type once encoded for transmission,
+	 * for the engines that do not build {@link Message} instances
+	 * 
+	 * @param type A {@link MessageType}
+	 * @return the size of a message of that type, in bytes
+	 */
+	public static int getEncodedSize(MessageType type) {
+		return 1 + 8 * type.getValueCount();
+	}
+
+	/**
+	 * Makes sure a message carries as many values as its type says, which its encoded size depends on
+	 */
+	private static void checkValueCount(MessageType type, int valueCount) {
+		if (type.getValueCount() != valueCount) {
+			throw new IllegalArgumentException(String.format("A %s message carries %d values, not %d", type,
+					type.getValueCount(), valueCount));
+		}
 	}
 }
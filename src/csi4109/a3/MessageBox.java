@@ -1,53 +1,309 @@
 package csi4109.a3;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import csi4109.a3.ConfigurationData.BackpressurePolicy;
 
 /**
- * A type of queue specialized for {@link Message}s and concurrency.
+ * A type of queue specialized for {@link Envelope}s and concurrency.
  * Any entity needing to handle messages should store and retrieve them
- * using this object
+ * using this object. Nothing ever waits on a {@link MessageBox} for an
+ * envelope: its {@link Actor} is scheduled when messages arrive instead.
+ * A box may be bounded, in which case its {@link BackpressurePolicy}
+ * decides what happens to an envelope that finds it full
  */
 public class MessageBox {
 
-	private Semaphore messageSemaphore; // Used to suspend a thread waiting on a message
-	private Semaphore mutex; // Used to grant excusive access to the message queue
-	private Queue<Message> messages; // The queue holding the messages
-	
+	private Queue<Envelope> messages; // The queue holding the messages
+	private AtomicInteger size; // Number of messages in the queue, which the queue cannot count cheaply
+	private int capacity; // Maximum number of messages in the queue
+	private BackpressurePolicy policy; // What to do with an envelope that finds the queue full
+
+	// Messages that found the queue full, under the Spill policy, in order. An array
+	// backed deque takes far less memory per envelope than the queue itself
+	private ArrayDeque<Envelope> overflow;
+	private volatile int overflowSize = 0;
+
+	// Producers blocked on a full queue under the Block policy, and callbacks
+	// waiting for a credit under the Credit policy
+	private volatile int blockedProducers = 0;
+	private Queue<Runnable> creditWaiters;
+
+	// Backpressure metrics
+	private AtomicLong backpressureEvents; // Number of messages that found the queue full
+	private AtomicLong spilledMessages; // Number of messages that went to the overflow buffer
+	private AtomicInteger peakSize; // Largest number of messages ever waiting at once
+
 	/**
-	 * Constructs a {@link MessageBox} instance
+	 * Constructs an unbounded {@link MessageBox} instance
 	 */
 	public MessageBox() {
-		this.messageSemaphore = new Semaphore(0);
-		this.mutex = new Semaphore(1);
-		this.messages = new LinkedList<Message>();	
+		this(0, BackpressurePolicy.Block);
 	}
-	
+
+	/**
+	 * Constructs a {@link MessageBox} instance that holds at most the given number of
+	 * messages in its queue
+	 *
+	 * @param capacity The maximum number of messages in the queue, or 0 for no maximum
+	 * @param policy What to do with an envelope that finds the queue full
+	 */
+	public MessageBox(int capacity, BackpressurePolicy policy) {
+		this.messages = new ConcurrentLinkedQueue<Envelope>();
+		this.size = new AtomicInteger();
+		this.capacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+		this.policy = policy;
+		this.overflow = new ArrayDeque<Envelope>();
+		this.creditWaiters = new ConcurrentLinkedQueue<Runnable>();
+		this.backpressureEvents = new AtomicLong();
+		this.spilledMessages = new AtomicLong();
+		this.peakSize = new AtomicInteger();
+	}
+
 	/**
-	 * Adds a {@link Message} to the back of the {@link MessageBox} queue
-	 * 
-	 * @param message The {@link Message} to add
+	 * Adds an {@link Envelope} to the back of the {@link MessageBox} queue. If the
+	 * queue is full, the Block policy blocks the caller until there is room and the
+	 * Spill policy puts the envelope in the overflow buffer. Under the Credit policy,
+	 * producers should use {@link #offerMessage(Envelope)}, and this method always
+	 * accepts the envelope
+	 *
+	 * @param envelope The {@link Envelope} to add
 	 * @throws InterruptedException
 	 */
-	public void sendMessage(Message message) throws InterruptedException {
-		this.mutex.acquire();
-		this.messages.add(message);
-		this.messageSemaphore.release();
-		this.mutex.release();
+	public void sendMessage(Envelope envelope) throws InterruptedException {
+		if (this.capacity == Integer.MAX_VALUE || this.policy == BackpressurePolicy.Credit) {
+			this.add(envelope, this.size.incrementAndGet());
+		} else if (this.policy == BackpressurePolicy.Spill) {
+			this.spill(envelope);
+		} else if (!this.offerMessage(envelope)) {
+			this.block();
+			this.add(envelope, this.size.get());
+		}
+	}
+
+	/**
+	 * Adds several {@link Envelope}s to the back of the {@link MessageBox} queue.
+	 * The {@link Envelope}s keep their relative order
+	 *
+	 * @param messages The {@link Envelope}s to add
+	 * @throws InterruptedException
+	 */
+	public void sendMessages(List<Envelope> messages) throws InterruptedException {
+		for (Envelope envelope : messages) {
+			this.sendMessage(envelope);
+		}
+	}
+
+	/**
+	 * Adds an {@link Envelope} to the back of the {@link MessageBox} queue, unless
+	 * the queue is full
+	 *
+	 * @param envelope The {@link Envelope} to add
+	 * @return true if the envelope was added, false if the queue was full
+	 */
+	public boolean offerMessage(Envelope envelope) {
+		if (!this.reserve()) {
+			this.backpressureEvents.incrementAndGet();
+			return false;
+		}
+		this.add(envelope, this.size.get());
+		return true;
+	}
+
+	/**
+	 * Registers a callback to run once the queue has room for another envelope, after
+	 * {@link #offerMessage(Envelope)} failed. Each envelope taken from the queue runs at
+	 * most one callback
+	 *
+	 * @param callback The task to run once a credit is available
+	 * @return true if the callback was registered, false if the queue already has room,
+	 * in which case the envelope should be offered again right away
+	 */
+	public boolean awaitCredit(Runnable callback) {
+		this.creditWaiters.add(callback);
+		if (this.size.get() < this.capacity && this.creditWaiters.remove(callback)) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of {@link Envelope}s waiting in the {@link MessageBox}
+	 */
+	public int size() {
+		return this.size.get() + this.overflowSize;
+	}
+
+	/**
+	 * @return true if no {@link Envelope} is waiting in the {@link MessageBox}
+	 */
+	public boolean isEmpty() {
+		return this.messages.isEmpty() && this.overflowSize == 0;
+	}
+
+	/**
+	 * @return the number of {@link Envelope}s that found the queue full
+	 */
+	public long getBackpressureEvents() {
+		return this.backpressureEvents.get();
+	}
+
+	/**
+	 * @return the number of {@link Envelope}s that went to the overflow buffer
+	 */
+	public long getSpilledMessages() {
+		return this.spilledMessages.get();
+	}
+
+	/**
+	 * @return the largest number of {@link Envelope}s that ever waited in the queue at once
+	 */
+	public int getPeakSize() {
+		return this.peakSize.get();
+	}
+
+	/**
+	 * Removes an {@link Envelope} from the {@link MessageBox}
+	 *
+	 * @return The envelope removed from the box, or null if it was empty
+	 */
+	public Envelope retrieveMessage() {
+		Envelope envelope = this.messages.poll();
+		if (envelope == null && this.overflowSize > 0) {
+			this.refill();
+			envelope = this.messages.poll();
+		}
+		if (envelope != null) {
+			this.size.decrementAndGet();
+			this.released();
+		}
+		return envelope;
 	}
-	
+
+	/**
+	 * Removes every {@link Envelope} currently in the {@link MessageBox}
+	 *
+	 * @return The messages removed from the box, in the order they were added
+	 */
+	public List<Envelope> retrieveAllMessages() {
+		List<Envelope> messages = new ArrayList<Envelope>();
+		Envelope envelope;
+		while ((envelope = this.retrieveMessage()) != null) {
+			messages.add(envelope);
+		}
+		return messages;
+	}
+
+	/**
+	 * Adds an envelope for which room was reserved in the queue
+	 */
+	private void add(Envelope envelope, int size) {
+		this.messages.add(envelope);
+		int peak = this.peakSize.get();
+		while (size > peak && !this.peakSize.compareAndSet(peak, size)) {
+			peak = this.peakSize.get();
+		}
+	}
+
 	/**
-	 * Removes a {@link Message} from the {@link MessageBox} 
-	 * 
-	 * @return The message removed from the box
+	 * Takes room for one more envelope in the queue
+	 *
+	 * @return true if there was room, false if the queue is full
+	 */
+	private boolean reserve() {
+		int size = this.size.get();
+		while (size < this.capacity) {
+			if (this.size.compareAndSet(size, size + 1)) {
+				return true;
+			}
+			size = this.size.get();
+		}
+		return false;
+	}
+
+	/**
+	 * Adds an envelope to the queue under the Spill policy. Once an envelope is in the
+	 * overflow buffer, the next ones follow it there, so that the order is kept
+	 */
+	private void spill(Envelope envelope) {
+		synchronized (this.overflow) {
+			if (this.overflow.isEmpty() && this.reserve()) {
+				this.add(envelope, this.size.get());
+				return;
+			}
+			this.overflow.add(envelope);
+			this.overflowSize = this.overflow.size();
+		}
+		this.backpressureEvents.incrementAndGet();
+		this.spilledMessages.incrementAndGet();
+	}
+
+	/**
+	 * Moves as many messages from the overflow buffer to the queue as it has room for
+	 */
+	private void refill() {
+		synchronized (this.overflow) {
+			while (!this.overflow.isEmpty() && this.reserve()) {
+				this.add(this.overflow.poll(), this.size.get());
+			}
+			this.overflowSize = this.overflow.size();
+		}
+	}
+
+	/**
+	 * Blocks the caller until it could take room in the queue, under the Block policy.
+	 * The pool running the caller is told, so that it can keep other actors running
+	 *
 	 * @throws InterruptedException
 	 */
-	public Message retrieveMessage() throws InterruptedException {
-		this.messageSemaphore.acquire();
-		this.mutex.acquire();
-		Message message = this.messages.remove();
-		this.mutex.release();
-		return message;
+	private void block() throws InterruptedException {
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			private boolean reserved = false;
+
+			@Override
+			public boolean block() throws InterruptedException {
+				synchronized (MessageBox.this) {
+					MessageBox.this.blockedProducers++;
+					try {
+						while (!(this.reserved = MessageBox.this.reserve())) {
+							MessageBox.this.wait();
+						}
+					} finally {
+						MessageBox.this.blockedProducers--;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return this.reserved || (this.reserved = MessageBox.this.reserve());
+			}
+		});
+	}
+
+	/**
+	 * Hands the room freed by a retrieved envelope to whoever waits for it
+	 */
+	private void released() {
+		if (this.overflowSize > 0) {
+			this.refill();
+		}
+		if (this.blockedProducers > 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
+		}
+		Runnable callback = this.creditWaiters.poll();
+		if (callback != null) {
+			callback.run();
+		}
 	}
 }
@@ -0,0 +1,301 @@
+package csi4109.a3;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Off-heap transport of the threaded engine, used instead of {@link Envelope}s when the
+ * {@link ConfigurationData.Transport} is Ring. Each direction of each edge, numbered by
+ * the port of its sender, owns a ring of {@link #SLOTS} fixed-width slots in a single
+ * direct buffer shared by the run. A slot holds an encoded {@link Message}: its type,
+ * its encoded size, the port of its sender and its two values, which are the
+ * eccentricity and the number of paths of a SATURATE message.
+ * <p>
+ * Three cursors move along each ring. The sending node writes a slot and advances the
+ * written cursor, the {@link EdgeWrapper} transmits the slots up to it and advances the
+ * transmitted cursor, then the receiving node handles them and advances the read cursor,
+ * which frees the slots. Each cursor has a single writer, so sending, transmitting and
+ * delivering a message allocate nothing and take no lock. Once an edge transmits slots
+ * to a node, it puts the port at which they arrive in the ready queue of the node,
+ * unless the port is queued already. The ready queue of a node has an entry per port,
+ * in the same order as the ports of the {@link TreeTopology}.
+ * <p>
+ * No wakeup may be lost between the edge and the node. The edge stores the transmitted
+ * cursor, then tries to queue the port, while the node clears the queued flag of the port
+ * it takes, then reads the transmitted cursor. Like in Dekker's algorithm, each side
+ * stores, then loads what the other side stores, so all four accesses are volatile: with
+ * a release store and an acquire load, the load could be reordered before the store, and
+ * the edge could find the port still queued while the node misses the new cursor
+ */
+public class MessageRing {
+
+	// Slots per direction. The saturation algorithm never sends more than four messages
+	// over a direction, so a sender should never find its ring full
+	static final int SLOTS = 8;
+
+	// Layout of a slot: type, encoded size, two bytes of padding, port of the sender,
+	// then the two values of the message
+	private static final int SLOT_SIZE = 24;
+	private static final int TYPE = 0;
+	private static final int SIZE = 1;
+	private static final int SENDER_PORT = 4;
+	private static final int FIRST_VALUE = 8;
+	private static final int SECOND_VALUE = 16;
+	private static final VarHandle CURSORS = MethodHandles.arrayElementVarHandle(int[].class); // Ordered access to the cursors and queues
+
+	private final TreeTopology topology;
+	private final ByteBuffer slots;
+
+	// Cursors of each direction, indexed by the port of its sender. They only grow, and
+	// wrap around the ring as slot numbers
+	private final int[] written; // Written by the sending node
+	private final int[] transmitted; // Advanced by the edge
+	private final int[] read; // Advanced by the receiving node
+
+	// Ready queue of each node, as a circular array over the ports of the node
+	private final int[] readyPorts; // Ports with transmitted slots, or -1
+	private final int[] readyHeads; // Entries taken by each node
+	private final int[] readyTails; // Entries added to each node
+	private final int[] queued; // Whether each port is in the ready queue of its node, as 0 or 1
+
+	/**
+	 * Constructs a {@link MessageRing} instance with every ring empty
+	 *
+	 * @param topology The tree over whose edges the messages travel
+	 * @throws IllegalArgumentException if the tree is too large for a single buffer
+	 */
+	public MessageRing(TreeTopology topology) {
+		int numPorts = topology.getHalfEdgeCount();
+		if ((long)numPorts * SLOTS * SLOT_SIZE > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("A tree of %d nodes is too large for a message ring",
+					topology.getNodeCount()));
+		}
+		this.topology = topology;
+		this.slots = ByteBuffer.allocateDirect(numPorts * SLOTS * SLOT_SIZE).order(ByteOrder.nativeOrder());
+		this.written = new int[numPorts];
+		this.transmitted = new int[numPorts];
+		this.read = new int[numPorts];
+		this.readyPorts = new int[numPorts];
+		this.readyHeads = new int[topology.getNodeCount()];
+		this.readyTails = new int[topology.getNodeCount()];
+		this.queued = new int[numPorts];
+		Arrays.fill(this.readyPorts, -1);
+	}
+
+	/**
+	 * Empties every ring and ready queue, so that another run on the same tree can reuse
+	 * the buffer. No node nor edge of the previous run may still use the rings
+	 */
+	public void reset() {
+		Arrays.fill(this.written, 0);
+		Arrays.fill(this.transmitted, 0);
+		Arrays.fill(this.read, 0);
+		Arrays.fill(this.readyPorts, -1);
+		Arrays.fill(this.readyHeads, 0);
+		Arrays.fill(this.readyTails, 0);
+		Arrays.fill(this.queued, 0);
+	}
+
+	/**
+	 * Writes a message in the ring of a direction, if it has room for it. Only the node
+	 * at the source of the port may call this method
+	 *
+	 * @param port The port through which the message leaves its sender
+	 * @param message The message to write
+	 * @return true if the message was written, false if the ring is full
+	 */
+	public boolean offer(int port, Message message) {
+		int cursor = this.written[port];
+		if (!this.hasRoom(port)) {
+			return false;
+		}
+		int offset = this.offset(port, cursor);
+		this.slots.put(offset + TYPE, (byte)message.getMessageType().ordinal());
+		this.slots.put(offset + SIZE, (byte)message.getEncodedSize());
+		this.slots.putInt(offset + SENDER_PORT, port);
+		this.slots.putLong(offset + FIRST_VALUE, message.getValue(0));
+		this.slots.putLong(offset + SECOND_VALUE, message.getValue(1));
+		CURSORS.setRelease(this.written, port, cursor + 1);
+		return true;
+	}
+
+	/**
+	 * @param port The port through which messages leave their sender
+	 * @return true if the ring of the direction has room for another message
+	 */
+	public boolean hasRoom(int port) {
+		return this.written[port] - (int)CURSORS.getAcquire(this.read, port) < SLOTS;
+	}
+
+	/**
+	 * @param port The port through which messages leave their sender
+	 * @return the number of messages written in the direction and not transmitted yet
+	 */
+	public int getPending(int port) {
+		return (int)CURSORS.getAcquire(this.written, port) - this.transmitted[port];
+	}
+
+	/**
+	 * @param port The port through which messages leave their sender
+	 * @return the cursor up to which messages were written in the direction
+	 */
+	public int getWritten(int port) {
+		return (int)CURSORS.getAcquire(this.written, port);
+	}
+
+	/**
+	 * @param port The port through which messages leave their sender
+	 * @return the cursor up to which messages were transmitted in the direction
+	 */
+	public int getTransmitted(int port) {
+		// Volatile, so that a node reading it after clearing the queued flag of the port
+		// in pollReadyPort sees the cursor of any transmission that found the port queued
+		return (int)CURSORS.getVolatile(this.transmitted, port);
+	}
+
+	/**
+	 * Delivers the messages of a direction up to the given cursor, and queues the port
+	 * at which they arrive in the ready queue of the receiver. Only the edge of the port
+	 * may call this method
+	 *
+	 * @param port The port through which the messages left their sender
+	 * @param cursor The cursor up to which to deliver, at most the written cursor
+	 */
+	public void transmit(int port, int cursor) {
+		// Volatile, so that it is not reordered with the compare-and-set of the queued flag
+		CURSORS.setVolatile(this.transmitted, port, cursor);
+
+		int arrival = this.topology.getTwin(port);
+		if (CURSORS.compareAndSet(this.queued, arrival, 0, 1)) {
+			int node = this.topology.getTarget(port);
+			int tail = (int)CURSORS.getAndAdd(this.readyTails, node, 1);
+			CURSORS.setVolatile(this.readyPorts, this.readySlot(node, tail), arrival);
+		}
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return true if messages were transmitted to the node at a port it has not taken yet
+	 */
+	public boolean hasReadyPorts(int node) {
+		return (int)CURSORS.getVolatile(this.readyTails, node) != (int)CURSORS.getVolatile(this.readyHeads, node);
+	}
+
+	/**
+	 * Takes the next port of the ready queue of a node. Messages transmitted to the port
+	 * from then on queue it again. Only the node may call this method
+	 *
+	 * @param node A node of the tree
+	 * @return the port of the node at which messages arrived, or -1 if the queue is empty
+	 */
+	public int pollReadyPort(int node) {
+		int head = (int)CURSORS.getVolatile(this.readyHeads, node);
+		if (head == (int)CURSORS.getVolatile(this.readyTails, node)) {
+			return -1;
+		}
+
+		// The edge that took the entry may not have written it yet
+		int slot = this.readySlot(node, head);
+		int port;
+		while ((port = (int)CURSORS.getVolatile(this.readyPorts, slot)) < 0) {
+			Thread.onSpinWait();
+		}
+		this.readyPorts[slot] = -1;
+		CURSORS.setVolatile(this.readyHeads, node, head + 1);
+
+		// The node reads the transmitted cursor of the port with getTransmitted after this
+		// volatile store, and the edge queues the port again after storing the cursor
+		CURSORS.setVolatile(this.queued, port, 0);
+		return port;
+	}
+
+	/**
+	 * @param port The port at which messages arrive to their receiver
+	 * @return the number of messages transmitted to the port and not read yet
+	 */
+	public int getUnread(int port) {
+		int direction = this.topology.getTwin(port);
+		return (int)CURSORS.getAcquire(this.transmitted, direction) - this.read[direction];
+	}
+
+	/**
+	 * @param port The port at which messages arrive to their receiver
+	 * @return the cursor up to which the receiver read the messages of the direction
+	 */
+	public int getRead(int port) {
+		return this.read[this.topology.getTwin(port)];
+	}
+
+	/**
+	 * Frees the slots of a direction up to the given cursor, once the receiver read
+	 * them. Only the node at the target of the direction may call this method
+	 *
+	 * @param port The port at which messages arrive to their receiver
+	 * @param cursor The cursor up to which the messages were read
+	 */
+	public void release(int port, int cursor) {
+		CURSORS.setRelease(this.read, this.topology.getTwin(port), cursor);
+	}
+
+	/**
+	 * @param port The port through which the message left its sender
+	 * @param cursor The cursor of the message
+	 * @return the ordinal of the {@link Message.MessageType} of the message
+	 */
+	public int getType(int port, int cursor) {
+		return this.slots.get(this.offset(port, cursor) + TYPE);
+	}
+
+	/**
+	 * @param port The port through which the message left its sender
+	 * @param cursor The cursor of the message
+	 * @return the size of the message once encoded for transmission, in bytes
+	 */
+	public int getEncodedSize(int port, int cursor) {
+		return this.slots.get(this.offset(port, cursor) + SIZE);
+	}
+
+	/**
+	 * @param port The port through which the message left its sender
+	 * @param cursor The cursor of the message
+	 * @return the port through which the message left its sender, as written in the slot
+	 */
+	public int getSenderPort(int port, int cursor) {
+		return this.slots.getInt(this.offset(port, cursor) + SENDER_PORT);
+	}
+
+	/**
+	 * @param port The port through which the message left its sender
+	 * @param cursor The cursor of the message
+	 * @return the first value of the message, or 0 if it has none
+	 */
+	public long getFirstValue(int port, int cursor) {
+		return this.slots.getLong(this.offset(port, cursor) + FIRST_VALUE);
+	}
+
+	/**
+	 * @param port The port through which the message left its sender
+	 * @param cursor The cursor of the message
+	 * @return the second value of the message, or 0 if it has none
+	 */
+	public long getSecondValue(int port, int cursor) {
+		return this.slots.getLong(this.offset(port, cursor) + SECOND_VALUE);
+	}
+
+	/**
+	 * Returns the position of a slot in the buffer
+	 */
+	private int offset(int port, int cursor) {
+		return (port * SLOTS + (cursor & (SLOTS - 1))) * SLOT_SIZE;
+	}
+
+	/**
+	 * Returns the entry of the ready queue of a node that the given count falls on
+	 */
+	private int readySlot(int node, int count) {
+		return this.topology.getFirstPort(node) + Integer.remainderUnsigned(count, this.topology.getDegree(node));
+	}
+}
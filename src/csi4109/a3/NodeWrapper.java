@@ -1,534 +1,395 @@
 package csi4109.a3;
 
-import static csi4109.a3.Message.MessageType.CHECK_CENTER;
 import static csi4109.a3.Message.MessageType.COMPARE_SATURATED;
 import static csi4109.a3.Message.MessageType.NOTIFICATION;
-import static csi4109.a3.Message.MessageType.SATURATE;
 import static csi4109.a3.Message.MessageType.WAKE_UP;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.ArrayDeque;
 
 import org.graphstream.graph.Edge;
 import org.graphstream.graph.Node;
 
+import csi4109.a3.ConfigurationData.BackpressurePolicy;
+import csi4109.a3.Message.MessageType;
+import csi4109.a3.ProtocolTransitions.Engine;
+
 /**
  * A wrapper used for simulating a node in a distributed network.
- * This object runs in its own thread, running through different
+ * This object is an {@link Actor}, running through different
  * states as it and the other nodes compute the diametral path
- * of the tree network
+ * of the tree network. The handlers of {@link ProtocolTransitions}
+ * act on its messages, and the node carries out their sends and
+ * shows their progress on the graph. With the Ring transport, the messages sent to the node wait in the
+ * {@link MessageRing} of the run instead of its mailbox
  */
-public class NodeWrapper extends Thread {
+public class NodeWrapper extends Actor {
 	
 	// The states in which a NodeWrapper may find itself
-	private static final int AVAILABLE = 1;
-	private static final int ACTIVE = 2;
-	private static final int PROCESSING = 3;
-	private static final int SATURATED = 4;
-	private static final int NOTIFIED = 5;
+	static final int AVAILABLE = 1;
+	static final int ACTIVE = 2;
+	static final int PROCESSING = 3;
+	static final int SATURATED = 4;
+	static final int NOTIFIED = 5;
+	
+	private static final Message WAKE_UP_MESSAGE = new Message(WAKE_UP); // Every node forwards the same WAKE UP
+	private static final MessageType[] MESSAGE_TYPES = MessageType.values();
 	
 	private Node node;
-	private MessageBox messageBox;
-	private Collection<Edge> neighbours;
-	private Map<Edge, Integer> subtreeEccentricities; // Eccentricities of the sub-trees of this NodeWrapper
-	private Map<Edge, Integer> subtreePaths; // The sums of potential diametral paths of this NodeWrapper's sub-trees
-	private Edge parent; // The computed parent of this NodeWrapper
-	private Edge maxEdge; // The computed Edge with maximum eccentricity of this NodeWrapper
+	private SimulationContext context; // The run to which this node belongs
+	private ProtocolState state; // Protocol state of all the nodes, indexed by node and by port
+	private TreeTopology topology;
+	private int index; // Index of this NodeWrapper's node in the topology
+	private MessageRing ring; // Ring of the run, or null if the messages arrive in envelopes
+	private int readingPort = -1; // Port whose messages the node is reading from the ring, or -1
+	private Message notification; // The NOTIFICATION sent to every neighbour, built once
+	private Engine<InterruptedException> engine; // Carries out the actions of the protocol handlers
 	
-	private int eccentricity = 0; // This NodeWrapper's eccentricity
-	private int numPaths = 1; // The sum of potential diametral paths going through this NodeWrapper
-	private boolean isSingleCenter = false; // Determines whether or not there are one or two centers in the tree
+	// Under the Credit policy, the messages that wait for a credit from their edge, in order.
+	// The node handles none of its own messages while any are waiting
+	private boolean creditBased;
+	private ArrayDeque<PendingMessage> outbox;
+	private Runnable flushOutbox;
 	
 	/**
-	 * Constructs a {@link NodeWrapper} instance
-	 * 
-	 * @param node The {@link Node} around which to wrap this instance
+	 * A message kept by the node until its edge grants a credit
 	 */
-	public NodeWrapper(Node node) {
-		this.node = node;
-		this.messageBox = new MessageBox();
-		this.subtreeEccentricities = new HashMap<Edge, Integer>();
-		this.subtreePaths = new HashMap<Edge, Integer>();
-	}
-	
-	@Override
-	public void run() {
-		try {
-			this.setState(AVAILABLE);
-			this.available();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	private static class PendingMessage {
+		private EdgeWrapper edge;
+		private Message message;
+		
+		public PendingMessage(EdgeWrapper edge, Message message) {
+			this.edge = edge;
+			this.message = message;
 		}
 	}
 	
 	/**
-	 * Delegate method for sending a message to this {@link NodeWrapper}'s {@link MessageBox}
-	 * 
-	 * @param message The {@link Message} to send to this {@link NodeWrapper}
-	 * @throws InterruptedException
-	 */
-	public void sendMessage(Message message) throws InterruptedException {
-		this.messageBox.sendMessage(message);
-	}
-	
-	/**
-	 * First state of the {@link NodeWrapper}'s execution. It runs as
-	 * AVAILABLE. Once it receives a WAKE UP message either spontaneously
-	 * or from another node, it spreads the message. If it's a leaf, it
-	 * automatically goes to state PROCESSING
+	 * Constructs a {@link NodeWrapper} instance
 	 * 
-	 * @throws InterruptedException
+	 * @param node The {@link Node} around which to wrap this instance
+	 * @param context The {@link SimulationContext} of the run, in which this node keeps its state
 	 */
-	private void available() throws InterruptedException {
-		// First, put the node's ID on its label
-		Main.graphSemaphore.acquire();
-		this.node.setAttribute("ui.label", this.node.getId());
-		Main.graphSemaphore.release();
-		
-		while (this.checkState(AVAILABLE)) {
-			Message message = this.messageBox.retrieveMessage();
+	public NodeWrapper(Node node, SimulationContext context) {
+		this.node = node;
+		this.context = context;
+		this.state = context.getState();
+		this.topology = context.getTopology();
+		this.index = node.getIndex();
+		this.ring = context.getMessageRing();
+		this.creditBased = context.getConfiguration().mailboxCapacity > 0
+				&& context.getConfiguration().backpressurePolicy == BackpressurePolicy.Credit && this.ring == null;
+		this.outbox = new ArrayDeque<PendingMessage>();
+		this.flushOutbox = new Runnable() {
+			@Override
+			public void run() {
+				NodeWrapper.this.flushOutbox();
+			}
+		};
+		this.engine = new Engine<InterruptedException>() {
+			@Override
+			public void send(int node, int port, int type, long firstValue, long secondValue)
+					throws InterruptedException {
+				NodeWrapper.this.transmit(NodeWrapper.this.getEdgeWrapper(port),
+						NodeWrapper.this.buildMessage(type, firstValue, secondValue));
+			}
+			
+			@Override
+			public void stateChanged(int node, int state) throws InterruptedException {
+				NodeWrapper.this.showState(state);
+			}
 			
-			if (message.getMessageType() == WAKE_UP) {
-				this.neighbours = new LinkedList<Edge>(this.node.getEdgeSet());
-				
-				// Upon receiving WAKE UP, alert other neighbours. Make sure not to
-				// send back to sender. If sender is null, then it sends to all neighbours
-				this.messageNeighbours(message, message.getEdge());
-				
-				// If the node is a leaf, then send the saturate message immediately
-				if (this.neighbours.size() == 1) {
-					this.parent = this.neighbours.iterator().next();
-					this.maxEdge = this.parent;
-					this.sendSaturateMessage();
-				} else {
-					this.setState(ACTIVE);
+			@Override
+			public void subtreeReceived(int node, int port, int eccentricity, long numPaths)
+					throws InterruptedException {
+				// Display the eccentricity and diametral path information on the edge
+				if (NodeWrapper.this.context.isDisplayed()) {
+					NodeWrapper.this.getEdgeWrapper(port).displayInfo(NodeWrapper.this.node, eccentricity, numPaths);
 				}
 			}
-		}
-		
-		// Enter the next state
-		if (this.checkState(PROCESSING)) {
-			this.processing();
-		} else if (this.checkState(ACTIVE)) {
-			this.active();
-		} else {
-			throw new RuntimeException("Unknown state after exiting AVAILABLE");
-		}
+			
+			@Override
+			public void resultReceived(int node, long result) throws InterruptedException {
+				NodeWrapper.this.displayLabel(result);
+			}
+		};
 	}
-
+	
 	/**
-	 * A {@link NodeWrapper} running as ACTIVE can receive SATURATE messages.
-	 * Once it receives these messages from all but one of its neighbours,
-	 * it forwards the SATURATE message to the last one, which becomes its parent
+	 * Displays the node as AVAILABLE, with its ID on its label. The node then
+	 * waits for a WAKE UP message
 	 * 
 	 * @throws InterruptedException
 	 */
-	private void active() throws InterruptedException {
-		while (this.checkState(ACTIVE)) {
-			Message message = this.messageBox.retrieveMessage();
-			
-			if (message.getMessageType() == SATURATE) {
-				// Extract the information from the message and update
-				// local data
-				this.receiveEccentricityInfo(message);
-				
-				// If all neighbours but one have sent their SATURATE message,
-				// then forward to the last one
-				if (this.neighbours.size() == 1) {
-					this.parent = this.neighbours.iterator().next();
-					this.sendSaturateMessage();
-				}
-			}
-		}
-		
-		// Enter the next state
-		if (this.checkState(PROCESSING)) {
-			this.processing();
-		} else {
-			throw new RuntimeException("Unknown state after exiting ACTIVE");
-		}
+	public void start() throws InterruptedException {
+		this.setState(AVAILABLE);
+		this.displayLabel(this.node.getId());
 	}
 	
 	/**
-	 * A {@link NodeWrapper} in PROCESSING will wait for one of three messages.
-	 * The first is SATURATE, where the {@link NodeWrapper} will transition to
-	 * SATURATED. The second is CHECK CENTER, where the node will proceed to verify
-	 * if it is the center node of the tree. The third is NOTIFICATION, which contains
-	 * the number of diametral paths in the tree and must be forwarded to all other
-	 * neighbours 
+	 * Handles a message that arrived in the {@link MessageBox}
 	 * 
+	 * @param envelope The {@link Envelope} received
 	 * @throws InterruptedException
 	 */
-	private void processing() throws InterruptedException {
-		while (this.checkState(PROCESSING)) {
-			Message message = this.messageBox.retrieveMessage();
-			
-			switch (message.getMessageType()) {
-				case SATURATE:
-					// Become saturated and update local information
-					this.setState(SATURATED);
-					this.receiveEccentricityInfo(message);
-					// Send a message to the other saturated node to see who becomes leader
-					Message compareSaturated = new Message(COMPARE_SATURATED);
-					compareSaturated.addValue("index", this.node.getIndex());
-					Main.edgeWrapperMap.get(message.getEdge()).sendMessage(compareSaturated, this.node);
-					break;
-				case CHECK_CENTER:
-					// Update local information and check if center
-					this.receiveEccentricityInfo(message);
-					this.executeCenterChecking();
-					break;
-				case NOTIFICATION:
-					// Be notified and forward to other neighbours
-					this.setState(NOTIFIED);
-					this.node.setAttribute("ui.label", message.getValue("notify"));
-					messageNeighbours(message, message.getEdge());
-					break;
-				default:
-					break;
-			}
-		}
-		
-		// If saturated, then proceed to saturated state. Otherwise, terminate
-		if (this.checkState(SATURATED)) {
-			this.saturated();
-		}
+	@Override
+	protected void receive(Envelope envelope) throws InterruptedException {
+		Message message = envelope.getMessage();
+		Edge edge = envelope.getEdge();
+		this.receive(message.getMessageType().ordinal(), edge != null ? this.getPort(edge) : -1, message.getValue(0),
+				message.getValue(1));
 	}
 	
 	/**
-	 * Only the two saturated nodes can make it to this state.
-	 * In this state, the two compare each others IDs to know who
-	 * will take charge. That node then checks if it is center. If it is
-	 * then it computes the number of diametral paths and notifies
-	 * all the others. Otherwise, it tries to find the center node
+	 * Handles the next message of the {@link MessageBox}, or else the next message of the
+	 * ring at one of the ports in the ready queue of the node. The node reads a port until
+	 * it has no more transmitted messages before it takes the next one
 	 * 
+	 * @return false if there was no message to handle
 	 * @throws InterruptedException
 	 */
-	private void saturated() throws InterruptedException {
-		while (this.checkState(SATURATED)) {
-			Message message = this.messageBox.retrieveMessage();
+	@Override
+	protected boolean receiveNext() throws InterruptedException {
+		if (super.receiveNext()) {
+			return true;
+		}
+		if (this.ring == null) {
+			return false;
+		}
+		
+		while (this.readingPort >= 0 || (this.readingPort = this.ring.pollReadyPort(this.index)) >= 0) {
+			int port = this.readingPort;
+			int direction = this.topology.getTwin(port);
+			int cursor = this.ring.getRead(port);
 			
-			if (message.getMessageType() == CHECK_CENTER) {
-				this.executeCenterChecking(); // If asked, check if center
-			} else if (message.getMessageType() == COMPARE_SATURATED) {
-				// Received message to which saturated node will be leader.
-				// If this node is leader, then check if center
-				if (message.getValue("index") > this.node.getIndex()) {
-					this.executeCenterChecking();
-				}
-			} else if (message.getMessageType() == NOTIFICATION) {
-				// Some other node was center. Be notified and forward the message
-				this.setState(NOTIFIED);
-				this.node.setAttribute("ui.label", message.getValue("notify"));
-				messageNeighbours(message, message.getEdge());
+			// Read after pollReadyPort cleared the queued flag of the port, so that a
+			// transmission finding the port still queued is seen here, as MessageRing explains
+			if (cursor != this.ring.getTransmitted(direction)) {
+				int type = this.ring.getType(direction, cursor);
+				long firstValue = this.ring.getFirstValue(direction, cursor);
+				long secondValue = this.ring.getSecondValue(direction, cursor);
+				this.ring.release(port, cursor + 1);
+				this.receive(type, port, firstValue, secondValue);
+				return true;
 			}
+			this.readingPort = -1;
 		}
+		return false;
+	}
+	
+	@Override
+	protected boolean hasMessages() {
+		return super.hasMessages() || (this.ring != null
+				&& (this.readingPort >= 0 || this.ring.hasReadyPorts(this.index)));
 	}
 	
 	/**
-	 * Sends a {@link Message} to all neighbouring {@link Edge}s except for exclude.
-	 * If exclude is null, then all neighbours receive the message
-	 * 
-	 * @param message The message to forward to the neighbours
-	 * @param exclude The neighbour to exclude from the list of recipients
-	 * @throws InterruptedException
+	 * @return the number of messages waiting to be handled, in the mailbox and in the ring
 	 */
-	private void messageNeighbours(Message message, Edge exclude) throws InterruptedException {
-		for (Edge neighbour : this.node.getEdgeSet()) {
-			if (!neighbour.equals(exclude)) {
-				Main.edgeWrapperMap.get(neighbour).sendMessage(message, this.node);
+	@Override
+	public int getBacklog() {
+		int backlog = super.getBacklog();
+		if (this.ring != null) {
+			int firstPort = this.topology.getFirstPort(this.index);
+			for (int port = firstPort; port < firstPort + this.topology.getDegree(this.index); port++) {
+				backlog += this.ring.getUnread(port);
 			}
 		}
+		return backlog;
 	}
 	
 	/**
-	 * Helper method for sending a SATURATE message
+	 * Handles a message with the action that {@link ProtocolTransitions} gives for the
+	 * current state of the node and the type of the message. Messages the node does not
+	 * expect in its state, including any still in transit once it is NOTIFIED, are dropped
 	 * 
+	 * @param type The ordinal of the {@link Message.MessageType} of the message
+	 * @param port The port at which the message arrived, or -1 for a spontaneous WAKE UP
+	 * @param firstValue The first value of the message, or 0 if it has none
+	 * @param secondValue The second value of the message, or 0 if it has none
 	 * @throws InterruptedException
 	 */
-	private void sendSaturateMessage() throws InterruptedException {
-		Message saturate = new Message(SATURATE);
-		
-		// Add local eccentricity and diametral path information
-		saturate.addValue("eccentricity", this.eccentricity + 1);
-		saturate.addValue("paths", this.numPaths);
-		
-		// Send the message to the parent
-		Main.edgeWrapperMap.get(this.parent).sendMessage(saturate, this.node);
-		this.setState(PROCESSING);
+	private void receive(int type, int port, long firstValue, long secondValue) throws InterruptedException {
+		ProtocolTransitions.deliver(this.state, this.index, port, type, firstValue, secondValue, this.engine);
 	}
 	
 	/**
-	 * Processes information received from a message and updates local
-	 * eccentricity and number of diametral paths.
+	 * Builds the {@link Message} sent by a protocol handler. A node sends WAKE UP and
+	 * NOTIFICATION to all its other neighbours at once, so they share a single instance
 	 * 
-	 * @param message The {@link Message} from which to extract the information
-	 * @throws InterruptedException
+	 * @param type The ordinal of the {@link Message.MessageType} of the message
+	 * @param firstValue The first value of the message, or 0 if it has none
+	 * @param secondValue The second value of the message, or 0 if it has none
+	 * @return the message
 	 */
-	private void receiveEccentricityInfo(Message message) throws InterruptedException {
-		Edge edge = message.getEdge();
-		
-		// Get the eccentricity and diametral path information from the message
-		int subTreeEccentricity = message.getValue("eccentricity");
-		int numPaths = message.getValue("paths");
-		
-		// Update local information for that edge
-		this.subtreeEccentricities.put(edge, subTreeEccentricity);
-		this.subtreePaths.put(edge, numPaths);
-		
-		// Update local eccentricity to the maximum of the two.
-		// If local eccentricity was smaller, then local number of
-		// diametral paths is reset to the number of paths received
-		// from the message
-		if (this.eccentricity < subTreeEccentricity) {
-			this.eccentricity = subTreeEccentricity;
-			this.maxEdge = edge;
-			this.numPaths = numPaths;
-		} else if (this.eccentricity == subTreeEccentricity) {
-			// If the message's eccentricity is the same as the local one,
-			// then add the message's number of diametral paths to the
-			// local value
-			this.numPaths += numPaths;
+	private Message buildMessage(int type, long firstValue, long secondValue) {
+		switch (MESSAGE_TYPES[type]) {
+			case WAKE_UP:
+				return WAKE_UP_MESSAGE;
+			case NOTIFICATION:
+				// A node is notified only once
+				if (this.notification == null) {
+					this.notification = new Message(NOTIFICATION, "notify", firstValue);
+				}
+				return this.notification;
+			case COMPARE_SATURATED:
+				return new Message(COMPARE_SATURATED, "index", firstValue);
+			default:
+				return new Message(MESSAGE_TYPES[type], "eccentricity", firstValue, "paths", secondValue);
 		}
-
-		// Remove the edge from the list of neighbours NOT having sent a
-		// saturation message yet
-		this.neighbours.remove(edge);
-		
-		// Display the messages eccentricity and diametral path information on the edge
-		Main.edgeWrapperMap.get(edge).displayInfo(this.node, subTreeEccentricity, numPaths);
 	}
 	
 	/**
-	 * Check if this {@link NodeWrapper} is the central node. If yes, then
-	 * compute the number of diametral paths and notify the others. If not,
-	 * then ask the next node to check if it's center
+	 * Hands a {@link Message} to one of this node's {@link EdgeWrapper}s. Under the Credit
+	 * policy, a message the edge has no room for is kept in the outbox, along with every
+	 * later one, and the node stops handling its own messages until the outbox is empty
 	 * 
+	 * @param edge The {@link EdgeWrapper} over which to send the message
+	 * @param message The {@link Message} to send
 	 * @throws InterruptedException
 	 */
-	private void executeCenterChecking() throws InterruptedException {
-		if (this.isCenter()) {
-			this.setState(NOTIFIED);
-			
-			// Compute the number of diametral paths and update
-			// node label with it
-			int numPaths = this.computeDiametralPaths();
-			this.node.setAttribute("ui.label", numPaths);
-			
-			// Notify the neighbours with the computed value
-			Message notify = new Message(NOTIFICATION);
-			notify.addValue("notify", numPaths);
-			this.messageNeighbours(notify, null);
-		} else {
-			Message checkCenter = new Message(CHECK_CENTER);
-			
-			// Compute eccentricity and number of diametral paths
-			// of this node in the context of the node to which
-			// the message is being sent, then ask it to check if it
-			// is center
-			int computedEccentricity = this.computeEccentricity(this.maxEdge);
-			checkCenter.addValue("eccentricity", computedEccentricity + 1);
-			checkCenter.addValue("paths", this.computeNumPaths(this.maxEdge, computedEccentricity));
-			Main.edgeWrapperMap.get(this.maxEdge).sendMessage(checkCenter, this.node);
+	private void transmit(EdgeWrapper edge, Message message) throws InterruptedException {
+		if (!this.creditBased) {
+			edge.sendMessage(message, this.node);
+			return;
+		}
+		
+		synchronized (this.outbox) {
+			if (this.outbox.isEmpty() && edge.offerMessage(message, this.node)) {
+				return;
+			}
+			this.outbox.add(new PendingMessage(edge, message));
+			if (this.outbox.size() == 1) {
+				this.suspend();
+				this.flushOutbox();
+			}
 		}
 	}
 	
 	/**
-	 * Checks if this node is a center node
-	 * 
-	 * @return true if this node is central, false otherwise
+	 * Offers the messages of the outbox to their edges, in order, until one has no room.
+	 * The node then waits for a credit from that edge, or handles its messages again if
+	 * the outbox is empty
 	 */
-	private boolean isCenter() {
-		Iterator<Edge> edges = this.subtreeEccentricities.keySet().iterator();
-		
-		// Get the number of neighbours and the maximum eccentricity
-		int numNeighbours = this.node.getDegree();
-		int maxValue = this.subtreeEccentricities.get(this.maxEdge);
-		boolean isCenter = false;
-		
-		// Make sure to iterate through all of the nodes so that
-		// we know for sure whether it is a single or a double
-		// center
-		while (edges.hasNext()) {
-			Edge edge = edges.next();
-			int delta = maxValue - this.subtreeEccentricities.get(edge);
-			
-			// If the delta between the maximum eccentricity and the current edge
-			// is <= 1, then we have a center node. If the node is a leaf, then it
-			// must be in a 2-node tree to have made it to this point
-			if ((!edge.equals(this.maxEdge) || numNeighbours == 1) && (delta) <= 1) {
-				// If we find an edge for which the delta is 0, then we know that
-				// the tree has a single center node
-				if (delta == 0) {
-					this.isSingleCenter = true;
+	private void flushOutbox() {
+		synchronized (this.outbox) {
+			while (!this.outbox.isEmpty()) {
+				PendingMessage pending = this.outbox.peek();
+				if (pending.edge.offerMessage(pending.message, this.node)) {
+					this.outbox.poll();
+				} else if (pending.edge.awaitCredit(this.flushOutbox)) {
+					return;
 				}
-				isCenter = true;
 			}
 		}
-		return isCenter;
+		this.resume();
 	}
 	
 	/**
-	 * Helper method for when the nodes are looking for the center node.
-	 * Computes eccentricity in the context of the excluded node
+	 * Returns the port of this {@link NodeWrapper} through which the given {@link Edge} leaves it
 	 * 
-	 * @param exclude The node to which this computed eccentricity will be sent
-	 * @return the eccentricity of this {@link NodeWrapper} in the context of exclude
+	 * @param edge One of this node's {@link Edge}s
+	 * @return the port of the {@link Edge}
 	 */
-	private int computeEccentricity(Edge exclude) {
-		int eccentricity = 0;
-		for (Edge edge : this.node.getEdgeSet()) {
-			if (!exclude.equals(edge)) {
-				eccentricity = Math.max(eccentricity, this.subtreeEccentricities.get(edge));
-			}
-		}
-		return eccentricity;
+	private int getPort(Edge edge) {
+		return this.topology.getPort(edge.getIndex(), this.index);
 	}
 	
 	/**
-	 * Helper method for when the nodes are looking for the center node.
-	 * Computes the number of diametral paths in the context of the excluded node
+	 * Returns the {@link Edge} leaving this {@link NodeWrapper} through the given port
 	 * 
-	 * @param exclude The node to which this computed eccentricity will be sent
-	 * @param eccentricity The eccentricity of this {@link NodeWrapper} in the context of
-	 * exclude
-	 * @return the number of diametral paths of this {@link NodeWrapper} in the context of exclude
+	 * @param port One of this node's ports
+	 * @return the {@link Edge} of the port
 	 */
-	private int computeNumPaths(Edge exclude, int eccentricity) {
-		int numPaths = 0;
-		for (Edge edge : this.node.getEdgeSet()) {
-			// Make sure to only add up the diametral paths of the edges that
-			// have the same eccentricity
-			int edgeEccentricity = this.subtreeEccentricities.get(edge);
-			if (!exclude.equals(edge) && eccentricity == edgeEccentricity) {
-				numPaths += this.subtreePaths.get(edge);
-			}
-		}
-		return numPaths;
+	private Edge getEdge(int port) {
+		return this.node.getGraph().getEdge(this.topology.getEdge(port));
 	}
 	
 	/**
-	 * Computes the number of diametral paths in the tree
+	 * Returns the {@link EdgeWrapper} leaving this {@link NodeWrapper} through the given port
 	 * 
-	 * @return the number of diametral paths in the tree
+	 * @param port One of this node's ports
+	 * @return the {@link EdgeWrapper} of the port
 	 */
-	private int computeDiametralPaths() {
-		return isSingleCenter ?
-				computeDiametralPathsForSingleCenter() :
-					computeDiametralPathsForDoubleCenter();
+	private EdgeWrapper getEdgeWrapper(int port) {
+		return this.context.getEdgeWrapper(this.getEdge(port));
 	}
 	
 	/**
-	 * Computes the number of diametral paths in the tree if it contains
-	 * a single center
+	 * Sets the state for the given {@link NodeWrapper}
 	 * 
-	 * @return the number of diametral paths in the tree
+	 * @param state The state to which to set the {@link NodeWrapper}
+	 * @throws InterruptedException
 	 */
-	private int computeDiametralPathsForSingleCenter() {
-		Iterator<Edge> edges = this.subtreeEccentricities.keySet().iterator();
-		
-		// Get the maximum eccentricity
-		int maxValue = this.subtreeEccentricities.get(this.maxEdge);
-		LinkedList<Integer> paths = new LinkedList<Integer>();
-		
-		// Iterate through the edges and add all of the numbers of
-		// diametral paths for each edge if the eccentricities are the same
-		while (edges.hasNext()) {
-			Edge edge = edges.next();
-			int delta = maxValue - this.subtreeEccentricities.get(edge);
-			if (delta < 1) {
-				paths.add(this.subtreePaths.get(edge));
-			}
-		}
-		
-		// The number of paths will be the following formula:
-		// p1*(p2 + p3 + ...) + p2*(p3 + p4 + ...) + ... + pn-1 * pn
-		// Where pi is a number of paths for a given sub-tree with maximum
-		// eccentricity
-		int sum = 0;
-		for (int i = 0; i < paths.size() - 1; i++) {
-			int subSum = 0;
-			
-			for (int j = i + 1; j < paths.size(); j++) {
-				subSum += paths.get(j);
-			}
-			sum += paths.get(i) * subSum;
-		}
-		
-		return sum;
+	private void setState(int state) throws InterruptedException {
+		this.state.setState(this.index, state);
+		this.showState(state);
 	}
 	
 	/**
-	 * Computes the number of diametral paths in the tree if it contains
-	 * two centers
+	 * Reports a state the {@link NodeWrapper} entered, and displays it if the run is displayed
 	 * 
-	 * @return the number of diametral paths in the tree
+	 * @param state The state of the {@link NodeWrapper}
+	 * @throws InterruptedException
 	 */
-	private int computeDiametralPathsForDoubleCenter() {
-		Iterator<Edge> edges = this.subtreeEccentricities.keySet().iterator();
-		
-		// Get the maximum eccentricity
-		int maxValue = this.subtreeEccentricities.get(this.maxEdge);
+	private void showState(int state) throws InterruptedException {
+		if (state == NOTIFIED) {
+			this.context.nodeFinished();
+		}
+		if (!this.context.isDisplayed()) {
+			return;
+		}
 		
-		int maxPathsSum = 0; // Used to sum the numbers of diametral paths for the maximum eccentricity
-		int	nextMaxPathsSum = 0; // Used to sum the numbers of diametral paths for the second maximum eccentricity
+		SimulationEvents.acquireGraph(this.context.getGraphSemaphore(), this.index, -1);
+		SimulationEvents.GraphUpdate update = SimulationEvents.beginGraphUpdate();
+		this.node.setAttribute("state", state);
 		
-		while (edges.hasNext()) {
-			Edge edge = edges.next();
-			int delta = maxValue - this.subtreeEccentricities.get(edge);
-			if (delta == 0) { // If maximum eccentricity
-				maxPathsSum += this.subtreePaths.get(edge);
-			} else if (delta == 1) { // If second maximum eccentricity
-				nextMaxPathsSum += this.subtreePaths.get(edge);
-			}
+		if (this.node.hasAttribute("ui.class")) {
+			this.node.removeAttribute("ui.class");
 		}
 		
-		// Multiply the two sums together
-		return maxPathsSum * nextMaxPathsSum;
+		// Switch to the appropriate CSS class
+		String cssClass = getStateClass(state);
+		if (cssClass != null) {
+			this.node.setAttribute("ui.class", cssClass);
+		}
+		SimulationEvents.endGraphUpdate(update, this.index, -1, "ui.class");
+		this.context.getGraphSemaphore().release();
 	}
 	
 	/**
-	 * Checks if the {@link NodeWrapper} is in the given state
+	 * Displays the given value on the label of the node, if the run is displayed
 	 * 
-	 * @param state The state to verify
-	 * @return true if the {@link NodeWrapper} is in state state, otherwise, false
+	 * @param label The value to display
+	 * @throws InterruptedException
 	 */
-	private boolean checkState(Integer state) {
-		return state.equals(node.getAttribute("state"));
+	private void displayLabel(Object label) throws InterruptedException {
+		if (this.context.isDisplayed()) {
+			SimulationEvents.acquireGraph(this.context.getGraphSemaphore(), this.index, -1);
+			SimulationEvents.GraphUpdate update = SimulationEvents.beginGraphUpdate();
+			this.node.setAttribute("ui.label", label);
+			SimulationEvents.endGraphUpdate(update, this.index, -1, "ui.label");
+			this.context.getGraphSemaphore().release();
+		}
 	}
 	
 	/**
-	 * Sets the state for the given {@link NodeWrapper}
+	 * Returns the CSS class used to display a node in the given state
 	 * 
-	 * @param state The state to which to set the {@link NodeWrapper}
-	 * @throws InterruptedException
+	 * @param state The state of the node
+	 * @return the CSS class of the state, or null if the state uses the default style
 	 */
-	private void setState(Integer state) throws InterruptedException {
-		Main.graphSemaphore.acquire();
-		this.node.setAttribute("state", state);
-		
-		if (this.node.hasAttribute("ui.class")) {
-			this.node.removeAttribute("ui.class");
-		}
-		
-		// Switch to the appropriate CSS class
+	static String getStateClass(int state) {
 		switch (state) {
 			case ACTIVE:
-				this.node.setAttribute("ui.class", "active");
-				break;
+				return "active";
 			case PROCESSING:
-				this.node.setAttribute("ui.class", "processing");
-				break;
+				return "processing";
 			case SATURATED:
-				this.node.setAttribute("ui.class", "saturated");
-				break;
+				return "saturated";
 			case NOTIFIED:
-				this.node.setAttribute("ui.class", "notified");
-				break;
+				return "notified";
+			default:
+				return null;
 		}
-		Main.graphSemaphore.release();
 	}
 }
@@ -0,0 +1,497 @@
+package csi4109.a3;
+
+import static csi4109.a3.NodeWrapper.AVAILABLE;
+import static csi4109.a3.NodeWrapper.NOTIFIED;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import csi4109.a3.ConfigurationData.StateStorage;
+
+/**
+ * The saturation protocol's state for every node of a tree, stored in shared columnar
+ * arrays instead of per-node objects. Per-node values are indexed by node and per-edge
+ * values are indexed by port, the half-edge numbers of a {@link TreeTopology}, so that a
+ * node costs a few dozen bytes no matter how it is scheduled. The computations that only
+ * depend on this state are shared by {@link NodeWrapper} and {@link DeterministicSimulator}.
+ * <p>
+ * The columns are buffers, kept on the heap or off it depending on the {@link StateStorage}.
+ * Off the heap, the garbage collector never scans nor copies them, and a memory-mapped
+ * state may be larger than both the heap and the physical memory, the operating system
+ * paging it to disk as needed. Each column holds at most 2 GB, which is 134 million
+ * nodes for the per-port columns
+ */
+public class ProtocolState {
+
+	private static final byte[] ZEROS = new byte[1 << 16]; // Source of the bulk writes that clear an off-heap column
+
+	private final TreeTopology topology;
+	private final ByteBuffer[] columns; // Every column, as allocated
+
+	// Per-node state
+	private final ByteBuffer states;
+	private final ByteBuffer singleCenters; // Whether a node found a single center in the tree, as 0 or 1
+	private final IntBuffer pending; // Number of neighbours that have not sent SATURATE yet
+	private final IntBuffer remainingPorts; // XOR of the local port numbers that have not sent SATURATE yet
+	private final IntBuffer parents; // Port leading to the parent, or -1
+	private final IntBuffer maxPorts; // Port with the maximum eccentricity, or -1
+	private final IntBuffer eccentricities;
+	private final LongBuffer numPaths; // The sum of potential diametral paths going through each node
+
+	// Per-port state
+	private final IntBuffer subtreeEccentricities; // 0 until the sub-tree's eccentricity is received
+	private final LongBuffer subtreePaths;
+
+	private int center = -1; // Node that computed the number of diametral paths
+	private long result = -1; // Number of diametral paths computed by the center
+
+	/**
+	 * Constructs a {@link ProtocolState} instance on the heap, with every node AVAILABLE
+	 *
+	 * @param topology The tree whose nodes the state describes
+	 */
+	public ProtocolState(TreeTopology topology) {
+		this(topology, StateStorage.Heap);
+	}
+
+	/**
+	 * Constructs a {@link ProtocolState} instance with every node AVAILABLE
+	 *
+	 * @param topology The tree whose nodes the state describes
+	 * @param storage Where to keep the columns
+	 * @throws IllegalArgumentException if the tree is too large for a column
+	 * @throws IllegalStateException if the file of a memory-mapped state could not be created
+	 */
+	public ProtocolState(TreeTopology topology, StateStorage storage) {
+		int numNodes = topology.getNodeCount();
+		int numPorts = topology.getHalfEdgeCount();
+		if ((long)numPorts * 8 > Integer.MAX_VALUE || (long)numNodes * 8 > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("A tree of %d nodes is too large for its state", numNodes));
+		}
+
+		ByteBuffer[] columns = allocate(storage, numNodes * 8, numPorts * 8, numNodes * 4, numNodes * 4, numNodes * 4,
+				numNodes * 4, numNodes * 4, numPorts * 4, numNodes, numNodes);
+		this.topology = topology;
+		this.numPaths = columns[0].asLongBuffer();
+		this.subtreePaths = columns[1].asLongBuffer();
+		this.pending = columns[2].asIntBuffer();
+		this.remainingPorts = columns[3].asIntBuffer();
+		this.parents = columns[4].asIntBuffer();
+		this.maxPorts = columns[5].asIntBuffer();
+		this.eccentricities = columns[6].asIntBuffer();
+		this.subtreeEccentricities = columns[7].asIntBuffer();
+		this.states = columns[8];
+		this.singleCenters = columns[9];
+		this.columns = columns;
+		this.initialize();
+	}
+
+	/**
+	 * Constructs a {@link ProtocolState} instance from the state written by {@link #write(DataOutput)}
+	 *
+	 * @param topology The tree whose nodes the state describes
+	 * @param storage Where to keep the columns
+	 * @param in The input from which to read the state
+	 * @throws IOException
+	 */
+	ProtocolState(TreeTopology topology, StateStorage storage, DataInput in) throws IOException {
+		this(topology, storage);
+		for (int node = 0; node < this.states.capacity(); node++) {
+			this.states.put(node, in.readByte());
+			this.singleCenters.put(node, (byte)(in.readBoolean() ? 1 : 0));
+			this.pending.put(node, in.readInt());
+			this.remainingPorts.put(node, in.readInt());
+			this.parents.put(node, in.readInt());
+			this.maxPorts.put(node, in.readInt());
+			this.eccentricities.put(node, in.readInt());
+			this.numPaths.put(node, in.readLong());
+		}
+		for (int port = 0; port < this.subtreeEccentricities.capacity(); port++) {
+			this.subtreeEccentricities.put(port, in.readInt());
+			this.subtreePaths.put(port, in.readLong());
+		}
+		this.center = in.readInt();
+		this.result = in.readLong();
+	}
+
+	/**
+	 * Writes the state of every node and port
+	 *
+	 * @param out The output to which to write
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		for (int node = 0; node < this.states.capacity(); node++) {
+			out.writeByte(this.states.get(node));
+			out.writeBoolean(this.singleCenters.get(node) != 0);
+			out.writeInt(this.pending.get(node));
+			out.writeInt(this.remainingPorts.get(node));
+			out.writeInt(this.parents.get(node));
+			out.writeInt(this.maxPorts.get(node));
+			out.writeInt(this.eccentricities.get(node));
+			out.writeLong(this.numPaths.get(node));
+		}
+		for (int port = 0; port < this.subtreeEccentricities.capacity(); port++) {
+			out.writeInt(this.subtreeEccentricities.get(port));
+			out.writeLong(this.subtreePaths.get(port));
+		}
+		out.writeInt(this.center);
+		out.writeLong(this.result);
+	}
+
+	/**
+	 * Brings every node back to AVAILABLE, as if the state had just been constructed, so
+	 * that another run on the same tree can reuse its columns. The columns are cleared in
+	 * bulk, which is far cheaper than allocating them again, or than mapping another file
+	 */
+	public void reset() {
+		for (ByteBuffer column : this.columns) {
+			clear(column);
+		}
+		this.center = -1;
+		this.result = -1;
+		this.initialize();
+	}
+
+	/**
+	 * Sets the columns that do not start at 0
+	 */
+	private void initialize() {
+		for (int node = 0; node < this.states.capacity(); node++) {
+			this.states.put(node, (byte)AVAILABLE);
+			this.parents.put(node, -1);
+			this.maxPorts.put(node, -1);
+			this.numPaths.put(node, 1);
+		}
+	}
+
+	/**
+	 * Sets every byte of a column to 0
+	 *
+	 * @param column The column to clear
+	 */
+	private static void clear(ByteBuffer column) {
+		if (column.hasArray()) {
+			Arrays.fill(column.array(), column.arrayOffset(), column.arrayOffset() + column.capacity(), (byte)0);
+			return;
+		}
+		ByteBuffer target = column.duplicate();
+		target.clear();
+		while (target.hasRemaining()) {
+			target.put(ZEROS, 0, Math.min(ZEROS.length, target.remaining()));
+		}
+	}
+
+	/**
+	 * Allocates the columns, in native byte order. The columns of a memory-mapped state
+	 * are laid out one after the other in a single file
+	 *
+	 * @param storage Where to keep the columns
+	 * @param sizes The size of each column, in bytes
+	 * @return the columns
+	 */
+	private static ByteBuffer[] allocate(StateStorage storage, int... sizes) {
+		ByteBuffer[] columns = new ByteBuffer[sizes.length];
+		if (storage != StateStorage.Mapped) {
+			for (int i = 0; i < sizes.length; i++) {
+				columns[i] = storage == StateStorage.Direct ? ByteBuffer.allocateDirect(sizes[i])
+						: ByteBuffer.allocate(sizes[i]);
+				columns[i].order(ByteOrder.nativeOrder());
+			}
+			return columns;
+		}
+
+		try {
+			// The mappings outlive both the channel and the file, which is removed at once
+			File file = File.createTempFile("csi4109-state", ".bin");
+			file.deleteOnExit();
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				long offset = 0;
+				for (int i = 0; i < sizes.length; i++) {
+					columns[i] = raf.getChannel().map(MapMode.READ_WRITE, offset, sizes[i]);
+					columns[i].order(ByteOrder.nativeOrder());
+					offset += sizes[i];
+				}
+			} finally {
+				raf.close();
+				file.delete();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not map the protocol state to a file", e);
+		}
+		return columns;
+	}
+
+	public TreeTopology getTopology() {
+		return this.topology;
+	}
+
+	public int getState(int node) {
+		return this.states.get(node);
+	}
+
+	public void setState(int node, int state) {
+		int previous = this.states.get(node);
+		this.states.put(node, (byte)state);
+		SimulationEvents.stateTransition(node, previous, state);
+	}
+
+	public int getParent(int node) {
+		return this.parents.get(node);
+	}
+
+	public void setParent(int node, int port) {
+		this.parents.put(node, port);
+	}
+
+	public int getMaxPort(int node) {
+		return this.maxPorts.get(node);
+	}
+
+	public void setMaxPort(int node, int port) {
+		this.maxPorts.put(node, port);
+	}
+
+	public int getEccentricity(int node) {
+		return this.eccentricities.get(node);
+	}
+
+	public long getNumPaths(int node) {
+		return this.numPaths.get(node);
+	}
+
+	/**
+	 * @param port A port of the tree
+	 * @return the eccentricity received for the sub-tree behind the port, or 0 if none was received
+	 */
+	public int getSubtreeEccentricity(int port) {
+		return this.subtreeEccentricities.get(port);
+	}
+
+	/**
+	 * @param port A port of the tree
+	 * @return the number of potential diametral paths received for the sub-tree behind the port
+	 */
+	public long getSubtreePaths(int port) {
+		return this.subtreePaths.get(port);
+	}
+
+	/**
+	 * @return the node that computed the number of diametral paths, or -1 if none did yet
+	 */
+	public int getCenter() {
+		return this.center;
+	}
+
+	/**
+	 * @return the number of diametral paths computed by the center, or -1 if none did yet
+	 */
+	public long getResult() {
+		return this.result;
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return the number of diametral paths the node knows of, or -1 if it was not notified yet
+	 */
+	public long getResult(int node) {
+		return this.states.get(node) == NOTIFIED ? this.result : -1;
+	}
+
+	/**
+	 * Records the number of diametral paths computed by the center
+	 *
+	 * @param node The center node
+	 * @param result The number of diametral paths
+	 */
+	public void setResult(int node, long result) {
+		this.center = node;
+		this.result = result;
+	}
+
+	/**
+	 * Starts waiting for SATURATE messages from every neighbour of the node
+	 *
+	 * @param node The node that woke up
+	 */
+	public void wakeUp(int node) {
+		int degree = this.topology.getDegree(node);
+		int remaining = 0;
+		for (int i = 0; i < degree; i++) {
+			remaining ^= i;
+		}
+		this.pending.put(node, degree);
+		this.remainingPorts.put(node, remaining);
+	}
+
+	/**
+	 * Removes the port from the list of neighbours NOT having sent a saturation message yet
+	 *
+	 * @param node The node receiving the SATURATE message
+	 * @param port The port through which the message arrived
+	 * @return the number of neighbours that still have not sent their SATURATE message
+	 */
+	public int removePending(int node, int port) {
+		this.remainingPorts.put(node, this.remainingPorts.get(node) ^ (port - this.topology.getFirstPort(node)));
+		int pending = this.pending.get(node) - 1;
+		this.pending.put(node, pending);
+		return pending;
+	}
+
+	/**
+	 * @param node A node from which a single neighbour has not sent SATURATE yet
+	 * @return the port of that last neighbour
+	 */
+	public int getLastPendingPort(int node) {
+		return this.topology.getFirstPort(node) + this.remainingPorts.get(node);
+	}
+
+	/**
+	 * Processes the eccentricity and number of potential diametral paths of a sub-tree
+	 * and updates the local values of the node.
+	 *
+	 * @param node The node receiving the information
+	 * @param port The port behind which the sub-tree is
+	 * @param subtreeEccentricity The eccentricity of the sub-tree
+	 * @param subtreeNumPaths The number of potential diametral paths of the sub-tree
+	 */
+	public void receiveEccentricityInfo(int node, int port, int subtreeEccentricity, long subtreeNumPaths) {
+		this.subtreeEccentricities.put(port, subtreeEccentricity);
+		this.subtreePaths.put(port, subtreeNumPaths);
+
+		// Update local eccentricity to the maximum of the two.
+		// If local eccentricity was smaller, then local number of
+		// diametral paths is reset to the number of paths received
+		int eccentricity = this.eccentricities.get(node);
+		if (eccentricity < subtreeEccentricity) {
+			this.eccentricities.put(node, subtreeEccentricity);
+			this.maxPorts.put(node, port);
+			this.numPaths.put(node, subtreeNumPaths);
+		} else if (eccentricity == subtreeEccentricity) {
+			this.numPaths.put(node, this.numPaths.get(node) + subtreeNumPaths);
+		}
+	}
+
+	/**
+	 * Checks if the node is a center node
+	 *
+	 * @param node The node to check
+	 * @return true if the node is central, false otherwise
+	 */
+	public boolean isCenter(int node) {
+		int first = this.topology.getFirstPort(node);
+		int degree = this.topology.getDegree(node);
+		int maxPort = this.maxPorts.get(node);
+		int maxValue = this.subtreeEccentricities.get(maxPort);
+		boolean isCenter = false;
+
+		// Make sure to iterate through all of the ports so that
+		// we know for sure whether it is a single or a double center
+		for (int port = first; port < first + degree; port++) {
+			int delta = maxValue - this.subtreeEccentricities.get(port);
+
+			// If the delta between the maximum eccentricity and the current port
+			// is <= 1, then we have a center node. If the node is a leaf, then it
+			// must be in a 2-node tree to have made it to this point
+			if ((port != maxPort || degree == 1) && delta <= 1) {
+				if (delta == 0) {
+					this.singleCenters.put(node, (byte)1);
+				}
+				isCenter = true;
+			}
+		}
+		return isCenter;
+	}
+
+	/**
+	 * Computes the eccentricity of the node in the context of the excluded port
+	 *
+	 * @param node The node whose eccentricity to compute
+	 * @param exclude The port to which this computed eccentricity will be sent
+	 * @return the eccentricity of the node in the context of exclude
+	 */
+	public int computeEccentricity(int node, int exclude) {
+		int first = this.topology.getFirstPort(node);
+		int last = first + this.topology.getDegree(node);
+		int eccentricity = 0;
+		for (int port = first; port < last; port++) {
+			if (port != exclude) {
+				eccentricity = Math.max(eccentricity, this.subtreeEccentricities.get(port));
+			}
+		}
+		return eccentricity;
+	}
+
+	/**
+	 * Computes the number of potential diametral paths of the node in the context
+	 * of the excluded port
+	 *
+	 * @param node The node whose number of paths to compute
+	 * @param exclude The port to which this computed number will be sent
+	 * @param eccentricity The eccentricity of the node in the context of exclude
+	 * @return the number of potential diametral paths of the node in the context of exclude
+	 */
+	public long computeNumPaths(int node, int exclude, int eccentricity) {
+		int first = this.topology.getFirstPort(node);
+		int last = first + this.topology.getDegree(node);
+		long numPaths = 0;
+		for (int port = first; port < last; port++) {
+			// Make sure to only add up the diametral paths of the ports that
+			// have the same eccentricity
+			if (port != exclude && this.subtreeEccentricities.get(port) == eccentricity) {
+				numPaths += this.subtreePaths.get(port);
+			}
+		}
+		return numPaths;
+	}
+
+	/**
+	 * Computes the number of diametral paths in the tree, once the node knows it is a center
+	 *
+	 * @param node The center node
+	 * @return the number of diametral paths in the tree
+	 */
+	public long computeDiametralPaths(int node) {
+		int first = this.topology.getFirstPort(node);
+		int last = first + this.topology.getDegree(node);
+		int maxValue = this.subtreeEccentricities.get(this.maxPorts.get(node));
+
+		if (this.singleCenters.get(node) != 0) {
+			// The number of paths is p1*(p2 + p3 + ...) + p2*(p3 + p4 + ...) + ... + pn-1 * pn
+			// where pi is a number of paths for a given sub-tree with maximum eccentricity
+			long sum = 0;
+			long sumOfSquares = 0;
+			for (int port = first; port < last; port++) {
+				if (this.subtreeEccentricities.get(port) == maxValue) {
+					long paths = this.subtreePaths.get(port);
+					sum += paths;
+					sumOfSquares += paths * paths;
+				}
+			}
+			return (sum * sum - sumOfSquares) / 2;
+		}
+
+		// Multiply the sums for the maximum and second maximum eccentricities together
+		long maxPathsSum = 0;
+		long nextMaxPathsSum = 0;
+		for (int port = first; port < last; port++) {
+			int delta = maxValue - this.subtreeEccentricities.get(port);
+			if (delta == 0) {
+				maxPathsSum += this.subtreePaths.get(port);
+			} else if (delta == 1) {
+				nextMaxPathsSum += this.subtreePaths.get(port);
+			}
+		}
+		return maxPathsSum * nextMaxPathsSum;
+	}
+}
@@ -0,0 +1,253 @@
+package csi4109.a3;
+
+import static csi4109.a3.NodeWrapper.ACTIVE;
+import static csi4109.a3.NodeWrapper.AVAILABLE;
+import static csi4109.a3.NodeWrapper.NOTIFIED;
+import static csi4109.a3.NodeWrapper.PROCESSING;
+import static csi4109.a3.NodeWrapper.SATURATED;
+
+import csi4109.a3.Message.MessageType;
+
+/**
+ * Transition table and handlers of the saturation algorithm. The table gives the action
+ * a node takes when it receives a message of some type in some state, so that a delivery
+ * is handled with a single lookup and a single flat switch on the action, instead of a
+ * switch on the state nesting one on the type. A message a node does not expect in its
+ * state maps to {@link #IGNORE}.
+ * <p>
+ * The actions only change the {@link ProtocolState}, so {@link NodeWrapper}, the
+ * {@link DeterministicSimulator} and the {@link BulkSimulator} all run the same handlers.
+ * What differs from one engine to the other, how messages travel and whether the run is
+ * displayed, goes through the {@link Engine} each of them passes in
+ */
+public final class ProtocolTransitions {
+
+	/**
+	 * What a node's actions need from the engine running it
+	 *
+	 * @param <E> The exception thrown by the engine when it must stop, if any
+	 */
+	interface Engine<E extends Exception> {
+
+		/**
+		 * Sends a message through a half-edge
+		 *
+		 * @param node The node sending the message
+		 * @param port The port of the node through which it leaves
+		 * @param type The ordinal of the {@link MessageType} of the message
+		 * @param firstValue The first value of the message, or 0 if it has none
+		 * @param secondValue The second value of the message, or 0 if it has none
+		 */
+		void send(int node, int port, int type, long firstValue, long secondValue) throws E;
+
+		/**
+		 * Tells that a node entered a state, which the {@link ProtocolState} already holds
+		 */
+		void stateChanged(int node, int state) throws E;
+
+		/**
+		 * Tells that a node received the eccentricity and number of paths of the sub-tree
+		 * behind one of its ports, which the {@link ProtocolState} already holds
+		 */
+		void subtreeReceived(int node, int port, int eccentricity, long numPaths) throws E;
+
+		/**
+		 * Tells that a node computed or was notified of the number of diametral paths
+		 */
+		void resultReceived(int node, long result) throws E;
+	}
+
+	// The actions a node may take on receiving a message
+	static final int IGNORE = 0;
+	static final int WAKE_UP = 1; // AVAILABLE, WAKE UP: spread the message, then become ACTIVE or PROCESSING
+	static final int COLLECT_SATURATE = 2; // ACTIVE, SATURATE: record the sub-tree, forward once all but one sent theirs
+	static final int BECOME_SATURATED = 3; // PROCESSING, SATURATE: become SATURATED and compare with the other one
+	static final int FORWARD_CHECK = 4; // PROCESSING, CHECK CENTER: record the sub-tree and check if center
+	static final int CHECK_CENTER = 5; // SATURATED, CHECK CENTER: check if center
+	static final int ELECT = 6; // SATURATED, COMPARE SATURATED: check if center if this node leads
+	static final int NOTIFY = 7; // PROCESSING or SATURATED, NOTIFICATION: become NOTIFIED and forward
+
+	private static final int TYPE_COUNT = MessageType.values().length;
+	private static final byte[] TABLE = new byte[(NOTIFIED + 1) * TYPE_COUNT]; // Action by state, then by type
+
+	static {
+		put(AVAILABLE, MessageType.WAKE_UP, WAKE_UP);
+		put(ACTIVE, MessageType.SATURATE, COLLECT_SATURATE);
+		put(PROCESSING, MessageType.SATURATE, BECOME_SATURATED);
+		put(PROCESSING, MessageType.CHECK_CENTER, FORWARD_CHECK);
+		put(PROCESSING, MessageType.NOTIFICATION, NOTIFY);
+		put(SATURATED, MessageType.CHECK_CENTER, CHECK_CENTER);
+		put(SATURATED, MessageType.COMPARE_SATURATED, ELECT);
+		put(SATURATED, MessageType.NOTIFICATION, NOTIFY);
+	}
+
+	private ProtocolTransitions() {
+	}
+
+	/**
+	 * Returns the action a node takes on receiving a message
+	 *
+	 * @param state The state of the node, as defined by {@link NodeWrapper}
+	 * @param type The ordinal of the {@link MessageType} of the message
+	 * @return the action, or {@link #IGNORE}
+	 */
+	static int action(int state, int type) {
+		return TABLE[state * TYPE_COUNT + type];
+	}
+
+	/**
+	 * Handles the delivery of a message with the action the table gives for the current
+	 * state of the receiving node. Messages the node does not expect in its state,
+	 * including any still in transit once it is NOTIFIED, are dropped
+	 *
+	 * @param state The state of the run
+	 * @param node The node receiving the message
+	 * @param port The port at which the message arrived, or -1 for a spontaneous WAKE UP
+	 * @param type The ordinal of the {@link MessageType} of the message
+	 * @param firstValue The first value of the message, or 0 if it has none
+	 * @param secondValue The second value of the message, or 0 if it has none
+	 * @param engine The engine running the node
+	 * @return false if the message was dropped or ignored
+	 */
+	static <E extends Exception> boolean deliver(ProtocolState state, int node, int port, int type, long firstValue,
+			long secondValue, Engine<E> engine) throws E {
+		switch (action(state.getState(node), type)) {
+			case WAKE_UP:
+				wakeUp(state, node, port, engine);
+				break;
+			case COLLECT_SATURATE:
+				receiveEccentricityInfo(state, node, port, (int)firstValue, secondValue, engine);
+
+				// If all neighbours but one have sent their SATURATE message,
+				// then forward to the last one, which becomes the parent
+				if (state.removePending(node, port) == 1) {
+					state.setParent(node, state.getLastPendingPort(node));
+					sendSaturateMessage(state, node, engine);
+				}
+				break;
+			case BECOME_SATURATED:
+				// One of the two saturated nodes: send its index to the other one to
+				// find out which takes charge
+				setState(state, node, SATURATED, engine);
+				receiveEccentricityInfo(state, node, port, (int)firstValue, secondValue, engine);
+				engine.send(node, port, MessageType.COMPARE_SATURATED.ordinal(), node, 0);
+				break;
+			case FORWARD_CHECK:
+				receiveEccentricityInfo(state, node, port, (int)firstValue, secondValue, engine);
+				executeCenterChecking(state, node, engine);
+				break;
+			case CHECK_CENTER:
+				executeCenterChecking(state, node, engine);
+				break;
+			case ELECT:
+				// The saturated node with the smallest index takes charge and checks if center
+				if (firstValue <= node) {
+					return false;
+				}
+				executeCenterChecking(state, node, engine);
+				break;
+			case NOTIFY:
+				// Some other node was center: be notified and forward to the other neighbours
+				setState(state, node, NOTIFIED, engine);
+				engine.resultReceived(node, firstValue);
+				sendToNeighbours(state, node, port, MessageType.NOTIFICATION.ordinal(), firstValue, engine);
+				break;
+			default:
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * An AVAILABLE node receiving a WAKE UP message, either spontaneously or from another
+	 * node, spreads the message to its other neighbours. If it is a leaf, it sends
+	 * SATURATE right away and goes to state PROCESSING, otherwise to ACTIVE. A node
+	 * without any neighbour is the whole tree: it is the center, of no diametral path
+	 */
+	private static <E extends Exception> void wakeUp(ProtocolState state, int node, int port, Engine<E> engine)
+			throws E {
+		TreeTopology topology = state.getTopology();
+		state.wakeUp(node);
+		sendToNeighbours(state, node, port, MessageType.WAKE_UP.ordinal(), 0, engine);
+
+		if (topology.getDegree(node) == 0) {
+			state.setResult(node, 0);
+			setState(state, node, NOTIFIED, engine);
+			engine.resultReceived(node, 0);
+		} else if (topology.getDegree(node) == 1) {
+			int parent = topology.getFirstPort(node);
+			state.setParent(node, parent);
+			state.setMaxPort(node, parent);
+			sendSaturateMessage(state, node, engine);
+		} else {
+			setState(state, node, ACTIVE, engine);
+		}
+	}
+
+	/**
+	 * Sends SATURATE, with the eccentricity and number of paths of the node, to its
+	 * parent. The node then enters PROCESSING
+	 */
+	private static <E extends Exception> void sendSaturateMessage(ProtocolState state, int node, Engine<E> engine)
+			throws E {
+		engine.send(node, state.getParent(node), MessageType.SATURATE.ordinal(), state.getEccentricity(node) + 1,
+				state.getNumPaths(node));
+		setState(state, node, PROCESSING, engine);
+	}
+
+	/**
+	 * Checks if the node is the center. If yes, computes the number of diametral paths and
+	 * notifies the others. If not, computes the eccentricity and number of paths of the
+	 * node as seen from the neighbour behind its maximum edge, and asks that one to check
+	 */
+	private static <E extends Exception> void executeCenterChecking(ProtocolState state, int node, Engine<E> engine)
+			throws E {
+		if (state.isCenter(node)) {
+			long result = state.computeDiametralPaths(node);
+			state.setResult(node, result);
+			setState(state, node, NOTIFIED, engine);
+			engine.resultReceived(node, result);
+			sendToNeighbours(state, node, -1, MessageType.NOTIFICATION.ordinal(), result, engine);
+		} else {
+			int maxPort = state.getMaxPort(node);
+			int eccentricity = state.computeEccentricity(node, maxPort);
+			long paths = state.computeNumPaths(node, maxPort, eccentricity);
+			engine.send(node, maxPort, MessageType.CHECK_CENTER.ordinal(), eccentricity + 1, paths);
+		}
+	}
+
+	/**
+	 * Records the eccentricity and number of paths of the sub-tree behind a port
+	 */
+	private static <E extends Exception> void receiveEccentricityInfo(ProtocolState state, int node, int port,
+			int eccentricity, long numPaths, Engine<E> engine) throws E {
+		state.receiveEccentricityInfo(node, port, eccentricity, numPaths);
+		engine.subtreeReceived(node, port, eccentricity, numPaths);
+	}
+
+	/**
+	 * Sends a message with at most one value to all the neighbours of the node except
+	 * the one behind the excluded port, or to all of them if the port is -1
+	 */
+	private static <E extends Exception> void sendToNeighbours(ProtocolState state, int node, int exclude, int type,
+			long value, Engine<E> engine) throws E {
+		TreeTopology topology = state.getTopology();
+		int first = topology.getFirstPort(node);
+		int last = first + topology.getDegree(node);
+		for (int port = first; port < last; port++) {
+			if (port != exclude) {
+				engine.send(node, port, type, value, 0);
+			}
+		}
+	}
+
+	private static <E extends Exception> void setState(ProtocolState state, int node, int newState, Engine<E> engine)
+			throws E {
+		state.setState(node, newState);
+		engine.stateChanged(node, newState);
+	}
+
+	private static void put(int state, MessageType type, int action) {
+		TABLE[state * TYPE_COUNT + type.ordinal()] = (byte)action;
+	}
+}
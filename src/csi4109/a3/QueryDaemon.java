@@ -0,0 +1,404 @@
+package csi4109.a3;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-running local service computing the number of diametral paths of the trees it is
+ * sent, with the {@link DeterministicSimulator}. It listens on a loopback port, or on a
+ * Unix domain socket, and keeps its JVM, and so its compiled code, warm between trees.
+ * For example:
+ *
+ * <pre>
+ * java csi4109.a3.QueryDaemon --port 4109 --workers 8 --delay Exponential
+ * java csi4109.a3.QueryDaemon --socket /tmp/csi4109.sock
+ * </pre>
+ *
+ * Options other than --port, --socket, --workers, --queue and --max-nodes are the
+ * transmission options of {@link HeadlessMain}, and apply to every tree. Clients send
+ * lines of text. A tree is a header line followed by one line per edge, the nodes being
+ * numbered from 0, and has at most --max-nodes nodes:
+ *
+ * <pre>
+ * TREE &lt;id&gt; &lt;nodes&gt; [seed]
+ * &lt;node&gt; &lt;node&gt;
+ * ...
+ * </pre>
+ *
+ * Trees run concurrently on a bounded pool of workers, and at most --queue trees wait for
+ * a worker. Once the queue is full, the daemon stops reading from a client until a tree
+ * is done. Results are streamed back as each tree finishes, so not necessarily in order:
+ *
+ * <pre>
+ * RESULT &lt;id&gt; paths &lt;paths&gt; center &lt;node&gt; messages &lt;count&gt; simulated &lt;ms&gt; wait &lt;us&gt; run &lt;us&gt;
+ * ERROR &lt;id&gt; &lt;reason&gt;
+ * </pre>
+ *
+ * where wait is the time the tree spent queued and run the time it took to simulate. A
+ * STATS line is answered with the latency figures of the daemon so far, and QUIT closes
+ * the connection once its trees are done
+ */
+public class QueryDaemon {
+
+	private static final int DEFAULT_PORT = 4109;
+	private static final int DEFAULT_QUEUE_SIZE = 256;
+	private static final int LATENCY_WINDOW = 1 << 14; // Number of recent latencies kept for the percentiles
+	private static final int DEFAULT_MAX_NODES = 1 << 20;
+	private static final int INITIAL_ENDS = 1 << 12; // Edge ends allocated for a tree before its edges arrive
+
+	private final ConfigurationData defaults; // Transmission parameters of every run
+	private final boolean initiatorsGiven; // Whether defaults.initiators was given, or one initiator runs each tree
+	private final int maxNodes; // Largest tree accepted
+	private final ExecutorService workers;
+	private final Semaphore slots; // One per tree queued or running. Readers wait for one before submitting a tree
+	private final LatencyStats stats = new LatencyStats();
+
+	/**
+	 * A client connection. Results are written by the workers, as the trees finish
+	 */
+	private static class Connection {
+		private final SocketChannel channel;
+		private int pending = 0; // Trees submitted and not answered yet
+
+		public Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Writes a line to the client. Lines from different workers are never interleaved
+		 */
+		public synchronized void write(String line) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer);
+			}
+		}
+
+		public synchronized void submitted() {
+			this.pending++;
+		}
+
+		public synchronized void answered() {
+			this.pending--;
+			this.notifyAll();
+		}
+
+		/**
+		 * Waits until every tree of the connection was answered
+		 */
+		public synchronized void awaitAnswers() throws InterruptedException {
+			while (this.pending > 0) {
+				this.wait();
+			}
+		}
+	}
+
+	/**
+	 * Latency figures of the trees answered so far. The percentiles are taken over the
+	 * most recent {@link #LATENCY_WINDOW} trees
+	 */
+	private static class LatencyStats {
+		private long count = 0;
+		private long totalWait = 0; // In nanoseconds
+		private long totalRun = 0; // In nanoseconds
+		private long maxLatency = 0; // In nanoseconds
+		private final long[] recent = new long[LATENCY_WINDOW]; // Latencies of the last trees, as a ring
+
+		public synchronized void record(long wait, long run) {
+			this.recent[(int)(this.count % LATENCY_WINDOW)] = wait + run;
+			this.count++;
+			this.totalWait += wait;
+			this.totalRun += run;
+			this.maxLatency = Math.max(this.maxLatency, wait + run);
+		}
+
+		@Override
+		public synchronized String toString() {
+			if (this.count == 0) {
+				return "STATS requests 0";
+			}
+			long[] sorted = Arrays.copyOf(this.recent, (int)Math.min(this.count, LATENCY_WINDOW));
+			Arrays.sort(sorted);
+			return String.format("STATS requests %d wait %d run %d p50 %d p99 %d max %d", this.count,
+					this.totalWait / this.count / 1000, this.totalRun / this.count / 1000,
+					sorted[(sorted.length - 1) / 2] / 1000, sorted[(sorted.length - 1) * 99 / 100] / 1000,
+					this.maxLatency / 1000);
+		}
+	}
+
+	/**
+	 * Constructs a {@link QueryDaemon} instance
+	 *
+	 * @param defaults The transmission parameters of every run
+	 * @param initiatorsGiven Whether the number of initiators of defaults applies, or a single
+	 * node initiates each run
+	 * @param numWorkers The number of trees simulated at once
+	 * @param queueSize The number of trees that may wait for a worker
+	 * @param maxNodes The largest number of nodes of a tree
+	 * @throws IllegalArgumentException if maxNodes is not between 1 and {@link Integer#MAX_VALUE} / 2
+	 */
+	public QueryDaemon(ConfigurationData defaults, boolean initiatorsGiven, int numWorkers, int queueSize,
+			int maxNodes) {
+		if (maxNodes < 1 || maxNodes > Integer.MAX_VALUE / 2) {
+			throw new IllegalArgumentException("--max-nodes must be between 1 and " + Integer.MAX_VALUE / 2);
+		}
+		this.defaults = defaults;
+		this.initiatorsGiven = initiatorsGiven;
+		this.maxNodes = maxNodes;
+		this.slots = new Semaphore(numWorkers + queueSize);
+		this.workers = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "query-worker-" + this.count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Accepts clients until the server is closed, each one served by its own thread
+	 *
+	 * @param server The bound server channel
+	 * @throws IOException
+	 */
+	public void serve(ServerSocketChannel server) throws IOException {
+		while (true) {
+			final SocketChannel channel = server.accept();
+			Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					QueryDaemon.this.handle(channel);
+				}
+			}, "query-client");
+			reader.setDaemon(true);
+			reader.start();
+		}
+	}
+
+	/**
+	 * Reads the requests of a client until it quits, closes the connection or sends a
+	 * request that cannot be read, then waits for its trees to be answered and closes the
+	 * connection
+	 */
+	private void handle(SocketChannel channel) {
+		Connection connection = new Connection(channel);
+		try {
+			BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.trim().split("\\s+");
+				if (fields[0].isEmpty()) {
+					continue;
+				} else if (fields[0].equals("QUIT")) {
+					break;
+				} else if (fields[0].equals("STATS")) {
+					connection.write(this.stats.toString());
+				} else if (fields[0].equals("TREE") && (fields.length == 3 || fields.length == 4)) {
+					if (!this.readTree(fields, in, connection)) {
+						break;
+					}
+				} else {
+					// The following lines cannot be told apart from the edges of a tree any more
+					connection.write(String.format("ERROR - Unknown request: %s", line));
+					break;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			// The trees already submitted are answered before the connection closes
+			try {
+				connection.awaitAnswers();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Reads the edges of a tree and submits it to the workers, once one of the slots is free
+	 *
+	 * @param header The fields of the TREE line
+	 * @param in The reader of the connection, positioned on the first edge
+	 * @param connection The connection to which to answer
+	 * @return false if the request could not be read, and the rest of the connection with it
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private boolean readTree(String[] header, BufferedReader in, final Connection connection)
+			throws IOException, InterruptedException {
+		final String id = header[1];
+		int numNodes;
+		final long seed;
+		try {
+			numNodes = Integer.parseInt(header[2]);
+			seed = header.length > 3 ? Long.parseLong(header[3]) : this.defaults.seed;
+		} catch (NumberFormatException e) {
+			connection.write(String.format("ERROR %s Malformed header", id));
+			return false;
+		}
+		if (numNodes < 1 || numNodes > this.maxNodes) {
+			connection.write(String.format("ERROR %s A tree has 1 to %d nodes, not %d", id, this.maxNodes, numNodes));
+			return false;
+		}
+
+		// The ends grow as the edges arrive, so a header alone never takes much memory
+		int numEnds = 2 * (numNodes - 1);
+		int[] ends = new int[Math.min(numEnds, INITIAL_ENDS)];
+		String error = null;
+		for (int i = 0; i < numEnds; i += 2) {
+			if (i == ends.length) {
+				ends = Arrays.copyOf(ends, (int)Math.min(numEnds, 2L * ends.length));
+			}
+			String line = in.readLine();
+			if (line == null) {
+				connection.write(String.format("ERROR %s Missing edges", id));
+				return false;
+			}
+			String[] fields = line.trim().split("\\s+");
+			try {
+				ends[i] = Integer.parseInt(fields[0]);
+				ends[i + 1] = Integer.parseInt(fields[1]);
+			} catch (RuntimeException e) {
+				error = String.format("Malformed edge: %s", line);
+			}
+		}
+
+		final TreeTopology topology;
+		try {
+			if (error != null) {
+				throw new IllegalArgumentException(error);
+			}
+			topology = TreeTopology.fromEdges(numNodes, ends);
+		} catch (IllegalArgumentException e) {
+			connection.write(String.format("ERROR %s %s", id, e.getMessage()));
+			return true;
+		}
+
+		this.slots.acquire();
+		connection.submitted();
+		final long queued = System.nanoTime();
+		this.workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					connection.write(QueryDaemon.this.simulate(id, topology, seed, queued));
+				} catch (IOException e) {
+					// The client went away. Its other trees are still answered, and fail the same way
+				} finally {
+					QueryDaemon.this.slots.release();
+					connection.answered();
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Runs the algorithm on a tree
+	 *
+	 * @return the line answering the tree
+	 */
+	private String simulate(String id, TreeTopology topology, long seed, long queued) {
+		long started = System.nanoTime();
+		try {
+			ConfigurationData data = new ConfigurationData(seed);
+			data.networkSize = topology.getNodeCount();
+			data.initiators = this.initiatorsGiven ? Math.min(this.defaults.initiators, data.networkSize) : 1;
+			data.maxInitiatorDelay = this.defaults.maxInitiatorDelay;
+			data.maxTransmissionDelay = this.defaults.maxTransmissionDelay;
+			data.delayType = this.defaults.delayType;
+			data.batchTransmissions = this.defaults.batchTransmissions;
+			data.deterministic = true;
+
+			DeterministicSimulator simulator = new DeterministicSimulator(topology, data, new SplittableRandom(seed));
+			simulator.run();
+			long finished = System.nanoTime();
+			this.stats.record(started - queued, finished - started);
+			return String.format("RESULT %s paths %d center %d messages %d simulated %d wait %d run %d", id,
+					simulator.getDiametralPaths(), simulator.getCenter(), simulator.getMessageCount(),
+					simulator.getSimulatedTime(), (started - queued) / 1000, (finished - started) / 1000);
+		} catch (RuntimeException e) {
+			return String.format("ERROR %s %s", id, e);
+		}
+	}
+
+	// Main function. This is the entry point of the query daemon
+	public static void main(String[] args) throws IOException {
+		String port = HeadlessMain.getOption(args, "--port");
+		String socket = HeadlessMain.getOption(args, "--socket");
+		String numWorkers = HeadlessMain.getOption(args, "--workers");
+		String queueSize = HeadlessMain.getOption(args, "--queue");
+		String maxNodes = HeadlessMain.getOption(args, "--max-nodes");
+
+		// The remaining options are those of the runs
+		List<String> runArgs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (Arrays.asList("--port", "--socket", "--workers", "--queue", "--max-nodes").contains(args[i])) {
+				i++;
+			} else {
+				runArgs.add(args[i]);
+			}
+		}
+		ConfigurationData defaults = HeadlessMain.parseArguments(runArgs.toArray(new String[runArgs.size()]));
+
+		QueryDaemon daemon = new QueryDaemon(defaults, HeadlessMain.getOption(args, "--initiators") != null,
+				numWorkers != null ? Integer.parseInt(numWorkers) : Runtime.getRuntime().availableProcessors(),
+				queueSize != null ? Integer.parseInt(queueSize) : DEFAULT_QUEUE_SIZE,
+				maxNodes != null ? Integer.parseInt(maxNodes) : DEFAULT_MAX_NODES);
+
+		ServerSocketChannel server;
+		if (socket != null) {
+			final File file = new File(socket);
+			if (file.exists()) {
+				throw new IOException(String.format("%s already exists. Remove it if no daemon is using it", socket));
+			}
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(file.toPath()));
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					file.delete();
+				}
+			});
+			System.out.println(String.format("Listening on %s", socket));
+		} else {
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+					port != null ? Integer.parseInt(port) : DEFAULT_PORT));
+			System.out.println(String.format("Listening on %s", server.getLocalAddress()));
+		}
+		daemon.serve(server);
+	}
+}
@@ -0,0 +1,153 @@
+package csi4109.a3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the {@link TreeMetrics} of the trees already seen, keyed by their
+ * {@link TreeFingerprint}. Parameter sweeps run the same tree shapes over and over, so
+ * the expected result of a run is usually found here instead of being computed again.
+ * The least recently used entry is dropped once the cache is full. A cache can be saved
+ * to a file and loaded again by the next sweep
+ */
+public class ResultCache {
+
+	private static final int MAGIC = 0x43534952; // "CSIR"
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Map<String, TreeMetrics> entries;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Constructs an empty {@link ResultCache} instance
+	 *
+	 * @param capacity The largest number of trees kept at once
+	 */
+	public ResultCache(final int capacity) {
+		// A map in access order, which drops its eldest entry once it grows past the capacity
+		this.entries = new LinkedHashMap<String, TreeMetrics>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, TreeMetrics> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the figures of a tree, from the cache if a tree of the same shape was seen
+	 * before, otherwise computed and added to the cache
+	 *
+	 * @param topology The tree
+	 * @return the figures of the tree
+	 */
+	public TreeMetrics lookup(TreeTopology topology) {
+		String fingerprint = TreeFingerprint.compute(topology);
+		TreeMetrics metrics = this.get(fingerprint);
+		if (metrics == null) {
+			metrics = TreeMetrics.compute(topology);
+			this.put(fingerprint, metrics);
+		}
+		return metrics;
+	}
+
+	/**
+	 * @param fingerprint The {@link TreeFingerprint} of a tree
+	 * @return the figures of the tree, or null if they are not in the cache
+	 */
+	public synchronized TreeMetrics get(String fingerprint) {
+		TreeMetrics metrics = this.entries.get(fingerprint);
+		if (metrics != null) {
+			this.hits++;
+		} else {
+			this.misses++;
+		}
+		return metrics;
+	}
+
+	/**
+	 * @param fingerprint The {@link TreeFingerprint} of a tree
+	 * @param metrics The figures of the tree
+	 */
+	public synchronized void put(String fingerprint, TreeMetrics metrics) {
+		this.entries.put(fingerprint, metrics);
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Writes every entry of the cache to a file, from the least to the most recently used
+	 *
+	 * @param file The file to which to write the cache
+	 * @throws IOException
+	 */
+	public synchronized void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.entries.size());
+			for (Map.Entry<String, TreeMetrics> entry : this.entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().getDiameter());
+				out.writeInt(entry.getValue().getCenterCount());
+				out.writeLong(entry.getValue().getDiametralPaths());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Adds the entries saved by {@link #save(File)} to the cache. A missing file is an
+	 * empty cache
+	 *
+	 * @param file The file from which to read the entries
+	 * @throws IOException if the file is not a result cache or could not be read
+	 */
+	public synchronized void load(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a result cache");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException(String.format("Unsupported result cache version %d", version));
+			}
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				String fingerprint = in.readUTF();
+				this.entries.put(fingerprint, new TreeMetrics(in.readInt(), in.readInt(), in.readLong()));
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package csi4109.a3;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the outcome of a run, node by node, from its {@link ProtocolState}: the final
+ * state, eccentricity and number of potential diametral paths of each node, the neighbours
+ * behind its parent and maximum edges, the eccentricity and number of paths received from
+ * the sub-tree behind each of its edges, and the number of diametral paths it was notified
+ * of. Nothing but the state is read, so the same writer serves every engine, and the
+ * records go through a single fixed buffer to a {@link FileChannel}, so that writing a
+ * run of any size takes constant memory.
+ * <p>
+ * The CSV format has a header line, then a line per node whose last column lists the
+ * sub-trees as neighbour:eccentricity:paths, separated by spaces. Neighbours that are
+ * missing are -1, and values that were never received are 0. The binary format is
+ * big-endian, like a {@link java.io.DataInput} reads it: a header of the magic number
+ * "CSIO", the version, the number of nodes, the number of edges, the center and the
+ * number of diametral paths it computed, then for each node its state as a byte, its
+ * eccentricity, number of paths, parent, maximum neighbour, result and degree, followed
+ * by the neighbour, eccentricity and number of paths of each sub-tree
+ */
+public class ResultWriter {
+
+	/**
+	 * The formats in which results can be written
+	 */
+	public enum Format {
+		Csv, Binary;
+	}
+
+	private static final int MAGIC = 0x4353494f; // "CSIO", unlike the result cache and the checkpoints
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_FIELD = 24; // Longest number, with its separator, in bytes
+	private static final byte[] HEADER = "node,state,eccentricity,paths,parent,max_neighbour,result,subtrees\n"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[][] STATE_NAMES = new byte[NodeWrapper.NOTIFIED + 1][];
+
+	static {
+		String[] names = { "NONE", "AVAILABLE", "ACTIVE", "PROCESSING", "SATURATED", "NOTIFIED" };
+		for (int state = 0; state < STATE_NAMES.length; state++) {
+			STATE_NAMES[state] = names[state].getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final byte[] digits = new byte[MAX_FIELD]; // Scratch space for writing a number in decimal
+	private long written = 0; // Number of bytes written to the channel
+
+	/**
+	 * Constructs a {@link ResultWriter} instance
+	 */
+	private ResultWriter(FileChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes the outcome of a run to a file, replacing it if it exists
+	 *
+	 * @param state The state of the nodes at the end of the run
+	 * @param file The file to which to write
+	 * @param format The format of the file
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public static long write(ProtocolState state, File file, Format format) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		try {
+			ResultWriter writer = new ResultWriter(channel);
+			if (format == Format.Csv) {
+				writer.writeCsv(state);
+			} else {
+				writer.writeBinary(state);
+			}
+			writer.flush();
+			return writer.written;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the header line, then a line per node
+	 */
+	private void writeCsv(ProtocolState state) throws IOException {
+		TreeTopology topology = state.getTopology();
+		this.buffer.put(HEADER);
+
+		for (int node = 0; node < topology.getNodeCount(); node++) {
+			this.reserve(7 * MAX_FIELD); // The longest state name fits in a field
+			this.putDecimal(node, ',');
+			this.buffer.put(STATE_NAMES[state.getState(node)]).put((byte)',');
+			this.putDecimal(state.getEccentricity(node), ',');
+			this.putDecimal(state.getNumPaths(node), ',');
+			this.putDecimal(this.getNeighbour(topology, state.getParent(node)), ',');
+			this.putDecimal(this.getNeighbour(topology, state.getMaxPort(node)), ',');
+			this.putDecimal(state.getResult(node), ',');
+
+			int firstPort = topology.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + topology.getDegree(node); port++) {
+				this.reserve(3 * MAX_FIELD);
+				if (port > firstPort) {
+					this.buffer.put((byte)' ');
+				}
+				this.putDecimal(topology.getTarget(port), ':');
+				this.putDecimal(state.getSubtreeEccentricity(port), ':');
+				this.putDecimal(state.getSubtreePaths(port), (byte)0);
+			}
+			this.reserve(1);
+			this.buffer.put((byte)'\n');
+		}
+	}
+
+	/**
+	 * Writes the header, then a record per node
+	 */
+	private void writeBinary(ProtocolState state) throws IOException {
+		TreeTopology topology = state.getTopology();
+		this.buffer.putInt(MAGIC);
+		this.buffer.putInt(VERSION);
+		this.buffer.putInt(topology.getNodeCount());
+		this.buffer.putInt(topology.getEdgeCount());
+		this.buffer.putInt(state.getCenter());
+		this.buffer.putLong(state.getResult());
+
+		for (int node = 0; node < topology.getNodeCount(); node++) {
+			this.reserve(41);
+			this.buffer.put((byte)state.getState(node));
+			this.buffer.putInt(state.getEccentricity(node));
+			this.buffer.putLong(state.getNumPaths(node));
+			this.buffer.putInt(this.getNeighbour(topology, state.getParent(node)));
+			this.buffer.putInt(this.getNeighbour(topology, state.getMaxPort(node)));
+			this.buffer.putLong(state.getResult(node));
+			this.buffer.putInt(topology.getDegree(node));
+
+			int firstPort = topology.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + topology.getDegree(node); port++) {
+				this.reserve(16);
+				this.buffer.putInt(topology.getTarget(port));
+				this.buffer.putInt(state.getSubtreeEccentricity(port));
+				this.buffer.putLong(state.getSubtreePaths(port));
+			}
+		}
+	}
+
+	/**
+	 * Returns the neighbour behind a port, or -1 if there is no port
+	 */
+	private int getNeighbour(TreeTopology topology, int port) {
+		return port >= 0 ? topology.getTarget(port) : -1;
+	}
+
+	/**
+	 * Writes a number in decimal, followed by a separator unless it is 0
+	 */
+	private void putDecimal(long value, int separator) {
+		// Work on the negative value, which also holds Long.MIN_VALUE
+		long remaining = value < 0 ? value : -value;
+		int position = this.digits.length;
+		do {
+			this.digits[--position] = (byte)('0' - remaining % 10);
+			remaining /= 10;
+		} while (remaining != 0);
+		if (value < 0) {
+			this.digits[--position] = '-';
+		}
+
+		this.buffer.put(this.digits, position, this.digits.length - position);
+		if (separator != 0) {
+			this.buffer.put((byte)separator);
+		}
+	}
+
+	/**
+	 * Makes sure the buffer has room for the given number of bytes, writing it to the
+	 * channel if it has not
+	 */
+	private void reserve(int size) throws IOException {
+		if (this.buffer.remaining() < size) {
+			this.flush();
+		}
+	}
+
+	/**
+	 * Writes the content of the buffer to the channel
+	 */
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.written += this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+}
@@ -0,0 +1,129 @@
+package csi4109.a3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import csi4109.a3.ConfigurationData.DelayType;
+import csi4109.a3.ConfigurationData.StateStorage;
+import csi4109.a3.ConfigurationData.TreeType;
+
+/**
+ * Saves a run of the {@link DeterministicSimulator} to a file and restores it. A
+ * checkpoint holds the parameters of the run, the tree, the state of every node and
+ * port, the messages in transit, the generators of the edges and the simulated clock,
+ * all as compressed binary data. A restored run delivers the same messages at the
+ * same times as the original would have, and gets the same fingerprint
+ */
+public class SimulationCheckpoint {
+
+	private static final int MAGIC = 0x43534943; // "CSIC"
+	private static final int VERSION = 2;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Writes a checkpoint of the run. It must be called between two deliveries,
+	 * from the thread running the simulator
+	 *
+	 * @param simulator The run to save
+	 * @param file The file to which to write the checkpoint
+	 * @throws IOException
+	 */
+	public static void save(DeterministicSimulator simulator, File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE) {
+					{
+						// Checkpoints of large runs are big, so favour speed over size
+						this.def.setLevel(Deflater.BEST_SPEED);
+					}
+				}, BUFFER_SIZE));
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeConfiguration(simulator.getConfiguration(), out);
+			simulator.write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a checkpoint written by {@link #save(DeterministicSimulator, File)}, with the
+	 * state of the nodes on the heap
+	 *
+	 * @param file The file from which to read the checkpoint
+	 * @return the restored run, ready to continue
+	 * @throws IOException if the file is not a checkpoint or could not be read
+	 */
+	public static DeterministicSimulator load(File file) throws IOException {
+		return load(file, StateStorage.Heap);
+	}
+
+	/**
+	 * Reads a checkpoint written by {@link #save(DeterministicSimulator, File)}. Where the
+	 * state of the nodes is kept is up to the host restoring the run
+	 *
+	 * @param file The file from which to read the checkpoint
+	 * @param storage Where to keep the state of the nodes
+	 * @return the restored run, ready to continue
+	 * @throws IOException if the file is not a checkpoint or could not be read
+	 */
+	public static DeterministicSimulator load(File file, StateStorage storage) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a simulation checkpoint");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException(String.format("Unsupported checkpoint version %d", version));
+			}
+			ConfigurationData data = readConfiguration(in);
+			data.stateStorage = storage;
+			return new DeterministicSimulator(data, in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the parameters of the run
+	 */
+	private static void writeConfiguration(ConfigurationData data, DataOutputStream out) throws IOException {
+		out.writeLong(data.seed);
+		out.writeInt(data.networkSize);
+		out.writeInt(data.initiators);
+		out.writeInt(data.maxInitiatorDelay);
+		out.writeInt(data.maxTransmissionDelay);
+		out.writeUTF(data.delayType.name());
+		out.writeUTF(data.treeType.name());
+		out.writeBoolean(data.batchTransmissions);
+	}
+
+	/**
+	 * Reads the parameters written by {@link #writeConfiguration(ConfigurationData, DataOutputStream)}
+	 */
+	private static ConfigurationData readConfiguration(DataInputStream in) throws IOException {
+		ConfigurationData data = new ConfigurationData(in.readLong());
+		data.networkSize = in.readInt();
+		data.initiators = in.readInt();
+		data.maxInitiatorDelay = in.readInt();
+		data.maxTransmissionDelay = in.readInt();
+		data.delayType = DelayType.valueOf(in.readUTF());
+		data.treeType = TreeType.valueOf(in.readUTF());
+		data.batchTransmissions = in.readBoolean();
+		data.deterministic = true;
+		return data;
+	}
+}
@@ -0,0 +1,316 @@
+package csi4109.a3;
+
+import static csi4109.a3.Message.MessageType.TERMINATE_EDGE;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.ui.spriteManager.SpriteManager;
+
+import csi4109.a3.ConfigurationData.Transport;
+import csi4109.a3.Message.MessageType;
+
+/**
+ * Everything that belongs to a single execution of the threaded engine: its parameters,
+ * its {@link NodeWrapper}s and {@link EdgeWrapper}s, the {@link ProtocolState} of its
+ * nodes and the {@link SimulationControl} and {@link SimulationMonitor} that pace and
+ * watch it. The {@link Graph} and its {@link TreeTopology} are only read, so any number
+ * of contexts can run at the same time on the same tree, each with its own initiators,
+ * seed or delays. Only a displayed context writes to the {@link Graph}, to animate the
+ * run, so at most one context per {@link Graph} should be displayed
+ */
+public class SimulationContext {
+
+	private static final int PAUSE_CHECK_PERIOD = 50; // How often a paused wake up is tried again, in milliseconds
+
+	private final Graph graph;
+	private final TreeTopology topology;
+	private final ConfigurationData data;
+	private final SpriteManager manager; // Manager for animated sprites, or null if the run is not displayed
+	private final DelayModel delayModel;
+	private final ProtocolState state;
+	private final SimulationControl control;
+	private final SimulationMonitor monitor;
+	private final MessageRing ring; // Carries the messages over the edges, or null if they travel in envelopes
+
+	// Maps for linking org.graphstream.graph.Node and org.graphstream.graph.Edge
+	// instances to the wrappers of this run
+	private final Map<Node, NodeWrapper> nodeWrapperMap;
+	private final Map<Edge, EdgeWrapper> edgeWrapperMap;
+
+	// Semaphore used to limit concurrent access to the graph. Unfortunately,
+	// GraphStream doesn't handle concurrency very well
+	private final Semaphore graphSemaphore = new Semaphore(1);
+	private final AtomicInteger nextSpriteId = new AtomicInteger();
+
+	// Count down as the nodes are notified and as the edges terminate
+	private final CountDownLatch nodesFinished;
+	private final CountDownLatch edgesTerminated;
+
+	/**
+	 * Constructs a {@link SimulationContext} instance that animates its run on the {@link Graph}
+	 *
+	 * @param graph The tree on which to run the algorithm
+	 * @param topology The topology of the tree, shared by every run on it
+	 * @param data The parameters of the run
+	 * @param manager The {@link SpriteManager} used to animate the messages
+	 */
+	public SimulationContext(Graph graph, TreeTopology topology, ConfigurationData data, SpriteManager manager) {
+		this(graph, topology, data, manager, new ProtocolState(topology), null);
+	}
+
+	/**
+	 * Constructs a {@link SimulationContext} instance for another run on the tree of a
+	 * finished one, displayed if the finished run was. The {@link ProtocolState} and the
+	 * {@link MessageRing} of the finished run are reset and reused rather than allocated
+	 * again, so the finished context must not be used anymore
+	 *
+	 * @param previous A context whose run has ended, as returned by {@link #waitForEnd()}
+	 * @param data The parameters of the new run
+	 */
+	public SimulationContext(SimulationContext previous, ConfigurationData data) {
+		this(previous.graph, previous.topology, data, previous.manager, previous.state, previous.ring);
+		this.state.reset();
+		if (this.ring == previous.ring && this.ring != null) {
+			this.ring.reset();
+		}
+	}
+
+	/**
+	 * Constructs a {@link SimulationContext} instance around the given state, and around
+	 * the given ring if the run carries its messages in one
+	 */
+	private SimulationContext(Graph graph, TreeTopology topology, ConfigurationData data, SpriteManager manager,
+			ProtocolState state, MessageRing ring) {
+		this.graph = graph;
+		this.topology = topology;
+		this.data = data;
+		this.manager = manager;
+		this.delayModel = data.delayType.createModel(data.maxTransmissionDelay);
+		this.state = state;
+		this.control = new SimulationControl();
+		this.monitor = new SimulationMonitor(this.control);
+		if (data.transport != Transport.Ring) {
+			this.ring = null;
+		} else {
+			this.ring = ring != null ? ring : new MessageRing(topology);
+		}
+		this.nodeWrapperMap = new HashMap<Node, NodeWrapper>(2 * topology.getNodeCount());
+		this.edgeWrapperMap = new HashMap<Edge, EdgeWrapper>(2 * topology.getEdgeCount());
+		this.nodesFinished = new CountDownLatch(topology.getNodeCount());
+		this.edgesTerminated = new CountDownLatch(topology.getEdgeCount());
+	}
+
+	/**
+	 * Constructs a {@link SimulationContext} instance whose run is not displayed and
+	 * leaves the {@link Graph} untouched
+	 *
+	 * @param graph The tree on which to run the algorithm
+	 * @param topology The topology of the tree, shared by every run on it
+	 * @param data The parameters of the run
+	 */
+	public SimulationContext(Graph graph, TreeTopology topology, ConfigurationData data) {
+		this(graph, topology, data, null);
+	}
+
+	/**
+	 * Wraps every node and edge and begins the algorithm. The generator of the run is
+	 * used, in order, to select the initiators, to seed each edge and to draw the delays
+	 * of the initiators, just like the {@link DeterministicSimulator} does
+	 *
+	 * @param random The generator of the run, positioned after the generation of the tree
+	 * @throws InterruptedException
+	 */
+	public void start(SplittableRandom random) throws InterruptedException {
+		List<NodeWrapper> initiators = this.initNodes(random);
+		this.initEdges(random);
+		this.monitor.startRun(this.state, Collections.unmodifiableCollection(this.nodeWrapperMap.values()),
+				Collections.unmodifiableCollection(this.edgeWrapperMap.values()));
+
+		// For each initiator schedule a wake up with a random delay.
+		// Once the delay has passed, activate the node, or try again later if paused
+		for (final NodeWrapper initiator : initiators) {
+			int delay = this.data.maxInitiatorDelay > 0 ? random.nextInt(this.data.maxInitiatorDelay) : 0;
+			Actor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (SimulationContext.this.control.isPaused()) {
+						Actor.schedule(this, PAUSE_CHECK_PERIOD);
+					} else {
+						try {
+							initiator.sendMessage(new Envelope(new Message(MessageType.WAKE_UP)));
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+			}, delay);
+		}
+	}
+
+	/**
+	 * Waits for the algorithm to terminate, then stops the edges
+	 *
+	 * @throws InterruptedException
+	 */
+	public void waitForEnd() throws InterruptedException {
+		this.nodesFinished.await();
+
+		for (EdgeWrapper edge : this.edgeWrapperMap.values()) {
+			edge.sendMessage(new Message(TERMINATE_EDGE), null);
+		}
+		this.edgesTerminated.await();
+	}
+
+	/**
+	 * Called by a {@link NodeWrapper} once it is notified of the result
+	 */
+	public void nodeFinished() {
+		this.nodesFinished.countDown();
+	}
+
+	/**
+	 * Called by an {@link EdgeWrapper} once it has handled its TERMINATE EDGE message
+	 */
+	public void edgeTerminated() {
+		this.edgesTerminated.countDown();
+	}
+
+	public Graph getGraph() {
+		return this.graph;
+	}
+
+	public TreeTopology getTopology() {
+		return this.topology;
+	}
+
+	public ConfigurationData getConfiguration() {
+		return this.data;
+	}
+
+	public ProtocolState getState() {
+		return this.state;
+	}
+
+	public SimulationControl getControl() {
+		return this.control;
+	}
+
+	public SimulationMonitor getMonitor() {
+		return this.monitor;
+	}
+
+	/**
+	 * @return the ring that carries the messages over the edges, or null if the messages
+	 * travel in {@link Envelope}s
+	 */
+	public MessageRing getMessageRing() {
+		return this.ring;
+	}
+
+	public SpriteManager getSpriteManager() {
+		return this.manager;
+	}
+
+	public DelayModel getDelayModel() {
+		return this.delayModel;
+	}
+
+	public Semaphore getGraphSemaphore() {
+		return this.graphSemaphore;
+	}
+
+	/**
+	 * @return true if this run animates itself on the {@link Graph}
+	 */
+	public boolean isDisplayed() {
+		return this.manager != null;
+	}
+
+	/**
+	 * @return a sprite number that no other sprite of this run uses
+	 */
+	public int nextSpriteId() {
+		return this.nextSpriteId.getAndIncrement();
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return the wrapper of the node in this run
+	 */
+	public NodeWrapper getNodeWrapper(Node node) {
+		return this.nodeWrapperMap.get(node);
+	}
+
+	/**
+	 * @param edge An edge of the tree
+	 * @return the wrapper of the edge in this run
+	 */
+	public EdgeWrapper getEdgeWrapper(Edge edge) {
+		return this.edgeWrapperMap.get(edge);
+	}
+
+	/**
+	 * @return the number of diametral paths computed by the center, or -1 if none was found yet
+	 */
+	public long getDiametralPaths() {
+		return this.state.getResult();
+	}
+
+	/**
+	 * Initializes the {@link Node}s of the {@link Graph} by wrapping them in a {@link NodeWrapper}
+	 *
+	 * @param random The generator of the run, used to pick the initiators
+	 * @return a list of initiator nodes that should be spontaneously activated
+	 * @throws InterruptedException
+	 */
+	private List<NodeWrapper> initNodes(SplittableRandom random) throws InterruptedException {
+		List<NodeWrapper> initiators = new LinkedList<NodeWrapper>();
+		List<NodeWrapper> wrappers = new LinkedList<NodeWrapper>();
+		Iterator<Node> nodes = this.graph.getNodeIterator();
+
+		// Wrap every node and add it to the node wrapper map. The nodes
+		// only start once every wrapper is in the map
+		while (nodes.hasNext()) {
+			Node node = nodes.next();
+			NodeWrapper wrapper = new NodeWrapper(node, this);
+			this.nodeWrapperMap.put(node, wrapper);
+			wrappers.add(wrapper);
+		}
+		for (NodeWrapper wrapper : wrappers) {
+			wrapper.start();
+		}
+
+		// Pick the initiators at random, in the same way as the deterministic engine
+		for (int index : InitiatorSelection.select(this.graph.getNodeCount(), this.data.initiators, random)) {
+			initiators.add(this.nodeWrapperMap.get(this.graph.getNode(index)));
+		}
+
+		return initiators;
+	}
+
+	/**
+	 * Initializes the {@link Edge}s of the {@link Graph} by wrapping them in an {@link EdgeWrapper}
+	 *
+	 * @param random The generator of the run, from which each edge takes its seed
+	 */
+	private void initEdges(SplittableRandom random) {
+		Iterator<Edge> edges = this.graph.getEdgeIterator();
+
+		while (edges.hasNext()) {
+			Edge edge = edges.next();
+			this.edgeWrapperMap.put(edge, new EdgeWrapper(edge, this, random.nextLong()));
+		}
+	}
+}
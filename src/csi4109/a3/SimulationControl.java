@@ -0,0 +1,107 @@
+package csi4109.a3;
+
+/**
+ * Lets a running simulation be paused, resumed or sped up. The {@link EdgeWrapper}s
+ * check this object before every step of their transmissions and scale each step with
+ * it, so pausing it holds every message where it is and changing the speed scales
+ * every delay. It also keeps the simulated clock, which only advances while the
+ * simulation is running
+ */
+public class SimulationControl {
+
+	private static final double MIN_SPEED = 0.01;
+	private static final double MAX_SPEED = 100.0;
+
+	private volatile boolean paused = false; // Read without locking by the simulators
+	private double speed = 1.0; // Simulated milliseconds per real millisecond
+	private double simulatedTime = 0; // In simulated milliseconds, as of lastUpdate
+	private long lastUpdate = System.nanoTime();
+
+	/**
+	 * Stops every transmission at its next step, until {@link #resume()} is called
+	 */
+	public synchronized void pause() {
+		this.advanceClock();
+		this.paused = true;
+	}
+
+	/**
+	 * Lets the transmissions continue after a {@link #pause()}
+	 */
+	public synchronized void resume() {
+		this.advanceClock();
+		this.paused = false;
+		this.notifyAll();
+	}
+
+	public boolean isPaused() {
+		return this.paused;
+	}
+
+	public synchronized double getSpeed() {
+		return this.speed;
+	}
+
+	/**
+	 * Changes the rate at which simulated time passes. A speed of 2 makes every
+	 * delay last half as long
+	 *
+	 * @param speed The number of simulated milliseconds per real millisecond
+	 */
+	public synchronized void setSpeed(double speed) {
+		if (Double.isNaN(speed) || speed < MIN_SPEED || speed > MAX_SPEED) {
+			throw new IllegalArgumentException(String.format("Speed must be between %s and %s",
+					MIN_SPEED, MAX_SPEED));
+		}
+		this.advanceClock();
+		this.speed = speed;
+	}
+
+	/**
+	 * Restarts the simulated clock at 0, for a new run
+	 */
+	public synchronized void reset() {
+		this.simulatedTime = 0;
+		this.lastUpdate = System.nanoTime();
+	}
+
+	/**
+	 * @return the simulated time since the last {@link #reset()}, in milliseconds
+	 */
+	public synchronized long getSimulatedTime() {
+		this.advanceClock();
+		return (long)this.simulatedTime;
+	}
+
+	/**
+	 * Blocks the calling thread while the simulation is paused
+	 *
+	 * @throws InterruptedException
+	 */
+	public synchronized void awaitRunning() throws InterruptedException {
+		while (this.paused) {
+			this.wait();
+		}
+	}
+
+	/**
+	 * Converts an amount of simulated time into the real time it lasts at the current speed
+	 *
+	 * @param duration The simulated time, in milliseconds
+	 * @return the real time, in milliseconds, never less than 1
+	 */
+	public synchronized long scale(long duration) {
+		return Math.max(1, Math.round(duration / this.speed));
+	}
+
+	/**
+	 * Adds the real time elapsed since the last update to the simulated clock
+	 */
+	private void advanceClock() {
+		long now = System.nanoTime();
+		if (!this.paused) {
+			this.simulatedTime += (now - this.lastUpdate) / 1e6 * this.speed;
+		}
+		this.lastUpdate = now;
+	}
+}
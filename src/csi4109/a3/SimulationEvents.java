@@ -0,0 +1,241 @@
+package csi4109.a3;
+
+import java.util.concurrent.Semaphore;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import csi4109.a3.Message.MessageType;
+
+/**
+ * JDK Flight Recorder events of the simulators, for profiling a run with the standard
+ * JFR tools. For example:
+ *
+ * <pre>
+ * java -XX:StartFlightRecording=filename=run.jfr csi4109.a3.HeadlessMain --size 1000000
+ * jfr print --events csi4109.a3.MessageDelivered run.jfr
+ * </pre>
+ *
+ * Nodes and edges are identified by their index in the {@link TreeTopology}, or -1. An
+ * event is only filled in once {@link Event#shouldCommit()} says it is recorded, so the
+ * events cost next to nothing while no recording is running
+ */
+public final class SimulationEvents {
+
+	private static final String CATEGORY = "CSI4109 Simulator";
+	private static final String[] STATE_NAMES = { "NONE", "AVAILABLE", "ACTIVE", "PROCESSING", "SATURATED", "NOTIFIED" };
+
+	@Name("csi4109.a3.MessageSent")
+	@Label("Message Sent")
+	@Category({ CATEGORY, "Transport" })
+	@Description("A node handed a message to an edge. The duration is the time spent waiting for room in the mailbox")
+	@StackTrace(false)
+	static final class MessageSent extends Event {
+		@Label("Message Type")
+		String messageType;
+		@Label("Node")
+		int node;
+		@Label("Edge")
+		int edge;
+	}
+
+	@Name("csi4109.a3.MessageDelivered")
+	@Label("Message Delivered")
+	@Category({ CATEGORY, "Transport" })
+	@Description("An edge delivered a message to a node")
+	@StackTrace(false)
+	static final class MessageDelivered extends Event {
+		@Label("Message Type")
+		String messageType;
+		@Label("Node")
+		int node;
+		@Label("Edge")
+		int edge;
+	}
+
+	@Name("csi4109.a3.Transmission")
+	@Label("Transmission")
+	@Category({ CATEGORY, "Transport" })
+	@Description("An edge of the threaded engine transmitted a message or a batch, from its first step to its delivery")
+	@StackTrace(false)
+	static final class Transmission extends Event {
+		@Label("Edge")
+		int edge;
+		@Label("Messages")
+		int messages;
+		@Label("Bytes")
+		int bytes;
+	}
+
+	@Name("csi4109.a3.StateTransition")
+	@Label("State Transition")
+	@Category({ CATEGORY, "Protocol" })
+	@Description("A node moved to another state of the saturation algorithm")
+	@StackTrace(false)
+	static final class StateTransition extends Event {
+		@Label("Node")
+		int node;
+		@Label("From")
+		String from;
+		@Label("To")
+		String to;
+	}
+
+	@Name("csi4109.a3.GraphLockWait")
+	@Label("Graph Lock Wait")
+	@Category({ CATEGORY, "Display" })
+	@Description("A node or an edge waited for the semaphore guarding the displayed graph")
+	static final class GraphLockWait extends Event {
+		@Label("Node")
+		int node;
+		@Label("Edge")
+		int edge;
+	}
+
+	@Name("csi4109.a3.GraphUpdate")
+	@Label("Graph Update")
+	@Category({ CATEGORY, "Display" })
+	@Description("A node or an edge wrote attributes or sprites of the displayed graph")
+	@StackTrace(false)
+	static final class GraphUpdate extends Event {
+		@Label("Node")
+		int node;
+		@Label("Edge")
+		int edge;
+		@Label("Attribute")
+		String attribute;
+	}
+
+	private SimulationEvents() {
+	}
+
+	/**
+	 * Starts timing a message handed to an edge
+	 *
+	 * @return the event to pass to {@link #endMessageSent(MessageSent, MessageType, int, int)}
+	 */
+	static MessageSent beginMessageSent() {
+		MessageSent event = new MessageSent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Records a message handed to an edge
+	 *
+	 * @param event The event returned by {@link #beginMessageSent()}
+	 * @param type The type of the message
+	 * @param node The sending node
+	 * @param edge The edge carrying the message
+	 */
+	static void endMessageSent(MessageSent event, MessageType type, int node, int edge) {
+		if (event.shouldCommit()) {
+			event.messageType = type.name();
+			event.node = node;
+			event.edge = edge;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records a message sent in no time, as the {@link DeterministicSimulator} does
+	 *
+	 * @param type The type of the message
+	 * @param node The sending node
+	 * @param edge The edge carrying the message
+	 */
+	static void messageSent(MessageType type, int node, int edge) {
+		MessageSent event = new MessageSent();
+		if (event.shouldCommit()) {
+			event.messageType = type.name();
+			event.node = node;
+			event.edge = edge;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records a message delivered to a node
+	 *
+	 * @param type The type of the message
+	 * @param node The receiving node
+	 * @param edge The edge that carried the message, or -1
+	 */
+	static void messageDelivered(MessageType type, int node, int edge) {
+		MessageDelivered event = new MessageDelivered();
+		if (event.shouldCommit()) {
+			event.messageType = type.name();
+			event.node = node;
+			event.edge = edge;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records a node changing state
+	 *
+	 * @param node The node
+	 * @param from The previous state
+	 * @param to The new state
+	 */
+	static void stateTransition(int node, int from, int to) {
+		StateTransition event = new StateTransition();
+		if (event.shouldCommit()) {
+			event.node = node;
+			event.from = STATE_NAMES[from];
+			event.to = STATE_NAMES[to];
+			event.commit();
+		}
+	}
+
+	/**
+	 * Acquires the semaphore guarding the graph, recording how long it took
+	 *
+	 * @param semaphore The semaphore guarding the graph
+	 * @param node The node waiting for the graph, or -1
+	 * @param edge The edge waiting for the graph, or -1
+	 * @throws InterruptedException
+	 */
+	static void acquireGraph(Semaphore semaphore, int node, int edge) throws InterruptedException {
+		GraphLockWait event = new GraphLockWait();
+		event.begin();
+		semaphore.acquire();
+		if (event.shouldCommit()) {
+			event.node = node;
+			event.edge = edge;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Starts timing an update of the displayed graph
+	 *
+	 * @return the event to pass to {@link #endGraphUpdate(GraphUpdate, int, int, String)}
+	 */
+	static GraphUpdate beginGraphUpdate() {
+		GraphUpdate event = new GraphUpdate();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Records an update of the displayed graph
+	 *
+	 * @param event The event returned by {@link #beginGraphUpdate()}
+	 * @param node The node that updated the graph, or -1
+	 * @param edge The edge that updated the graph, or -1
+	 * @param attribute What was updated
+	 */
+	static void endGraphUpdate(GraphUpdate event, int node, int edge, String attribute) {
+		if (event.shouldCommit()) {
+			event.node = node;
+			event.edge = edge;
+			event.attribute = attribute;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package csi4109.a3;
+
+import static csi4109.a3.NodeWrapper.ACTIVE;
+import static csi4109.a3.NodeWrapper.AVAILABLE;
+import static csi4109.a3.NodeWrapper.NOTIFIED;
+import static csi4109.a3.NodeWrapper.PROCESSING;
+import static csi4109.a3.NodeWrapper.SATURATED;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import csi4109.a3.Message.MessageType;
+
+/**
+ * Live view of the current run, published over JMX so that any local console (for
+ * example jconsole) can watch it. The {@link EdgeWrapper}s only bump a counter when
+ * they accept or deliver a message; everything else, like the number of nodes in each
+ * state or how often the mailboxes of the edges pushed back, is read from the
+ * {@link ProtocolState} and the mailboxes when asked for. A run
+ * of the {@link DeterministicSimulator} can be watched as well, in which case the
+ * figures come from the simulator itself
+ */
+public class SimulationMonitor implements SimulationMonitorMBean {
+
+	public static final String OBJECT_NAME = "csi4109.a3:type=SimulationMonitor";
+
+	private static final int MESSAGE_TYPES = MessageType.values().length;
+
+	private final SimulationControl control;
+
+	// Sources of the figures of the current run
+	private volatile ProtocolState state;
+	private volatile Collection<NodeWrapper> nodes = Collections.emptyList();
+	private volatile Collection<EdgeWrapper> edges = Collections.emptyList();
+	private volatile DeterministicSimulator simulator;
+
+	// Counters of the threaded engine
+	private final AtomicLongArray inFlight = new AtomicLongArray(MESSAGE_TYPES);
+	private final AtomicLong delivered = new AtomicLong();
+
+	// Previous reading of the throughput
+	private long lastSampleTime = System.nanoTime();
+	private long lastSampleCount = 0;
+
+	/**
+	 * Constructs a {@link SimulationMonitor} instance
+	 *
+	 * @param control The {@link SimulationControl} used to pause, resume and change the speed of the runs
+	 */
+	public SimulationMonitor(SimulationControl control) {
+		this.control = control;
+	}
+
+	public SimulationControl getControl() {
+		return this.control;
+	}
+
+	/**
+	 * Registers this monitor with the platform MBean server under {@link #OBJECT_NAME}
+	 *
+	 * @throws JMException if the monitor could not be registered
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(this, name);
+	}
+
+	/**
+	 * Starts watching a run of the threaded engine. The counters and the simulated
+	 * clock start again from 0
+	 *
+	 * @param state The {@link ProtocolState} of the nodes
+	 * @param nodes The {@link NodeWrapper}s of the run
+	 * @param edges The {@link EdgeWrapper}s of the run
+	 */
+	public void startRun(ProtocolState state, Collection<NodeWrapper> nodes, Collection<EdgeWrapper> edges) {
+		this.simulator = null;
+		this.resetCounters();
+		this.state = state;
+		this.nodes = nodes;
+		this.edges = edges;
+		this.control.reset();
+	}
+
+	/**
+	 * Starts watching a run of the {@link DeterministicSimulator}
+	 *
+	 * @param simulator The simulator about to run
+	 */
+	public void startRun(DeterministicSimulator simulator) {
+		this.resetCounters();
+		this.state = simulator.getProtocolState();
+		this.nodes = Collections.emptyList();
+		this.edges = Collections.emptyList();
+		this.simulator = simulator;
+	}
+
+	/**
+	 * Records a message accepted by an edge
+	 *
+	 * @param type The type of the message
+	 */
+	public void messageSent(MessageType type) {
+		this.inFlight.incrementAndGet(type.ordinal());
+	}
+
+	/**
+	 * Records a message handed over to the receiving node
+	 *
+	 * @param type The type of the message
+	 */
+	public void messageDelivered(MessageType type) {
+		this.inFlight.decrementAndGet(type.ordinal());
+		this.delivered.incrementAndGet();
+	}
+
+	@Override
+	public int getAvailableNodes() {
+		return this.countNodes(AVAILABLE);
+	}
+
+	@Override
+	public int getActiveNodes() {
+		return this.countNodes(ACTIVE);
+	}
+
+	@Override
+	public int getProcessingNodes() {
+		return this.countNodes(PROCESSING);
+	}
+
+	@Override
+	public int getSaturatedNodes() {
+		return this.countNodes(SATURATED);
+	}
+
+	@Override
+	public int getNotifiedNodes() {
+		return this.countNodes(NOTIFIED);
+	}
+
+	@Override
+	public long getWakeUpInFlight() {
+		return this.getInFlight(MessageType.WAKE_UP);
+	}
+
+	@Override
+	public long getSaturateInFlight() {
+		return this.getInFlight(MessageType.SATURATE);
+	}
+
+	@Override
+	public long getNotificationInFlight() {
+		return this.getInFlight(MessageType.NOTIFICATION);
+	}
+
+	@Override
+	public long getCheckCenterInFlight() {
+		return this.getInFlight(MessageType.CHECK_CENTER);
+	}
+
+	@Override
+	public long getCompareSaturatedInFlight() {
+		return this.getInFlight(MessageType.COMPARE_SATURATED);
+	}
+
+	@Override
+	public long getMailboxBacklog() {
+		DeterministicSimulator simulator = this.simulator;
+		if (simulator != null) {
+			return simulator.getQueuedEvents();
+		}
+
+		long backlog = 0;
+		for (NodeWrapper node : this.nodes) {
+			backlog += node.getBacklog();
+		}
+		for (EdgeWrapper edge : this.edges) {
+			backlog += edge.getBacklog();
+		}
+		return backlog;
+	}
+
+	@Override
+	public int getPendingTimers() {
+		return Actor.getPendingTimers();
+	}
+
+	@Override
+	public long getBackpressureEvents() {
+		long events = 0;
+		for (EdgeWrapper edge : this.edges) {
+			events += edge.getMessageBox().getBackpressureEvents();
+		}
+		return events;
+	}
+
+	@Override
+	public long getSpilledMessages() {
+		long spilled = 0;
+		for (EdgeWrapper edge : this.edges) {
+			spilled += edge.getMessageBox().getSpilledMessages();
+		}
+		return spilled;
+	}
+
+	@Override
+	public int getPeakEdgeMailbox() {
+		int peak = 0;
+		for (EdgeWrapper edge : this.edges) {
+			peak = Math.max(peak, edge.getMessageBox().getPeakSize());
+		}
+		return peak;
+	}
+
+	@Override
+	public long getDeliveredMessages() {
+		DeterministicSimulator simulator = this.simulator;
+		return simulator != null ? simulator.getEventCount() : this.delivered.get();
+	}
+
+	@Override
+	public synchronized double getThroughput() {
+		long now = System.nanoTime();
+		long count = this.getDeliveredMessages();
+		double seconds = (now - this.lastSampleTime) / 1e9;
+		double throughput = seconds > 0 ? (count - this.lastSampleCount) / seconds : 0;
+
+		this.lastSampleTime = now;
+		this.lastSampleCount = count;
+		return throughput;
+	}
+
+	@Override
+	public long getSimulatedTime() {
+		DeterministicSimulator simulator = this.simulator;
+		return simulator != null ? simulator.getSimulatedTime() : this.control.getSimulatedTime();
+	}
+
+	@Override
+	public boolean isPaused() {
+		return this.control.isPaused();
+	}
+
+	@Override
+	public double getSpeed() {
+		return this.control.getSpeed();
+	}
+
+	@Override
+	public void setSpeed(double speed) {
+		this.control.setSpeed(speed);
+	}
+
+	@Override
+	public void pause() {
+		this.control.pause();
+	}
+
+	@Override
+	public void resume() {
+		this.control.resume();
+	}
+
+	@Override
+	public void checkpoint(String path) {
+		DeterministicSimulator simulator = this.simulator;
+		if (simulator == null) {
+			throw new IllegalStateException("Only deterministic runs can be checkpointed");
+		}
+		simulator.requestCheckpoint(new File(path));
+	}
+
+	/**
+	 * @return the number of nodes of the current run in the given state
+	 */
+	private int countNodes(int nodeState) {
+		ProtocolState state = this.state;
+		if (state == null) {
+			return 0;
+		}
+
+		int count = 0;
+		for (int node = 0; node < state.getTopology().getNodeCount(); node++) {
+			if (state.getState(node) == nodeState) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of messages of the given type sent but not delivered yet
+	 */
+	private long getInFlight(MessageType type) {
+		DeterministicSimulator simulator = this.simulator;
+		return simulator != null ? simulator.getInFlight(type) : this.inFlight.get(type.ordinal());
+	}
+
+	/**
+	 * Sets every counter of the threaded engine back to 0
+	 */
+	private synchronized void resetCounters() {
+		for (int i = 0; i < MESSAGE_TYPES; i++) {
+			this.inFlight.set(i, 0);
+		}
+		this.delivered.set(0);
+		this.lastSampleTime = System.nanoTime();
+		this.lastSampleCount = 0;
+	}
+}
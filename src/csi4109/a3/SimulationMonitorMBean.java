@@ -0,0 +1,81 @@
+package csi4109.a3;
+
+/**
+ * Management interface of the {@link SimulationMonitor}, as seen by a JMX console.
+ * Every attribute is computed when it is read, so watching a run costs nothing
+ * while nobody is connected
+ */
+public interface SimulationMonitorMBean {
+
+	// Number of nodes in each state of the saturation algorithm
+	public int getAvailableNodes();
+	public int getActiveNodes();
+	public int getProcessingNodes();
+	public int getSaturatedNodes();
+	public int getNotifiedNodes();
+
+	// Number of messages of each type sent but not delivered yet
+	public long getWakeUpInFlight();
+	public long getSaturateInFlight();
+	public long getNotificationInFlight();
+	public long getCheckCenterInFlight();
+	public long getCompareSaturatedInFlight();
+
+	/**
+	 * @return the number of messages waiting in the mailboxes of the nodes and edges
+	 */
+	public long getMailboxBacklog();
+
+	/**
+	 * @return the number of transmission steps and wake ups waiting in the timing wheel,
+	 * across every run of the threaded engine
+	 */
+	public int getPendingTimers();
+
+	/**
+	 * @return the number of messages that found the mailbox of their edge full
+	 */
+	public long getBackpressureEvents();
+
+	/**
+	 * @return the number of messages that went to the overflow buffer of their edge
+	 */
+	public long getSpilledMessages();
+
+	/**
+	 * @return the largest number of messages that ever waited at once on a single edge
+	 */
+	public int getPeakEdgeMailbox();
+
+	/**
+	 * @return the total number of messages delivered since the start of the run
+	 */
+	public long getDeliveredMessages();
+
+	/**
+	 * @return the number of messages delivered per second since the previous reading
+	 */
+	public double getThroughput();
+
+	/**
+	 * @return the simulated time elapsed since the start of the run, in milliseconds
+	 */
+	public long getSimulatedTime();
+
+	public boolean isPaused();
+
+	public double getSpeed();
+
+	public void setSpeed(double speed);
+
+	public void pause();
+
+	public void resume();
+
+	/**
+	 * Saves a checkpoint of a deterministic run before its next delivery
+	 *
+	 * @param path The file to which to save the checkpoint
+	 */
+	public void checkpoint(String path);
+}
@@ -0,0 +1,348 @@
+package csi4109.a3;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Breadth-first spanning tree of a {@link GraphTopology}, which reduces a general graph
+ * to a tree the saturation algorithm can run on. The search expands a whole level at
+ * once: the frontier, or the nodes not reached yet once the frontier is large, is split
+ * into chunks expanded in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * The diameter of a breadth-first tree is at most twice the depth of its root, so it is
+ * smallest when the root is central. The default root is therefore the middle of a long
+ * path found by a double sweep, two searches from a node and from the farthest node from
+ * it. This is the usual heuristic for a minimum-diameter spanning tree, and costs two more
+ * searches.
+ * <p>
+ * Only the part of the graph connected to the root is spanned. The nodes of the tree are
+ * numbered in breadth-first order from the root, which also keeps the nodes of a level
+ * next to each other in the arrays of the simulator
+ */
+public class SpanningTree {
+
+	private static final int CHUNK = 1 << 11; // Frontier nodes expanded by each task
+	// Thresholds of the direction-optimizing search: a level is expanded bottom-up once its
+	// frontier has more than 1/ALPHA of the ports left to explore and 1/BETA of the nodes
+	private static final int ALPHA = 14;
+	private static final int BETA = 24;
+	private static final VarHandle CLAIMS = MethodHandles.arrayElementVarHandle(int[].class); // Atomic access to the claims
+
+	private final TreeTopology topology;
+	private final int[] graphNodes; // Node of the graph of each node of the tree
+	private final int depth; // Depth of the tree from its root
+
+	/**
+	 * Constructs a {@link SpanningTree} instance
+	 */
+	private SpanningTree(TreeTopology topology, int[] graphNodes, int depth) {
+		this.topology = topology;
+		this.graphNodes = graphNodes;
+		this.depth = depth;
+	}
+
+	/**
+	 * Builds a breadth-first spanning tree rooted at a central node of the graph, found
+	 * by a double sweep
+	 *
+	 * @param graph The graph to span
+	 * @param pool The pool on which to expand the frontiers
+	 * @return the spanning tree of the part of the graph connected to node 0
+	 */
+	public static SpanningTree build(GraphTopology graph, ForkJoinPool pool) {
+		if (graph.getNodeCount() == 0) {
+			return new SpanningTree(TreeTopology.fromParents(new int[0]), new int[0], 0);
+		}
+		Search first = new Search(graph, 0, pool);
+		Search second = new Search(graph, first.order[first.reached - 1], pool);
+
+		// Walk back from the farthest node to the middle of the path
+		int root = second.order[second.reached - 1];
+		for (int i = 0; i < second.depth / 2; i++) {
+			root = second.parents[root];
+		}
+		return build(graph, root, pool);
+	}
+
+	/**
+	 * Builds a breadth-first spanning tree from the given root
+	 *
+	 * @param graph The graph to span
+	 * @param root The root of the tree
+	 * @param pool The pool on which to expand the frontiers
+	 * @return the spanning tree of the part of the graph connected to the root
+	 */
+	public static SpanningTree build(GraphTopology graph, int root, ForkJoinPool pool) {
+		Search search = new Search(graph, root, pool);
+
+		// Number the nodes in breadth-first order. A node always comes after its parent
+		int[] indices = new int[graph.getNodeCount()];
+		for (int i = 0; i < search.reached; i++) {
+			indices[search.order[i]] = i;
+		}
+		int[] parents = new int[search.reached];
+		parents[0] = -1;
+		for (int i = 1; i < search.reached; i++) {
+			parents[i] = indices[search.parents[search.order[i]]];
+		}
+		int[] graphNodes = new int[search.reached];
+		System.arraycopy(search.order, 0, graphNodes, 0, search.reached);
+		return new SpanningTree(TreeTopology.fromParents(parents), graphNodes, search.depth);
+	}
+
+	/**
+	 * @return the tree, whose node 0 is the root
+	 */
+	public TreeTopology getTopology() {
+		return this.topology;
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return the node of the graph it stands for
+	 */
+	public int getGraphNode(int node) {
+		return this.graphNodes[node];
+	}
+
+	/**
+	 * @return the largest distance between the root and a node of the tree
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * A level-synchronous, direction-optimizing breadth-first search of the graph. A small
+	 * frontier is expanded top-down, in two parallel passes over it: every node of the
+	 * next level first keeps the earliest frontier node it is a neighbour of as its
+	 * parent, with an atomic minimum, then each frontier node collects the neighbours it
+	 * is the parent of. Once the frontier holds a large part of the edges left to explore,
+	 * the level is expanded bottom-up instead, in a single parallel pass over the nodes not
+	 * reached yet, each of which adopts its first neighbour in the frontier and stops
+	 * looking. Either way, the tree and the order of its nodes are the same however the
+	 * passes are split across threads, so a seeded run on the tree is reproducible
+	 */
+	private static class Search {
+		private final int[] parents; // Parent of each node of the graph, or -1 for the root and the nodes not reached
+		private final int[] order; // Nodes in the order they were reached
+		private int reached = 0; // Number of nodes reached
+		private int depth = 0; // Number of levels below the root
+
+		public Search(GraphTopology graph, int root, ForkJoinPool pool) {
+			int numNodes = graph.getNodeCount();
+			this.parents = new int[numNodes];
+			this.order = new int[numNodes];
+			int[] positions = new int[numNodes]; // Position of each node in order, once it is reached
+			int[] claims = new int[numNodes]; // Position of the earliest frontier node claiming each node
+			Arrays.fill(this.parents, -1);
+			Arrays.fill(positions, Integer.MAX_VALUE);
+			Arrays.fill(claims, Integer.MAX_VALUE);
+			positions[root] = 0;
+			this.order[this.reached++] = root;
+			long frontierPorts = graph.getDegree(root);
+			long unexploredPorts = 2L * graph.getEdgeCount() - frontierPorts;
+
+			int levelStart = 0;
+			while (levelStart < this.reached) {
+				int levelEnd = this.reached;
+				int[] modes;
+				int rangeStart;
+				int rangeEnd;
+				if (frontierPorts * ALPHA > unexploredPorts && (long)(levelEnd - levelStart) * BETA > numNodes) {
+					modes = new int[] { Expand.ADOPT };
+					rangeStart = 0;
+					rangeEnd = numNodes;
+				} else {
+					modes = new int[] { Expand.CLAIM, Expand.COLLECT };
+					rangeStart = levelStart;
+					rangeEnd = levelEnd;
+				}
+
+				int[][] found = new int[(rangeEnd - rangeStart + CHUNK - 1) / CHUNK][];
+				for (int mode : modes) {
+					Expand expand = new Expand(graph, this.parents, positions, claims, this.order, levelStart,
+							levelEnd, mode, rangeStart, rangeStart, rangeEnd, found);
+					if (rangeEnd - rangeStart <= CHUNK) {
+						expand.compute();
+					} else {
+						pool.invoke(expand);
+					}
+				}
+
+				// Append the nodes found by each chunk, in the order of the chunks
+				frontierPorts = 0;
+				for (int[] nodes : found) {
+					for (int i = 1; i <= nodes[0]; i++) {
+						positions[nodes[i]] = this.reached;
+						this.order[this.reached++] = nodes[i];
+						frontierPorts += graph.getDegree(nodes[i]);
+					}
+				}
+				unexploredPorts -= frontierPorts;
+				if (this.reached > levelEnd) {
+					this.depth++;
+				}
+				levelStart = levelEnd;
+			}
+		}
+	}
+
+	/**
+	 * One pass of a level over a range of the frontier, or of the nodes, split into chunks
+	 * of {@link SpanningTree#CHUNK}
+	 */
+	private static class Expand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		// The passes of a level
+		static final int CLAIM = 0; // Each frontier node claims its neighbours not reached yet
+		static final int COLLECT = 1; // Each frontier node collects the neighbours it claimed
+		static final int ADOPT = 2; // Each node not reached yet adopts its first neighbour in the frontier
+
+		private final GraphTopology graph;
+		private final int[] parents;
+		private final int[] positions;
+		private final int[] claims;
+		private final int[] order;
+		private final int levelStart; // The frontier, in order
+		private final int levelEnd;
+		private final int mode;
+		private final int rangeStart; // Start of the whole range of the pass
+		private final int start;
+		private final int end;
+		private final int[][] found; // Nodes found by each chunk of the range, preceded by their number
+
+		public Expand(GraphTopology graph, int[] parents, int[] positions, int[] claims, int[] order,
+				int levelStart, int levelEnd, int mode, int rangeStart, int start, int end, int[][] found) {
+			this.graph = graph;
+			this.parents = parents;
+			this.positions = positions;
+			this.claims = claims;
+			this.order = order;
+			this.levelStart = levelStart;
+			this.levelEnd = levelEnd;
+			this.mode = mode;
+			this.rangeStart = rangeStart;
+			this.start = start;
+			this.end = end;
+			this.found = found;
+		}
+
+		@Override
+		protected void compute() {
+			int chunks = (this.end - this.start + CHUNK - 1) / CHUNK;
+			if (chunks > 1) {
+				// Split on a chunk boundary, so that each chunk keeps its slot in found
+				int middle = this.start + chunks / 2 * CHUNK;
+				invokeAll(this.split(this.start, middle), this.split(middle, this.end));
+				return;
+			}
+
+			switch (this.mode) {
+				case CLAIM:
+					this.claim();
+					break;
+				case COLLECT:
+					this.collect();
+					break;
+				default:
+					this.adopt();
+					break;
+			}
+		}
+
+		private Expand split(int start, int end) {
+			return new Expand(this.graph, this.parents, this.positions, this.claims, this.order, this.levelStart,
+					this.levelEnd, this.mode, this.rangeStart, start, end, this.found);
+		}
+
+		/**
+		 * Lowers the claim of every neighbour not reached yet to the position of the frontier node
+		 */
+		private void claim() {
+			for (int i = this.start; i < this.end; i++) {
+				int node = this.order[i];
+				int firstPort = this.graph.getFirstPort(node);
+				for (int port = firstPort; port < firstPort + this.graph.getDegree(node); port++) {
+					int neighbour = this.graph.getTarget(port);
+					if (this.positions[neighbour] == Integer.MAX_VALUE) {
+						int claim;
+						while ((claim = this.claims[neighbour]) > i) {
+							if (CLAIMS.compareAndSet(this.claims, neighbour, claim, i)) {
+								break;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Collects the neighbours claimed by each frontier node
+		 */
+		private void collect() {
+			Chunk chunk = new Chunk();
+			for (int i = this.start; i < this.end; i++) {
+				int node = this.order[i];
+				int firstPort = this.graph.getFirstPort(node);
+				for (int port = firstPort; port < firstPort + this.graph.getDegree(node); port++) {
+					int neighbour = this.graph.getTarget(port);
+					// Only this task writes the parent of the nodes it claimed, so a
+					// parallel edge finds its neighbour collected already
+					if (this.claims[neighbour] == i && this.parents[neighbour] < 0) {
+						this.parents[neighbour] = node;
+						chunk.add(neighbour);
+					}
+				}
+			}
+			this.found[(this.start - this.rangeStart) / CHUNK] = chunk.toArray();
+		}
+
+		/**
+		 * Lets each node not reached yet adopt its first neighbour in the frontier
+		 */
+		private void adopt() {
+			Chunk chunk = new Chunk();
+			for (int node = this.start; node < this.end; node++) {
+				if (this.positions[node] != Integer.MAX_VALUE) {
+					continue;
+				}
+				int firstPort = this.graph.getFirstPort(node);
+				for (int port = firstPort; port < firstPort + this.graph.getDegree(node); port++) {
+					int neighbour = this.graph.getTarget(port);
+					int position = this.positions[neighbour];
+					if (position >= this.levelStart && position < this.levelEnd) {
+						this.parents[node] = neighbour;
+						chunk.add(node);
+						break;
+					}
+				}
+			}
+			this.found[(this.start - this.rangeStart) / CHUNK] = chunk.toArray();
+		}
+	}
+
+	/**
+	 * The nodes found by a chunk, as a growing array preceded by their number
+	 */
+	private static class Chunk {
+		private int[] nodes = new int[16];
+		private int count = 0;
+
+		public void add(int node) {
+			if (++this.count == this.nodes.length) {
+				this.nodes = Arrays.copyOf(this.nodes, 2 * this.nodes.length);
+			}
+			this.nodes[this.count] = node;
+		}
+
+		public int[] toArray() {
+			this.nodes[0] = this.count;
+			return this.nodes;
+		}
+	}
+}
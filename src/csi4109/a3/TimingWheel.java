@@ -0,0 +1,210 @@
+package csi4109.a3;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed hierarchical timing wheel, which runs tasks once their delay has passed.
+ * Each level has {@link #WHEEL_SIZE} slots, and a slot of a level covers as much time
+ * as the whole level below it. A task goes to the lowest level whose range covers its
+ * delay, in the slot of its deadline, and moves down a level each time its slot comes
+ * up, until it expires from the lowest one. Inserting and expiring a task both take
+ * constant time, however many tasks are pending.
+ * <p>
+ * A single ticker thread owns the wheel. Other threads hand it their tasks through a
+ * lock-free queue, and expired tasks run on the given {@link Executor}, so the ticker
+ * never runs any of them itself. The ticker sleeps while no task is pending
+ */
+public class TimingWheel {
+
+	private static final int WHEEL_BITS = 8;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS; // Number of slots per level
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int LEVELS = 4; // Range of 2^32 ticks
+	private static final long MAX_DELAY = (1L << (WHEEL_BITS * LEVELS)) - 1; // In ticks
+
+	/**
+	 * A task waiting in a slot of the wheel
+	 */
+	private static class Timeout {
+		private Runnable task;
+		private long deadline; // Tick at which the task expires
+		private Timeout next; // Next task in the same slot
+
+		public Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+	}
+
+	private final long tickNanos; // Length of a tick
+	private final Executor executor; // Runs the expired tasks
+	private final Thread ticker;
+	private final long startTime = System.nanoTime();
+
+	// Slots of each level, as singly-linked lists. Only the ticker touches them
+	private final Timeout[][] wheels = new Timeout[LEVELS][WHEEL_SIZE];
+	private long currentTick = 0; // Last tick that was processed
+
+	private final Queue<Timeout> registrations = new ConcurrentLinkedQueue<Timeout>(); // Tasks not in the wheel yet
+	private final AtomicInteger pending = new AtomicInteger(); // Tasks registered and not expired yet
+	private volatile boolean idle = false; // Whether the ticker sleeps until a task is registered
+
+	/**
+	 * Constructs a {@link TimingWheel} instance and starts its ticker
+	 *
+	 * @param tick The length of a tick, which is the precision of the delays
+	 * @param unit The unit of tick
+	 * @param executor The {@link Executor} on which to run the expired tasks
+	 * @param name The name of the ticker thread
+	 */
+	public TimingWheel(long tick, TimeUnit unit, Executor executor, String name) {
+		this.tickNanos = unit.toNanos(tick);
+		this.executor = executor;
+		this.ticker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TimingWheel.this.tickLoop();
+			}
+		}, name);
+		this.ticker.setDaemon(true);
+		this.ticker.start();
+	}
+
+	/**
+	 * Runs a task once the delay has passed. The task may run up to a tick late, but
+	 * never early
+	 *
+	 * @param task The task to run
+	 * @param delay The delay
+	 * @param unit The unit of delay
+	 */
+	public void schedule(Runnable task, long delay, TimeUnit unit) {
+		if (delay <= 0) {
+			this.executor.execute(task);
+			return;
+		}
+
+		// Round the deadline up to the next tick
+		long deadline = (System.nanoTime() - this.startTime + unit.toNanos(delay) + this.tickNanos - 1) / this.tickNanos;
+		this.pending.incrementAndGet();
+		this.registrations.add(new Timeout(task, deadline));
+		if (this.idle) {
+			LockSupport.unpark(this.ticker);
+		}
+	}
+
+	/**
+	 * @return the number of tasks waiting for their delay to pass
+	 */
+	public int getPending() {
+		return this.pending.get();
+	}
+
+	/**
+	 * Advances the wheel one tick at a time, as real time passes
+	 */
+	private void tickLoop() {
+		while (true) {
+			long now = (System.nanoTime() - this.startTime) / this.tickNanos;
+
+			if (this.pending.get() == 0) {
+				// Nothing is pending, so the wheel is empty and can jump ahead. Sleep
+				// until a task is registered
+				this.currentTick = Math.max(this.currentTick, now);
+				this.idle = true;
+				if (this.registrations.isEmpty()) {
+					LockSupport.park(this);
+				}
+				this.idle = false;
+				continue;
+			}
+
+			this.register();
+			while (this.currentTick < now) {
+				this.tick();
+			}
+
+			// Sleep until the next tick starts
+			long next = (this.currentTick + 1) * this.tickNanos + this.startTime;
+			LockSupport.parkNanos(this, next - System.nanoTime());
+		}
+	}
+
+	/**
+	 * Moves the newly registered tasks into the wheel
+	 */
+	private void register() {
+		Timeout timeout;
+		while ((timeout = this.registrations.poll()) != null) {
+			this.place(timeout);
+		}
+	}
+
+	/**
+	 * Processes the next tick: the slots of the upper levels that come up are moved down,
+	 * then the tasks of the current slot of the lowest level expire
+	 */
+	private void tick() {
+		this.currentTick++;
+
+		for (int level = 1; level < LEVELS; level++) {
+			int shift = WHEEL_BITS * level;
+			if ((this.currentTick & ((1L << shift) - 1)) != 0) {
+				break;
+			}
+			int slot = (int)((this.currentTick >>> shift) & WHEEL_MASK);
+			Timeout timeout = this.wheels[level][slot];
+			this.wheels[level][slot] = null;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				this.place(timeout);
+				timeout = next;
+			}
+		}
+
+		int slot = (int)(this.currentTick & WHEEL_MASK);
+		Timeout timeout = this.wheels[0][slot];
+		this.wheels[0][slot] = null;
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			this.expire(timeout);
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Puts a task in the slot of its deadline, on the lowest level whose range covers it,
+	 * or runs it right away if its deadline has passed
+	 */
+	private void place(Timeout timeout) {
+		long delay = timeout.deadline - this.currentTick;
+		if (delay <= 0) {
+			this.expire(timeout);
+			return;
+		}
+
+		// A deadline beyond the range of the wheel waits in the top level until it comes in range
+		long deadline = this.currentTick + Math.min(delay, MAX_DELAY);
+		int level = 0;
+		while (level < LEVELS - 1 && delay >= 1L << (WHEEL_BITS * (level + 1))) {
+			level++;
+		}
+		int slot = (int)((deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+		timeout.next = this.wheels[level][slot];
+		this.wheels[level][slot] = timeout;
+	}
+
+	/**
+	 * Hands an expired task to the executor
+	 */
+	private void expire(Timeout timeout) {
+		timeout.next = null;
+		this.pending.decrementAndGet();
+		this.executor.execute(timeout.task);
+	}
+}
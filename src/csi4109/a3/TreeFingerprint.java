@@ -0,0 +1,254 @@
+package csi4109.a3;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical fingerprint of the shape of a tree: two trees get the same fingerprint if
+ * and only if they are isomorphic, however their nodes are numbered. The tree is rooted
+ * at its center, or at the edge between its two centers, then labelled level by level
+ * from the deepest one up, as in the Aho-Hopcroft-Ullman algorithm. The label of a node
+ * is the rank of the sorted labels of its children among the distinct ones of its level,
+ * so the labels themselves are canonical. Every level is hashed into a SHA-256 digest,
+ * which is the fingerprint.
+ * <p>
+ * The children of each level are sorted with a counting sort on their labels, and the
+ * distinct lists of labels are found by hashing, so only those distinct lists, usually
+ * few, are sorted by comparison. The whole computation takes time linear in the size
+ * of the tree in practice
+ */
+public class TreeFingerprint {
+
+	private static final int BUFFER_SIZE = 1 << 13;
+
+	/**
+	 * A list of child labels, as a slice of a larger array
+	 */
+	private static class Labels {
+		private final int[] array;
+		private final int offset;
+		private final int length;
+		private final int hash;
+
+		public Labels(int[] array, int offset, int length) {
+			this.array = array;
+			this.offset = offset;
+			this.length = length;
+			int hash = length;
+			for (int i = offset; i < offset + length; i++) {
+				hash = 31 * hash + array[i];
+			}
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Labels)) {
+				return false;
+			}
+			Labels labels = (Labels)other;
+			if (labels.length != this.length) {
+				return false;
+			}
+			for (int i = 0; i < this.length; i++) {
+				if (labels.array[labels.offset + i] != this.array[this.offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	// Lexicographic order of label lists, a shorter list coming before its extensions
+	private static final Comparator<Labels> LABELS_ORDER = new Comparator<Labels>() {
+		@Override
+		public int compare(Labels first, Labels second) {
+			int length = Math.min(first.length, second.length);
+			for (int i = 0; i < length; i++) {
+				int difference = Integer.compare(first.array[first.offset + i], second.array[second.offset + i]);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return Integer.compare(first.length, second.length);
+		}
+	};
+
+	private TreeFingerprint() {
+	}
+
+	/**
+	 * Computes the canonical fingerprint of a tree
+	 *
+	 * @param topology The tree
+	 * @return the fingerprint, as 64 hexadecimal digits
+	 */
+	public static String compute(TreeTopology topology) {
+		int numNodes = topology.getNodeCount();
+		Digest digest = new Digest();
+		digest.putInt(numNodes);
+		if (numNodes == 0) {
+			return digest.toHex();
+		}
+
+		// Order the nodes by depth from the center or centers. With two centers, the
+		// central edge is never crossed, so each center roots its own side
+		int[] centers = numNodes > 1 ? TreeMetrics.findCenters(topology) : new int[] { 0 };
+		int[] order = new int[numNodes];
+		int[] parents = new int[numNodes];
+		int[] childCounts = new int[numNodes];
+		List<Integer> levelStarts = new ArrayList<Integer>();
+		Arrays.fill(parents, -2);
+		int tail = 0;
+		for (int center : centers) {
+			parents[center] = -1;
+			order[tail++] = center;
+		}
+		levelStarts.add(0);
+		int levelEnd = tail;
+		for (int head = 0; head < tail; head++) {
+			if (head == levelEnd) {
+				levelStarts.add(head);
+				levelEnd = tail;
+			}
+			int node = order[head];
+			int firstPort = topology.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + topology.getDegree(node); port++) {
+				int neighbour = topology.getTarget(port);
+				if (parents[neighbour] == -2) {
+					parents[neighbour] = node;
+					childCounts[node]++;
+					order[tail++] = neighbour;
+				}
+			}
+		}
+		levelStarts.add(numNodes);
+		digest.putInt(levelStarts.size() - 1);
+
+		// Label the levels from the deepest up. The children of a level are the nodes of
+		// the level below, which are already labelled
+		int[] labels = new int[numNodes];
+		int[] offsets = new int[numNodes]; // Where the child labels of each node start
+		int[] childLabels = new int[numNodes]; // Child labels of the nodes of the current level, in order
+		int childLabelCount = 0; // Number of distinct labels of the level below
+		for (int level = levelStarts.size() - 2; level >= 0; level--) {
+			int start = levelStarts.get(level);
+			int end = levelStarts.get(level + 1);
+			int childEnd = levelStarts.get(Math.min(level + 2, levelStarts.size() - 1));
+
+			// Counting sort of the children by label, appended to their parent's list,
+			// which leaves every list sorted
+			int offset = 0;
+			for (int i = start; i < end; i++) {
+				offsets[order[i]] = offset;
+				offset += childCounts[order[i]];
+			}
+			int[] buckets = new int[childLabelCount + 1];
+			for (int i = end; i < childEnd; i++) {
+				buckets[labels[order[i]] + 1]++;
+			}
+			for (int label = 0; label < childLabelCount; label++) {
+				buckets[label + 1] += buckets[label];
+			}
+			int[] sorted = new int[childEnd - end];
+			for (int i = end; i < childEnd; i++) {
+				sorted[buckets[labels[order[i]]]++] = order[i];
+			}
+			for (int child : sorted) {
+				childLabels[offsets[parents[child]]++] = labels[child];
+			}
+			for (int i = start; i < end; i++) {
+				offsets[order[i]] -= childCounts[order[i]];
+			}
+
+			// Find the distinct lists of the level and rank them
+			Map<Labels, Integer> distinct = new HashMap<Labels, Integer>();
+			for (int i = start; i < end; i++) {
+				int node = order[i];
+				Labels key = new Labels(childLabels, offsets[node], childCounts[node]);
+				Integer count = distinct.get(key);
+				distinct.put(key, count == null ? 1 : count + 1);
+			}
+			List<Labels> ranked = new ArrayList<Labels>(distinct.keySet());
+			Collections.sort(ranked, LABELS_ORDER);
+			Map<Labels, Integer> ranks = new HashMap<Labels, Integer>();
+			digest.putInt(ranked.size());
+			for (int rank = 0; rank < ranked.size(); rank++) {
+				Labels key = ranked.get(rank);
+				ranks.put(key, rank);
+				digest.putInt(distinct.get(key));
+				digest.putInt(key.length);
+				for (int i = key.offset; i < key.offset + key.length; i++) {
+					digest.putInt(key.array[i]);
+				}
+			}
+			for (int i = start; i < end; i++) {
+				int node = order[i];
+				labels[node] = ranks.get(new Labels(childLabels, offsets[node], childCounts[node]));
+			}
+			childLabelCount = ranked.size();
+		}
+
+		// The root is the center, or the central edge joining the two sides
+		int[] rootLabels = new int[centers.length];
+		for (int i = 0; i < centers.length; i++) {
+			rootLabels[i] = labels[centers[i]];
+		}
+		Arrays.sort(rootLabels);
+		digest.putInt(rootLabels.length);
+		for (int label : rootLabels) {
+			digest.putInt(label);
+		}
+		return digest.toHex();
+	}
+
+	/**
+	 * SHA-256 digest fed with integers through a buffer
+	 */
+	private static class Digest {
+		private final MessageDigest digest;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		public Digest() {
+			try {
+				this.digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available", e);
+			}
+		}
+
+		public void putInt(int value) {
+			if (this.buffer.remaining() < 4) {
+				this.flush();
+			}
+			this.buffer.putInt(value);
+		}
+
+		public String toHex() {
+			this.flush();
+			StringBuilder hex = new StringBuilder();
+			for (byte b : this.digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		}
+
+		private void flush() {
+			this.digest.update(this.buffer.array(), 0, this.buffer.position());
+			this.buffer.clear();
+		}
+	}
+}
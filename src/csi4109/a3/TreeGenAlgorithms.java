@@ -4,7 +4,6 @@ import java.util.LinkedList;
 import java.util.Queue;
 
 import org.graphstream.algorithm.generator.BarabasiAlbertGenerator;
-import org.graphstream.algorithm.generator.Generator;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
 
@@ -12,8 +11,6 @@ import org.graphstream.graph.Node;
  * Static methods for different algorithms for generating trees 
  */
 public class TreeGenAlgorithms {
-	private static int nodeId = 0;
-	private static int edgeId = 0;
 	
 	/**
 	 * Generates a tree graph in the shape of a list. In other words, each
@@ -24,6 +21,10 @@ public class TreeGenAlgorithms {
 	 * @throws InterruptedException
 	 */
 	public static void generateListTree(Graph graph, int delta, int numNodes) throws InterruptedException {
+		// Identifiers are local to the call, so that trees can be built concurrently
+		int nodeId = 0;
+		int edgeId = 0;
+		
 		graph.addNode(String.valueOf(nodeId++));
 		Node parent = graph.addNode(String.valueOf(nodeId++));
 		graph.addEdge(String.valueOf(edgeId++), 0, 1);
@@ -47,6 +48,9 @@ public class TreeGenAlgorithms {
 	 * @throws InterruptedException
 	 */
 	public static void generateStarTree(Graph graph, int delta, int numNodes) throws InterruptedException {
+		int nodeId = 0;
+		int edgeId = 0;
+		
 		Node parent = graph.addNode(String.valueOf(nodeId++));
 		Node firstChild = graph.addNode(String.valueOf(nodeId++));
 		graph.addEdge(String.valueOf(edgeId++), parent.getIndex(), firstChild.getIndex());
@@ -68,6 +72,9 @@ public class TreeGenAlgorithms {
 	 * @throws InterruptedException
 	 */
 	public static void generateBinaryTree(Graph graph, int delta, int numNodes) throws InterruptedException {
+		int nodeId = 0;
+		int edgeId = 0;
+		
 		Node root = graph.addNode(String.valueOf(nodeId++));
 		Node child1 = graph.addNode(String.valueOf(nodeId++));
 		graph.addEdge(String.valueOf(edgeId++), root.getId(), child1.getId());
@@ -114,13 +121,15 @@ public class TreeGenAlgorithms {
 	 * 
 	 * @param graph The {@link Graph} instance with which to use for building the tree
 	 * @param delta The amount of time, in milliseconds, to wait between generating nodes
+	 * @param seed The seed of the random generator used to attach the nodes
 	 * @throws InterruptedException
 	 */
-	public static void generateRandomTree(Graph graph, int delta, int numNodes) throws InterruptedException {
+	public static void generateRandomTree(Graph graph, int delta, int numNodes, long seed) throws InterruptedException {
 		// The generator initializes itself with two nodes, so we remove 2 from the following computation
 		numNodes = numNodes - 2;
 		
-		Generator generator = new BarabasiAlbertGenerator(1);
+		BarabasiAlbertGenerator generator = new BarabasiAlbertGenerator(1);
+		generator.setRandomSeed(seed);
 		generator.addSink(graph);
 		
 		generator.begin();
@@ -0,0 +1,147 @@
+package csi4109.a3;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * Static methods for laying out tree graphs without relying on GraphStream's
+ * force-directed auto-layout. Since the structure of the tree is already known,
+ * the coordinates can be computed once in linear time
+ */
+public class TreeLayout {
+
+	// Distance between two consecutive levels of the tree
+	private static final double LEVEL_SPACING = 1.0;
+
+	/**
+	 * Lays out the tree radially around its center, as {@link #layoutRadial(TreeTopology)}
+	 * does. The resulting coordinates are written to the "xyz" attribute of every {@link Node}
+	 *
+	 * @param graph The tree {@link Graph} to lay out
+	 */
+	public static void layoutRadial(Graph graph) {
+		double[] coordinates = layoutRadial(TreeTopology.fromGraph(graph));
+		for (int node = 0; node < graph.getNodeCount(); node++) {
+			graph.getNode(node).setAttribute("xyz", coordinates[2 * node], coordinates[2 * node + 1], 0.0);
+		}
+	}
+
+	/**
+	 * Lays out the tree radially around its center. The center is placed at the
+	 * origin and every other node is placed on a circle whose radius is proportional
+	 * to its depth. Each sub-tree receives an angular wedge proportional to its
+	 * number of leaves, so that sub-trees never overlap
+	 *
+	 * @param topology The tree to lay out
+	 * @return the x and y coordinates of each node, one after the other
+	 */
+	public static double[] layoutRadial(TreeTopology topology) {
+		int numNodes = topology.getNodeCount();
+		double[] coordinates = new double[2 * numNodes];
+		if (numNodes == 0) {
+			return coordinates;
+		}
+
+		int root = findCenter(topology);
+
+		// Traverse the tree breadth first from the center to get
+		// the parent and depth of each node
+		int[] order = new int[numNodes];
+		int[] parent = new int[numNodes];
+		int[] depth = new int[numNodes];
+		parent[root] = -1;
+		order[0] = root;
+		int tail = 1;
+		for (int head = 0; head < tail; head++) {
+			int current = order[head];
+			int firstPort = topology.getFirstPort(current);
+			for (int port = firstPort; port < firstPort + topology.getDegree(current); port++) {
+				int neighbour = topology.getTarget(port);
+				if (neighbour != parent[current]) {
+					parent[neighbour] = current;
+					depth[neighbour] = depth[current] + 1;
+					order[tail++] = neighbour;
+				}
+			}
+		}
+
+		// Count the leaves of each sub-tree in reverse breadth first order
+		int[] leaves = new int[numNodes];
+		for (int i = numNodes - 1; i >= 0; i--) {
+			int current = order[i];
+			if (leaves[current] == 0) {
+				leaves[current] = 1;
+			}
+			if (parent[current] >= 0) {
+				leaves[parent[current]] += leaves[current];
+			}
+		}
+
+		// Split each node's wedge between its children proportionally
+		// to their number of leaves, then place the node in the middle
+		// of its own wedge
+		double[] wedgeStart = new double[numNodes];
+		double[] wedgeSize = new double[numNodes];
+		wedgeSize[root] = 2 * Math.PI;
+		for (int i = 0; i < numNodes; i++) {
+			int current = order[i];
+			double cursor = wedgeStart[current];
+			int firstPort = topology.getFirstPort(current);
+			for (int port = firstPort; port < firstPort + topology.getDegree(current); port++) {
+				int neighbour = topology.getTarget(port);
+				if (neighbour != parent[current]) {
+					wedgeStart[neighbour] = cursor;
+					wedgeSize[neighbour] = wedgeSize[current] * leaves[neighbour] / leaves[current];
+					cursor += wedgeSize[neighbour];
+				}
+			}
+
+			double angle = wedgeStart[current] + wedgeSize[current] / 2;
+			double radius = depth[current] * LEVEL_SPACING;
+			coordinates[2 * current] = radius * Math.cos(angle);
+			coordinates[2 * current + 1] = radius * Math.sin(angle);
+		}
+		return coordinates;
+	}
+
+	/**
+	 * Finds a center of the tree by repeatedly peeling off its leaves
+	 * until one or two nodes remain
+	 *
+	 * @param topology The tree
+	 * @return the index of a center node
+	 */
+	private static int findCenter(TreeTopology topology) {
+		int numNodes = topology.getNodeCount();
+		int[] degree = new int[numNodes];
+		int[] queue = new int[numNodes];
+		int tail = 0;
+
+		for (int i = 0; i < numNodes; i++) {
+			degree[i] = topology.getDegree(i);
+			if (degree[i] <= 1) {
+				queue[tail++] = i;
+			}
+		}
+
+		// Peel one whole layer of leaves at a time. The last layer
+		// to be peeled contains the center(s)
+		int head = 0;
+		int remaining = numNodes;
+		while (remaining > 2) {
+			int layerEnd = tail;
+			remaining -= layerEnd - head;
+			for (; head < layerEnd; head++) {
+				int firstPort = topology.getFirstPort(queue[head]);
+				for (int port = firstPort; port < firstPort + topology.getDegree(queue[head]); port++) {
+					int neighbour = topology.getTarget(port);
+					if (--degree[neighbour] == 1) {
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+		}
+
+		return queue[head];
+	}
+}
@@ -0,0 +1,185 @@
+package csi4109.a3;
+
+import java.util.Arrays;
+
+/**
+ * Reference figures of a tree, computed directly from its {@link TreeTopology} with a
+ * few breadth-first searches instead of by running the saturation algorithm. They are
+ * used to verify the results of the algorithm, and are the same for every tree of the
+ * same shape, which lets a {@link ResultCache} keep them by {@link TreeFingerprint}
+ */
+public class TreeMetrics {
+
+	private final int diameter; // Length of the longest paths, in edges
+	private final int centerCount; // 1, or 2 if the diameter is odd
+	private final long diametralPaths; // Number of pairs of nodes as far apart as the diameter
+
+	/**
+	 * Constructs a {@link TreeMetrics} instance
+	 *
+	 * @param diameter The length of the longest paths of the tree, in edges
+	 * @param centerCount The number of centers of the tree
+	 * @param diametralPaths The number of diametral paths of the tree
+	 */
+	public TreeMetrics(int diameter, int centerCount, long diametralPaths) {
+		this.diameter = diameter;
+		this.centerCount = centerCount;
+		this.diametralPaths = diametralPaths;
+	}
+
+	/**
+	 * Computes the figures of a tree in linear time. The diametral paths are counted
+	 * from the center: with a single center at distance r of both ends of every diametral
+	 * path, a path joins two nodes at distance r in different branches of the center.
+	 * With two centers, it joins a node at distance r of one center, on its side of the
+	 * tree, to a node at distance r of the other
+	 *
+	 * @param topology The tree
+	 * @return the figures of the tree
+	 */
+	public static TreeMetrics compute(TreeTopology topology) {
+		if (topology.getNodeCount() < 2) {
+			return new TreeMetrics(0, 1, 0);
+		}
+
+		int[] centers = findCenters(topology);
+		int[] distances = new int[topology.getNodeCount()];
+		int[] branches = new int[topology.getNodeCount()];
+		if (centers.length == 1) {
+			// Count the nodes at distance r in each branch of the center
+			int radius = breadthFirst(topology, centers, distances, branches);
+			long[] counts = new long[topology.getDegree(centers[0])];
+			for (int node = 0; node < distances.length; node++) {
+				if (distances[node] == radius) {
+					counts[branches[node]]++;
+				}
+			}
+			long total = 0;
+			long squares = 0;
+			for (long count : counts) {
+				total += count;
+				squares += count * count;
+			}
+			return new TreeMetrics(2 * radius, 1, (total * total - squares) / 2);
+		}
+
+		// Each center only counts the nodes on its side of the central edge
+		int radius = breadthFirst(topology, centers, distances, branches);
+		long[] counts = new long[2];
+		for (int node = 0; node < distances.length; node++) {
+			if (distances[node] == radius) {
+				counts[branches[node]]++;
+			}
+		}
+		return new TreeMetrics(2 * radius + 1, 2, counts[0] * counts[1]);
+	}
+
+	/**
+	 * Finds the center of a tree, or its two centers, from a diametral path found by two
+	 * breadth-first searches
+	 *
+	 * @param topology The tree
+	 * @return the index of the center, or of both centers in increasing order
+	 */
+	public static int[] findCenters(TreeTopology topology) {
+		int numNodes = topology.getNodeCount();
+		int[] distances = new int[numNodes];
+		int[] parents = new int[numNodes];
+
+		int end = farthest(topology, 0, distances, parents);
+		int start = farthest(topology, end, distances, parents);
+
+		// Walk back from one end of the diametral path to its middle
+		int diameter = distances[start];
+		int center = start;
+		for (int i = 0; i < diameter / 2; i++) {
+			center = parents[center];
+		}
+		if (diameter % 2 == 0) {
+			return new int[] { center };
+		}
+		int[] centers = new int[] { center, parents[center] };
+		Arrays.sort(centers);
+		return centers;
+	}
+
+	public int getDiameter() {
+		return this.diameter;
+	}
+
+	public int getCenterCount() {
+		return this.centerCount;
+	}
+
+	public long getDiametralPaths() {
+		return this.diametralPaths;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("diameter %d, %d center%s, %d diametral paths", this.diameter, this.centerCount,
+				this.centerCount > 1 ? "s" : "", this.diametralPaths);
+	}
+
+	/**
+	 * Runs a breadth-first search from a node
+	 *
+	 * @return the node farthest from the source, whose distance is in distances
+	 */
+	private static int farthest(TreeTopology topology, int source, int[] distances, int[] parents) {
+		int[] queue = new int[topology.getNodeCount()];
+		Arrays.fill(distances, -1);
+		distances[source] = 0;
+		parents[source] = -1;
+		queue[0] = source;
+		int last = source;
+		for (int head = 0, tail = 1; head < tail; head++) {
+			int node = queue[head];
+			last = node;
+			int firstPort = topology.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + topology.getDegree(node); port++) {
+				int neighbour = topology.getTarget(port);
+				if (distances[neighbour] < 0) {
+					distances[neighbour] = distances[node] + 1;
+					parents[neighbour] = node;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Runs a breadth-first search from the centers, recording the distance of every
+	 * node and the branch it belongs to. With a single center, the branches are its
+	 * ports; with two, each center is a branch and the central edge is never crossed
+	 *
+	 * @return the largest distance found
+	 */
+	private static int breadthFirst(TreeTopology topology, int[] centers, int[] distances, int[] branches) {
+		int[] queue = new int[topology.getNodeCount()];
+		Arrays.fill(distances, -1);
+		int tail = 0;
+		for (int i = 0; i < centers.length; i++) {
+			distances[centers[i]] = 0;
+			branches[centers[i]] = centers.length == 1 ? -1 : i;
+			queue[tail++] = centers[i];
+		}
+
+		int radius = 0;
+		for (int head = 0; head < tail; head++) {
+			int node = queue[head];
+			radius = distances[node];
+			int firstPort = topology.getFirstPort(node);
+			for (int port = firstPort; port < firstPort + topology.getDegree(node); port++) {
+				int neighbour = topology.getTarget(port);
+				if (distances[neighbour] < 0) {
+					distances[neighbour] = distances[node] + 1;
+					branches[neighbour] = branches[node] < 0 ? port - firstPort : branches[node];
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+		return radius;
+	}
+}
@@ -0,0 +1,384 @@
+package csi4109.a3;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+import csi4109.a3.ConfigurationData.TreeType;
+
+/**
+ * Compact, immutable representation of a tree's structure. Each undirected edge is
+ * stored as two half-edges, one per direction, and the half-edges leaving a node are
+ * stored contiguously, so that the ports of node v are the half-edges numbered
+ * getFirstPort(v) to getFirstPort(v) + getDegree(v) - 1. Per-node and per-port state
+ * can then be kept in flat primitive arrays, which scales to millions of nodes
+ */
+public class TreeTopology {
+
+	private final int numNodes;
+	private final int[] offsets; // First half-edge of each node, plus a final sentinel
+	private final int[] targets; // Node at the other end of each half-edge
+	private final int[] twins; // Half-edge going in the opposite direction
+	private final int[] edges; // Undirected edge index of each half-edge
+	private final int[] halfEdges; // One of the two half-edges of each undirected edge
+
+	/**
+	 * Constructs a {@link TreeTopology} instance from its compressed arrays
+	 */
+	private TreeTopology(int numNodes, int[] offsets, int[] targets, int[] twins, int[] edges) {
+		this.numNodes = numNodes;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.twins = twins;
+		this.edges = edges;
+		this.halfEdges = new int[edges.length / 2];
+		for (int halfEdge = 0; halfEdge < edges.length; halfEdge++) {
+			this.halfEdges[edges[halfEdge]] = halfEdge;
+		}
+	}
+
+	/**
+	 * Builds the topology of a GraphStream tree. Node numbers are the {@link Node}
+	 * indices, edge numbers are the {@link Edge} indices and the ports of each node
+	 * follow the order of its edge set, as seen by its {@link NodeWrapper}
+	 *
+	 * @param graph The tree {@link Graph}
+	 * @return the topology of the tree
+	 */
+	public static TreeTopology fromGraph(Graph graph) {
+		int numNodes = graph.getNodeCount();
+		int numHalfEdges = 2 * graph.getEdgeCount();
+		int[] offsets = new int[numNodes + 1];
+		int[] targets = new int[numHalfEdges];
+		int[] twins = new int[numHalfEdges];
+		int[] edges = new int[numHalfEdges];
+		int[] firstHalfEdge = new int[graph.getEdgeCount()];
+		Arrays.fill(firstHalfEdge, -1);
+
+		for (int v = 0; v < numNodes; v++) {
+			offsets[v + 1] = offsets[v] + graph.getNode(v).getDegree();
+		}
+
+		for (int v = 0; v < numNodes; v++) {
+			Node node = graph.getNode(v);
+			int port = offsets[v];
+			for (Edge edge : node.getEdgeSet()) {
+				targets[port] = edge.getOpposite(node).getIndex();
+				edges[port] = edge.getIndex();
+
+				// Pair the two half-edges of the same edge
+				int other = firstHalfEdge[edge.getIndex()];
+				if (other < 0) {
+					firstHalfEdge[edge.getIndex()] = port;
+				} else {
+					twins[port] = other;
+					twins[other] = port;
+				}
+				port++;
+			}
+		}
+
+		return new TreeTopology(numNodes, offsets, targets, twins, edges);
+	}
+
+	/**
+	 * Builds a topology from the parent of each node. Edges are numbered in
+	 * increasing order of their child node
+	 *
+	 * @param parents The parent of each node, or -1 for the root
+	 * @return the topology of the tree
+	 */
+	public static TreeTopology fromParents(int[] parents) {
+		int numNodes = parents.length;
+		int[] offsets = new int[numNodes + 1];
+
+		for (int v = 0; v < numNodes; v++) {
+			if (parents[v] >= 0) {
+				offsets[v + 1]++;
+				offsets[parents[v] + 1]++;
+			}
+		}
+		for (int v = 0; v < numNodes; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+
+		int numHalfEdges = offsets[numNodes];
+		int[] targets = new int[numHalfEdges];
+		int[] twins = new int[numHalfEdges];
+		int[] edges = new int[numHalfEdges];
+		int[] cursors = new int[numNodes];
+		System.arraycopy(offsets, 0, cursors, 0, numNodes);
+
+		int edge = 0;
+		for (int v = 0; v < numNodes; v++) {
+			int parent = parents[v];
+			if (parent >= 0) {
+				int down = cursors[parent]++;
+				int up = cursors[v]++;
+				targets[down] = v;
+				targets[up] = parent;
+				twins[down] = up;
+				twins[up] = down;
+				edges[down] = edge;
+				edges[up] = edge;
+				edge++;
+			}
+		}
+
+		return new TreeTopology(numNodes, offsets, targets, twins, edges);
+	}
+
+	/**
+	 * Builds a topology from a list of edges. Edges are numbered in the order of the
+	 * list, and the ports of each node follow that order too
+	 *
+	 * @param numNodes The number of nodes in the tree
+	 * @param ends The two end nodes of each edge, one edge after the other
+	 * @return the topology of the tree
+	 * @throws IllegalArgumentException if the edges do not form a tree over the nodes
+	 */
+	public static TreeTopology fromEdges(int numNodes, int[] ends) {
+		if (numNodes < 1 || ends.length != 2 * (numNodes - 1)) {
+			throw new IllegalArgumentException(String.format("A tree of %d nodes has %d edges, not %d",
+					numNodes, Math.max(0, numNodes - 1), ends.length / 2));
+		}
+
+		// A union-find of the nodes finds any cycle, and n - 1 edges without
+		// a cycle connect all n nodes
+		int[] roots = new int[numNodes];
+		for (int v = 0; v < numNodes; v++) {
+			roots[v] = v;
+		}
+		int[] offsets = new int[numNodes + 1];
+		for (int i = 0; i < ends.length; i += 2) {
+			int u = ends[i];
+			int v = ends[i + 1];
+			if (u < 0 || u >= numNodes || v < 0 || v >= numNodes) {
+				throw new IllegalArgumentException(String.format("Edge %d-%d has a node out of range", u, v));
+			}
+			int rootU = findRoot(roots, u);
+			int rootV = findRoot(roots, v);
+			if (rootU == rootV) {
+				throw new IllegalArgumentException(String.format("Edge %d-%d closes a cycle", u, v));
+			}
+			roots[rootU] = rootV;
+			offsets[u + 1]++;
+			offsets[v + 1]++;
+		}
+		for (int v = 0; v < numNodes; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+
+		int numHalfEdges = ends.length;
+		int[] targets = new int[numHalfEdges];
+		int[] twins = new int[numHalfEdges];
+		int[] edges = new int[numHalfEdges];
+		int[] cursors = new int[numNodes];
+		System.arraycopy(offsets, 0, cursors, 0, numNodes);
+
+		for (int edge = 0; edge < numHalfEdges / 2; edge++) {
+			int u = ends[2 * edge];
+			int v = ends[2 * edge + 1];
+			int forward = cursors[u]++;
+			int backward = cursors[v]++;
+			targets[forward] = v;
+			targets[backward] = u;
+			twins[forward] = backward;
+			twins[backward] = forward;
+			edges[forward] = edge;
+			edges[backward] = edge;
+		}
+
+		return new TreeTopology(numNodes, offsets, targets, twins, edges);
+	}
+
+	/**
+	 * Finds the root of a node in a union-find forest, halving the path on the way
+	 */
+	private static int findRoot(int[] roots, int node) {
+		while (roots[node] != node) {
+			roots[node] = roots[roots[node]];
+			node = roots[node];
+		}
+		return node;
+	}
+
+	/**
+	 * Generates a tree of the given type without going through GraphStream. List, Star and
+	 * Binary trees have the same shape as the ones built by {@link TreeGenAlgorithms}. Arbitrary
+	 * trees are grown by preferential attachment, like a Barabasi-Albert generator attaching
+	 * one edge per new node
+	 *
+	 * @param type The type of tree to generate
+	 * @param numNodes The number of nodes in the tree
+	 * @param seed The seed used for generating Arbitrary trees
+	 * @return the topology of the generated tree
+	 */
+	public static TreeTopology generate(TreeType type, int numNodes, long seed) {
+		int[] parents = new int[numNodes];
+		parents[0] = -1;
+
+		switch (type) {
+			case List:
+				for (int v = 1; v < numNodes; v++) {
+					parents[v] = v - 1;
+				}
+				break;
+			case Star:
+				for (int v = 1; v < numNodes; v++) {
+					parents[v] = 0;
+				}
+				break;
+			case Binary:
+				for (int v = 1; v < numNodes; v++) {
+					parents[v] = (v - 1) / 2;
+				}
+				break;
+			default:
+				// Picking a uniform end point among all the edges picks
+				// a node with a probability proportional to its degree
+				SplittableRandom random = new SplittableRandom(seed);
+				int[] endPoints = new int[Math.max(0, 2 * (numNodes - 1))];
+				int numEndPoints = 0;
+				for (int v = 1; v < numNodes; v++) {
+					int parent = numEndPoints == 0 ? 0 : endPoints[random.nextInt(numEndPoints)];
+					parents[v] = parent;
+					endPoints[numEndPoints++] = parent;
+					endPoints[numEndPoints++] = v;
+				}
+				break;
+		}
+
+		return fromParents(parents);
+	}
+
+	/**
+	 * Writes the compressed arrays of the topology
+	 *
+	 * @param out The output to which to write
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(this.numNodes);
+		out.writeInt(this.targets.length);
+		for (int v = 0; v <= this.numNodes; v++) {
+			out.writeInt(this.offsets[v]);
+		}
+		for (int halfEdge = 0; halfEdge < this.targets.length; halfEdge++) {
+			out.writeInt(this.targets[halfEdge]);
+			out.writeInt(this.twins[halfEdge]);
+			out.writeInt(this.edges[halfEdge]);
+		}
+	}
+
+	/**
+	 * Reads a topology written by {@link #write(DataOutput)}
+	 *
+	 * @param in The input from which to read
+	 * @return the restored topology, with the same node, edge and port numbers
+	 * @throws IOException
+	 */
+	static TreeTopology read(DataInput in) throws IOException {
+		int numNodes = in.readInt();
+		int numHalfEdges = in.readInt();
+		int[] offsets = new int[numNodes + 1];
+		int[] targets = new int[numHalfEdges];
+		int[] twins = new int[numHalfEdges];
+		int[] edges = new int[numHalfEdges];
+
+		for (int v = 0; v <= numNodes; v++) {
+			offsets[v] = in.readInt();
+		}
+		for (int halfEdge = 0; halfEdge < numHalfEdges; halfEdge++) {
+			targets[halfEdge] = in.readInt();
+			twins[halfEdge] = in.readInt();
+			edges[halfEdge] = in.readInt();
+		}
+		return new TreeTopology(numNodes, offsets, targets, twins, edges);
+	}
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int getNodeCount() {
+		return this.numNodes;
+	}
+
+	/**
+	 * @return the number of undirected edges in the tree
+	 */
+	public int getEdgeCount() {
+		return this.targets.length / 2;
+	}
+
+	/**
+	 * @return the number of half-edges in the tree, which is twice the number of edges
+	 */
+	public int getHalfEdgeCount() {
+		return this.targets.length;
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return the number of neighbours of the node
+	 */
+	public int getDegree(int node) {
+		return this.offsets[node + 1] - this.offsets[node];
+	}
+
+	/**
+	 * @param node A node of the tree
+	 * @return the first half-edge leaving the node
+	 */
+	public int getFirstPort(int node) {
+		return this.offsets[node];
+	}
+
+	/**
+	 * @param halfEdge A half-edge of the tree
+	 * @return the node at which the half-edge arrives
+	 */
+	public int getTarget(int halfEdge) {
+		return this.targets[halfEdge];
+	}
+
+	/**
+	 * @param halfEdge A half-edge of the tree
+	 * @return the half-edge going in the opposite direction
+	 */
+	public int getTwin(int halfEdge) {
+		return this.twins[halfEdge];
+	}
+
+	/**
+	 * @param halfEdge A half-edge of the tree
+	 * @return the node from which the half-edge leaves
+	 */
+	public int getSource(int halfEdge) {
+		return this.targets[this.twins[halfEdge]];
+	}
+
+	/**
+	 * @param edge An undirected edge of the tree
+	 * @param node One of the two ends of the edge
+	 * @return the port of the node through which the edge leaves it
+	 */
+	public int getPort(int edge, int node) {
+		int halfEdge = this.halfEdges[edge];
+		return this.getSource(halfEdge) == node ? halfEdge : this.twins[halfEdge];
+	}
+
+	/**
+	 * @param halfEdge A half-edge of the tree
+	 * @return the undirected edge to which the half-edge belongs
+	 */
+	public int getEdge(int halfEdge) {
+		return this.edges[halfEdge];
+	}
+}
@@ -0,0 +1,23 @@
+package csi4109.a3;
+
+/**
+ * Delays drawn uniformly between 0 (inclusive) and a maximum (exclusive)
+ */
+public class UniformDelayModel implements DelayModel {
+
+	private int maxDelay;
+
+	/**
+	 * Constructs a {@link UniformDelayModel} instance
+	 * 
+	 * @param maxDelay The maximum delay, in milliseconds
+	 */
+	public UniformDelayModel(int maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	@Override
+	public int nextDelay(DelayRandom random, int messageSize) {
+		return this.maxDelay > 0 ? random.nextInt(this.maxDelay) : 0;
+	}
+}